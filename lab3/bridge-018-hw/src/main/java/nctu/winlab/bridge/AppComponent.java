@@ -15,23 +15,42 @@
  */
 package nctu.winlab.bridge;
 
+import org.onlab.metrics.MetricsService;
 import org.onlab.packet.Ethernet;
 import org.onlab.packet.MacAddress;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
+import org.onosproject.event.Event;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.Link;
+import org.onosproject.net.Path;
 import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flowobjective.FlowObjectiveService;
+import org.onosproject.net.host.HostService;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.packet.DefaultOutboundPacket;
 import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.PacketPriority;
 import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketService;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.net.topology.TopologyListener;
+import org.onosproject.net.topology.TopologyService;
+import org.onosproject.store.service.StorageService;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -41,32 +60,253 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 // My imports
-import org.onosproject.net.flowobjective.DefaultForwardingObjective;
-import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.flow.instructions.Instructions;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static nctu.winlab.bridge.OsgiPropertyConstants.DISTRIBUTED_MAC_TABLE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.DISTRIBUTED_MAC_TABLE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.ECMP_FORWARDING;
+import static nctu.winlab.bridge.OsgiPropertyConstants.ECMP_FORWARDING_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BACKEND;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BACKEND_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BATCH_SIZE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BATCH_SIZE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BATCH_WINDOW;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_BATCH_WINDOW_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_IDLE_TIMEOUT_MAX;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_IDLE_TIMEOUT_MAX_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_IDLE_TIMEOUT_MIN;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_IDLE_TIMEOUT_MIN_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_STATS_POLL_INTERVAL;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FLOW_STATS_POLL_INTERVAL_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FORWARDING_MODE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.FORWARDING_MODE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_AGING_TIME;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_AGING_TIME_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_SNAPSHOT_FILE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_SNAPSHOT_FILE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_SNAPSHOT_INTERVAL;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_SNAPSHOT_INTERVAL_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_TABLE_CAPACITY;
+import static nctu.winlab.bridge.OsgiPropertyConstants.MAC_TABLE_CAPACITY_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_QUEUE_OVERFLOW;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_QUEUE_OVERFLOW_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_QUEUE_SIZE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_QUEUE_SIZE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_WORKERS;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_WORKER_MODE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_WORKER_MODE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_WORKERS_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PATH_FORWARDING;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PROACTIVE_HOSTS;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PROACTIVE_HOSTS_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_IN_BURST;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_IN_BURST_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_IN_RATE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PACKET_IN_RATE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PATH_FORWARDING_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.STORM_BLOCK_TIME;
+import static nctu.winlab.bridge.OsgiPropertyConstants.STORM_BLOCK_TIME_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.STORM_THRESHOLD;
+import static nctu.winlab.bridge.OsgiPropertyConstants.STORM_THRESHOLD_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TRACE_BUFFER_SIZE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TRACE_BUFFER_SIZE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TRACE_SAMPLE_RATE;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TRACE_SAMPLE_RATE_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TREE_FLOODING;
+import static nctu.winlab.bridge.OsgiPropertyConstants.TREE_FLOODING_DEFAULT;
+import static nctu.winlab.bridge.OsgiPropertyConstants.parseEnum;
 import static org.onlab.util.Tools.get;
-import java.util.HashMap;
-import java.util.Map;
+import static org.onlab.util.Tools.getIntegerProperty;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onlab.util.Tools.isPropertyEnabled;
 
 /* Your APP class */
 @Component(immediate = true, service = { AppComponent.class }, property = {
         "someProperty=Some Default String Value",
+        MAC_TABLE_CAPACITY + ":Integer=" + MAC_TABLE_CAPACITY_DEFAULT,
+        MAC_AGING_TIME + ":Integer=" + MAC_AGING_TIME_DEFAULT,
+        DISTRIBUTED_MAC_TABLE + ":Boolean=" + DISTRIBUTED_MAC_TABLE_DEFAULT,
+        MAC_SNAPSHOT_FILE + "=" + MAC_SNAPSHOT_FILE_DEFAULT,
+        MAC_SNAPSHOT_INTERVAL + ":Integer=" + MAC_SNAPSHOT_INTERVAL_DEFAULT,
+        FLOW_BACKEND + "=" + FLOW_BACKEND_DEFAULT,
+        FLOW_BATCH_SIZE + ":Integer=" + FLOW_BATCH_SIZE_DEFAULT,
+        FLOW_BATCH_WINDOW + ":Integer=" + FLOW_BATCH_WINDOW_DEFAULT,
+        PENDING_INSTALL_TIMEOUT + ":Integer=" + PENDING_INSTALL_TIMEOUT_DEFAULT,
+        FLOW_IDLE_TIMEOUT_MIN + ":Integer=" + FLOW_IDLE_TIMEOUT_MIN_DEFAULT,
+        FLOW_IDLE_TIMEOUT_MAX + ":Integer=" + FLOW_IDLE_TIMEOUT_MAX_DEFAULT,
+        FLOW_STATS_POLL_INTERVAL + ":Integer=" + FLOW_STATS_POLL_INTERVAL_DEFAULT,
+        FORWARDING_MODE + "=" + FORWARDING_MODE_DEFAULT,
+        PATH_FORWARDING + ":Boolean=" + PATH_FORWARDING_DEFAULT,
+        ECMP_FORWARDING + ":Boolean=" + ECMP_FORWARDING_DEFAULT,
+        TREE_FLOODING + ":Boolean=" + TREE_FLOODING_DEFAULT,
+        PROACTIVE_HOSTS + ":Boolean=" + PROACTIVE_HOSTS_DEFAULT,
+        PACKET_WORKERS + ":Integer=" + PACKET_WORKERS_DEFAULT,
+        PACKET_WORKER_MODE + "=" + PACKET_WORKER_MODE_DEFAULT,
+        PACKET_QUEUE_SIZE + ":Integer=" + PACKET_QUEUE_SIZE_DEFAULT,
+        PACKET_QUEUE_OVERFLOW + "=" + PACKET_QUEUE_OVERFLOW_DEFAULT,
+        PACKET_IN_RATE + ":Integer=" + PACKET_IN_RATE_DEFAULT,
+        PACKET_IN_BURST + ":Integer=" + PACKET_IN_BURST_DEFAULT,
+        STORM_THRESHOLD + ":Integer=" + STORM_THRESHOLD_DEFAULT,
+        STORM_BLOCK_TIME + ":Integer=" + STORM_BLOCK_TIME_DEFAULT,
+        TRACE_SAMPLE_RATE + ":Integer=" + TRACE_SAMPLE_RATE_DEFAULT,
+        TRACE_BUFFER_SIZE + ":Integer=" + TRACE_BUFFER_SIZE_DEFAULT,
 })
 public class AppComponent {
     /** Some configurable property. */
     private final Logger log = LoggerFactory.getLogger(getClass());
     private String someProperty;
 
+    /** Maximum number of MAC addresses learned per device, 0 for no limit. */
+    private int macTableCapacity = MAC_TABLE_CAPACITY_DEFAULT;
+
+    /** Seconds a MAC address is kept without being seen again, 0 to never age. */
+    private int macAgingTime = MAC_AGING_TIME_DEFAULT;
+
+    /** Share learned MAC addresses with the other cluster instances; off by default. */
+    private boolean distributedMacTable = DISTRIBUTED_MAC_TABLE_DEFAULT;
+
+    /** File the MAC table is checkpointed to, empty for mac-table.snapshot in the Karaf data directory. */
+    private volatile String macSnapshotFile = MAC_SNAPSHOT_FILE_DEFAULT;
+
+    /** Seconds between MAC table checkpoints, 0 to never checkpoint. */
+    private volatile int macSnapshotInterval = MAC_SNAPSHOT_INTERVAL_DEFAULT;
+
+    /** API flow rules are programmed through, OBJECTIVE for forwarding objectives or FLOW_RULE. */
+    private volatile FlowBackend flowBackend = FlowBackend.valueOf(FLOW_BACKEND_DEFAULT);
+
+    /** Flow rules collected per device before the FLOW_RULE backend pushes a batch, 1 for no batching. */
+    private int flowBatchSize = FLOW_BATCH_SIZE_DEFAULT;
+
+    /** Milliseconds a flow rule may wait for its batch to fill up. */
+    private int flowBatchWindow = FLOW_BATCH_WINDOW_DEFAULT;
+
+    /** Milliseconds repeated installs of an unconfirmed flow are skipped, 0 to never skip. */
+    private int pendingInstallTimeout = PENDING_INSTALL_TIMEOUT_DEFAULT;
+
+    /** Smallest idle timeout in seconds a flow rule is installed with. */
+    private int flowIdleTimeoutMin = FLOW_IDLE_TIMEOUT_MIN_DEFAULT;
+
+    /** Largest idle timeout in seconds a steady flow can grow to. */
+    private int flowIdleTimeoutMax = FLOW_IDLE_TIMEOUT_MAX_DEFAULT;
+
+    /**
+     * Seconds between flow counter polls, 0 to install every rule with the fixed
+     * {@link #DEFAULT_TIMEOUT}. Off by default; a positive interval turns on the
+     * adaptive idle timeouts bounded by flowIdleTimeoutMin and flowIdleTimeoutMax.
+     */
+    private int flowStatsPollInterval = FLOW_STATS_POLL_INTERVAL_DEFAULT;
+
+    /** Flow match granularity, SRC_DST for MAC pairs or DST_ONLY for one rule per destination. */
+    private volatile ForwardingMode forwardingMode = ForwardingMode.valueOf(FORWARDING_MODE_DEFAULT);
+
+    /** Program every hop towards a known destination host on the first packet-in. */
+    private boolean pathForwarding = PATH_FORWARDING_DEFAULT;
+
+    /** Spread IPv4 flows over equal-cost paths by 5-tuple hash; implies path forwarding. */
+    private boolean ecmpForwarding = ECMP_FORWARDING_DEFAULT;
+
+    /** Flood along the cluster broadcast tree and edge ports instead of every port; off by default. */
+    private boolean treeFlooding = TREE_FLOODING_DEFAULT;
+
+    /** Install destination rules for every host the host service knows, ahead of its traffic. */
+    private boolean proactiveHosts = PROACTIVE_HOSTS_DEFAULT;
+
+    /** Worker threads packet-ins are handed to, 0 to handle them on the packet dispatch thread. */
+    private int packetWorkers = PACKET_WORKERS_DEFAULT;
+
+    /** SHARDED for one queue per worker thread, ACTOR for one mailbox per device on a shared pool. */
+    private PacketWorkerMode packetWorkerMode = PacketWorkerMode.valueOf(PACKET_WORKER_MODE_DEFAULT);
+
+    /** Packet-ins each worker queue or device mailbox may hold before the overflow policy applies. */
+    private int packetQueueSize = PACKET_QUEUE_SIZE_DEFAULT;
+
+    /** What to do with a packet-in whose worker queue is full: DROP, FLOOD or BLOCK. */
+    private volatile QueueOverflowPolicy packetQueueOverflow =
+            QueueOverflowPolicy.valueOf(PACKET_QUEUE_OVERFLOW_DEFAULT);
+
+    /**
+     * Packet-ins per second accepted from one ingress port, 0 for no limit.
+     * Off by default; enable it with, for example,
+     * {@code cfg set nctu.winlab.bridge.AppComponent packetInRate 1000}.
+     * Storm blocking only applies while a rate is set.
+     */
+    private int packetInRate = PACKET_IN_RATE_DEFAULT;
+
+    /** Packet-ins one ingress port may send back to back. */
+    private int packetInBurst = PACKET_IN_BURST_DEFAULT;
+
+    /** Seconds a port must stay over its packet-in rate before it is blocked. */
+    private int stormThreshold = STORM_THRESHOLD_DEFAULT;
+
+    /** Seconds an edge port in a storm is blocked on the switch, 0 to only drop packet-ins. */
+    private int stormBlockTime = STORM_BLOCK_TIME_DEFAULT;
+
+    /** Record one in this many packet-in decisions in the trace ring, 0 to trace none. */
+    private int traceSampleRate = TRACE_SAMPLE_RATE_DEFAULT;
+
+    /** Packet-in decisions kept in the trace ring. */
+    private int traceBufferSize = TRACE_BUFFER_SIZE_DEFAULT;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected ComponentConfigService cfgService;
 
     /** My variables. */
     public static final int DEFAULT_IPV4_PRIORITY = 1;
     public static final int DEFAULT_PRIORITY = 30;
+    public static final int PROACTIVE_PRIORITY = 20;
+    public static final int ECMP_PRIORITY = 35;
     public static final int DEFAULT_TIMEOUT = 30;
+    public static final int STORM_BLOCK_PRIORITY = 40000;
+    private static final long RATE_BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SELECTOR_CACHE_SIZE = 4096;
+    private static final long HOUSEKEEPING_PERIOD_SECONDS = 1;
+    private static final long INSTALL_LOSS_TIMEOUT_MILLIS = 10_000;
+
+    // Total order on links by their connect points, and on paths by their links.
+    private static final Comparator<ConnectPoint> POINT_ORDER = Comparator
+            .comparing((ConnectPoint point) -> point.deviceId().toString())
+            .thenComparingLong(point -> point.port().toLong());
+    private static final Comparator<Link> LINK_ORDER = Comparator.comparing(Link::src, POINT_ORDER)
+            .thenComparing(Link::dst, POINT_ORDER);
+    private static final Comparator<Path> PATH_ORDER = (first, second) -> {
+        List<Link> left = first.links();
+        List<Link> right = second.links();
+        for (int i = 0; i < left.size() && i < right.size(); i++) {
+            int order = LINK_ORDER.compare(left.get(i), right.get(i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(left.size(), right.size());
+    };
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected CoreService coreService;
@@ -80,12 +320,111 @@ public class AppComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected FlowObjectiveService flowObjectiveService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected HostService hostService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected TopologyService topologyService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected DeviceService deviceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected StorageService storageService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected MastershipService mastershipService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected MetricsService metricsService;
+
     /* This one is important, you have design the method to process packet-in packets */
     private ReactivePacketProcessor processor = new ReactivePacketProcessor();
 
     private ApplicationId appId;
 
-    Map<DeviceId, Map<MacAddress, PortNumber>> macTable = new HashMap<>();
+    final MacTable macTable = new MacTable();
+
+    // Cluster-wide copy of the MAC table, null while distribution is off.
+    private volatile DistributedMacTable distributedTable;
+
+    private ScheduledExecutorService scheduledExecutor;
+
+    // Runs only the batch window timers, so housekeeping cannot delay them.
+    private ScheduledExecutorService batchExecutor;
+
+    private FlowRuleBatcher flowRuleBatcher;
+
+    private volatile FlowProgrammer flowProgrammer;
+
+    private final InstallLatency installLatency = new InstallLatency(INSTALL_LOSS_TIMEOUT_MILLIS);
+
+    private final PendingInstalls pendingInstalls = new PendingInstalls(PENDING_INSTALL_TIMEOUT_DEFAULT);
+
+    private final FlowRuleListener flowListener = new InternalFlowRuleListener();
+
+    private final InstalledRules installedRules = new InstalledRules();
+
+    private final FlowLifetimes flowLifetimes = new FlowLifetimes(FLOW_IDLE_TIMEOUT_MIN_DEFAULT,
+            FLOW_IDLE_TIMEOUT_MAX_DEFAULT);
+
+    // Time of the last flow counter poll, only touched by the housekeeping thread.
+    private long lastFlowPoll;
+
+    // Time of the last MAC table checkpoint, only touched by the housekeeping thread.
+    private long lastCheckpoint;
+
+    // Serializes checkpoint writers, the housekeeping thread and deactivate.
+    private final Object checkpointLock = new Object();
+
+    // Packet-in outcomes, published through the metrics service.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder floods = new LongAdder();
+    private final LongAdder installs = new LongAdder();
+
+    private volatile BridgeMetrics metrics;
+
+    // Packet-in offload, null while packet-ins are handled on the dispatch thread.
+    private volatile PacketOffload workers;
+
+    private final LongAdder queueOverflows = new LongAdder();
+
+    private final LongAdder hostMoves = new LongAdder();
+
+    private final LongAdder ecmpSelections = new LongAdder();
+
+    // Packet-outs that released a switch buffer, and the payload bytes they did not carry.
+    private final LongAdder bufferedPacketOuts = new LongAdder();
+    private final LongAdder packetOutBytesSaved = new LongAdder();
+
+    // Tree ports a buffered flood could not reach.
+    private final LongAdder bufferedFloodDrops = new LongAdder();
+
+    private final LongAdder staleRulesRemoved = new LongAdder();
+    private final LongAdder relearnWithdrawals = new LongAdder();
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+
+    private final TopologyListener topologyListener = new InternalTopologyListener();
+
+    private BroadcastTree broadcastTree;
+
+    // Proactive destination rules, null while the mode is off.
+    private volatile ProactiveHosts proactive;
+
+    // Immutable treatments and MAC selectors shared by every install; pair
+    // selectors are kept per destination, then per source.
+    private final ConcurrentMap<PortNumber, TrafficTreatment> outputTreatments = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MacAddress, TrafficSelector> destinationSelectors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MacAddress, ConcurrentMap<MacAddress, TrafficSelector>> pairSelectors =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger pairSelectorCount = new AtomicInteger();
+
+    private final PacketInRateLimiter rateLimiter = new PacketInRateLimiter(PACKET_IN_RATE_DEFAULT,
+            PACKET_IN_BURST_DEFAULT, STORM_THRESHOLD_DEFAULT);
+
+    private volatile PacketTrace trace = new PacketTrace(TRACE_BUFFER_SIZE_DEFAULT, TRACE_SAMPLE_RATE_DEFAULT);
 
     /* When you click activate APP, the function is called */
     @Activate
@@ -93,6 +432,47 @@ public class AppComponent {
         cfgService.registerProperties(getClass());
 
         appId = coreService.registerApplication("nctu.winlab.bridge");
+        macTable.setCapacity(macTableCapacity);
+        restoreFromSnapshot();
+        configureDistribution();
+        lastCheckpoint = System.nanoTime();
+        scheduledExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/bridge", "housekeeping", log));
+        scheduledExecutor.scheduleWithFixedDelay(this::housekeeping, HOUSEKEEPING_PERIOD_SECONDS,
+                HOUSEKEEPING_PERIOD_SECONDS, TimeUnit.SECONDS);
+        batchExecutor = newSingleThreadScheduledExecutor(groupedThreads("onos/bridge", "flow-batcher", log));
+        flowRuleBatcher = new FlowRuleBatcher(flowRuleService, batchExecutor, flowBatchSize, flowBatchWindow);
+        flowProgrammer = programmer(flowBackend);
+        metrics = new BridgeMetrics(metricsService);
+        metrics.counter("hits", hits);
+        metrics.counter("misses", misses);
+        metrics.counter("floods", floods);
+        metrics.counter("installs", installs);
+        metrics.counter("queueOverflows", queueOverflows);
+        metrics.counter("ecmpSelections", ecmpSelections);
+        metrics.counter("bufferedPacketOuts", bufferedPacketOuts);
+        metrics.counter("packetOutBytesSaved", packetOutBytesSaved);
+        metrics.counter("bufferedFloodDrops", bufferedFloodDrops);
+        metrics.gauge("queueDepth", () -> {
+            PacketOffload offload = workers;
+            return offload == null ? 0 : offload.depth();
+        });
+        metrics.gauge("queueMaxDepth", () -> {
+            PacketOffload offload = workers;
+            return offload == null ? 0 : offload.maxDepth();
+        });
+        metrics.gauge("proactiveRules", this::proactiveFlowRules);
+        metrics.gauge("macTableOccupancy", this::macTableOccupancy);
+        metrics.gauge("macTableEvictions", this::macTableEvictions);
+        metrics.gauge("macTableExpirations", this::macTableExpirations);
+        pendingInstalls.setTimeout(pendingInstallTimeout);
+        rateLimiter.configure(packetInRate, packetInBurst, stormBlockTime == 0 ? 0 : stormThreshold);
+        flowRuleService.addListener(flowListener);
+        restoreFromFlows();
+        broadcastTree = new BroadcastTree(topologyService, deviceService);
+        deviceService.addListener(deviceListener);
+        topologyService.addListener(topologyListener);
+        configureProactive();
+        configureWorkers();
         packetService.addProcessor(processor, PacketProcessor.director(2)); // add processor to pacetService
         requestIntercepts();
         log.info("Started");
@@ -104,8 +484,48 @@ public class AppComponent {
         cfgService.unregisterProperties(getClass(), false);
 
         withdrawIntercepts();
+        flowRuleService.removeListener(flowListener);
+        deviceService.removeListener(deviceListener);
+        topologyService.removeListener(topologyListener);
         packetService.removeProcessor(processor);
         processor = null;
+        if (proactive != null) {
+            proactive.close();
+            proactive = null;
+        }
+        if (workers != null) {
+            log.info("Discarded {} queued packet-ins", workers.close());
+            workers = null;
+        }
+        batchExecutor.shutdownNow();
+        batchExecutor = null;
+        int discarded = flowRuleBatcher.discardAll();
+        log.info("Pushed {} flow rules in {} batches, discarded {}", flowRuleBatcher.rules(),
+                flowRuleBatcher.flushes(), discarded);
+        for (FlowBackend backend : FlowBackend.values()) {
+            InstallLatency.Stats stats = installLatency.stats(backend);
+            if (stats.requested() > 0) {
+                log.info("{} backend confirmed {} of {} rules, {} us average and {} us max latency, {} rules/s",
+                        backend, stats.added(), stats.requested(), stats.averageLatencyMicros(),
+                        stats.maxLatencyMicros(), String.format("%.1f", stats.throughput()));
+            }
+        }
+        flowRuleService.removeFlowRulesById(appId);
+        scheduledExecutor.shutdownNow();
+        scheduledExecutor = null;
+        checkpoint();
+        if (distributedTable != null) {
+            distributedTable.close();
+            distributedTable = null;
+        }
+        macTable.clear();
+        pendingInstalls.clear();
+        metrics.close();
+        metrics = null;
+        installedRules.clear();
+        installLatency.clear();
+        flowLifetimes.clear();
+        rateLimiter.clear();
         log.info("Stopped");
     }
 
@@ -115,9 +535,688 @@ public class AppComponent {
         if (context != null) {
             someProperty = get(properties, "someProperty");
         }
+        macTableCapacity = Math.max(0, getIntegerProperty(properties, MAC_TABLE_CAPACITY,
+                MAC_TABLE_CAPACITY_DEFAULT));
+        macAgingTime = Math.max(0, getIntegerProperty(properties, MAC_AGING_TIME, MAC_AGING_TIME_DEFAULT));
+        macTable.setCapacity(macTableCapacity);
+        String snapshotFile = get(properties, MAC_SNAPSHOT_FILE);
+        macSnapshotFile = snapshotFile == null ? MAC_SNAPSHOT_FILE_DEFAULT : snapshotFile.trim();
+        macSnapshotInterval = Math.max(0, getIntegerProperty(properties, MAC_SNAPSHOT_INTERVAL,
+                MAC_SNAPSHOT_INTERVAL_DEFAULT));
+        Boolean distributedEnabled = isPropertyEnabled(properties, DISTRIBUTED_MAC_TABLE);
+        distributedMacTable = distributedEnabled == null ? DISTRIBUTED_MAC_TABLE_DEFAULT : distributedEnabled;
+        if (appId != null) {
+            configureDistribution();
+        }
+        FlowBackend newBackend = parseEnum(FlowBackend.class, get(properties, FLOW_BACKEND), flowBackend);
+        if (newBackend != flowBackend) {
+            flowBackend = newBackend;
+            if (flowRuleBatcher != null) {
+                flowProgrammer = programmer(newBackend);
+            }
+        }
+        flowBatchSize = Math.max(1, getIntegerProperty(properties, FLOW_BATCH_SIZE, FLOW_BATCH_SIZE_DEFAULT));
+        flowBatchWindow = Math.max(0, getIntegerProperty(properties, FLOW_BATCH_WINDOW, FLOW_BATCH_WINDOW_DEFAULT));
+        if (flowRuleBatcher != null) {
+            flowRuleBatcher.configure(flowBatchSize, flowBatchWindow);
+        }
+        pendingInstallTimeout = Math.max(0, getIntegerProperty(properties, PENDING_INSTALL_TIMEOUT,
+                PENDING_INSTALL_TIMEOUT_DEFAULT));
+        pendingInstalls.setTimeout(pendingInstallTimeout);
+        flowIdleTimeoutMin = Math.max(1, getIntegerProperty(properties, FLOW_IDLE_TIMEOUT_MIN,
+                FLOW_IDLE_TIMEOUT_MIN_DEFAULT));
+        flowIdleTimeoutMax = Math.max(flowIdleTimeoutMin, getIntegerProperty(properties, FLOW_IDLE_TIMEOUT_MAX,
+                FLOW_IDLE_TIMEOUT_MAX_DEFAULT));
+        flowStatsPollInterval = Math.max(0, getIntegerProperty(properties, FLOW_STATS_POLL_INTERVAL,
+                FLOW_STATS_POLL_INTERVAL_DEFAULT));
+        flowLifetimes.configure(flowIdleTimeoutMin, flowIdleTimeoutMax);
+        ForwardingMode newMode = parseEnum(ForwardingMode.class, get(properties, FORWARDING_MODE), forwardingMode);
+        if (newMode != forwardingMode) {
+            forwardingMode = newMode;
+            if (appId != null) {
+                requestIntercepts();
+            }
+        }
+        Boolean pathEnabled = isPropertyEnabled(properties, PATH_FORWARDING);
+        pathForwarding = pathEnabled == null ? PATH_FORWARDING_DEFAULT : pathEnabled;
+        Boolean ecmpEnabled = isPropertyEnabled(properties, ECMP_FORWARDING);
+        ecmpForwarding = ecmpEnabled == null ? ECMP_FORWARDING_DEFAULT : ecmpEnabled;
+        Boolean treeEnabled = isPropertyEnabled(properties, TREE_FLOODING);
+        treeFlooding = treeEnabled == null ? TREE_FLOODING_DEFAULT : treeEnabled;
+        Boolean proactiveEnabled = isPropertyEnabled(properties, PROACTIVE_HOSTS);
+        proactiveHosts = proactiveEnabled == null ? PROACTIVE_HOSTS_DEFAULT : proactiveEnabled;
+        if (appId != null) {
+            configureProactive();
+        }
+        packetWorkers = Math.max(0, getIntegerProperty(properties, PACKET_WORKERS, PACKET_WORKERS_DEFAULT));
+        packetWorkerMode = parseEnum(PacketWorkerMode.class, get(properties, PACKET_WORKER_MODE), packetWorkerMode);
+        packetQueueSize = Math.max(1, getIntegerProperty(properties, PACKET_QUEUE_SIZE, PACKET_QUEUE_SIZE_DEFAULT));
+        packetQueueOverflow = parseEnum(QueueOverflowPolicy.class, get(properties, PACKET_QUEUE_OVERFLOW),
+                packetQueueOverflow);
+        if (appId != null) {
+            configureWorkers();
+        }
+        packetInRate = Math.max(0, getIntegerProperty(properties, PACKET_IN_RATE, PACKET_IN_RATE_DEFAULT));
+        packetInBurst = Math.max(1, getIntegerProperty(properties, PACKET_IN_BURST, PACKET_IN_BURST_DEFAULT));
+        stormThreshold = Math.max(0, getIntegerProperty(properties, STORM_THRESHOLD, STORM_THRESHOLD_DEFAULT));
+        stormBlockTime = Math.max(0, getIntegerProperty(properties, STORM_BLOCK_TIME, STORM_BLOCK_TIME_DEFAULT));
+        rateLimiter.configure(packetInRate, packetInBurst, stormBlockTime == 0 ? 0 : stormThreshold);
+        traceSampleRate = Math.max(0, getIntegerProperty(properties, TRACE_SAMPLE_RATE, TRACE_SAMPLE_RATE_DEFAULT));
+        traceBufferSize = Math.max(1, getIntegerProperty(properties, TRACE_BUFFER_SIZE, TRACE_BUFFER_SIZE_DEFAULT));
+        if (trace.capacity() < traceBufferSize || trace.capacity() >= traceBufferSize * 2) {
+            trace = new PacketTrace(traceBufferSize, traceSampleRate);
+        } else {
+            trace.setSampleRate(traceSampleRate);
+        }
         log.info("Reconfigured");
     }
 
+    /**
+     * Returns the number of MAC addresses currently learned on all devices.
+     *
+     * @return MAC table occupancy
+     */
+    public int macTableOccupancy() {
+        return macTable.size();
+    }
+
+    /**
+     * Returns the number of MAC addresses evicted to honour the capacity.
+     *
+     * @return eviction count since activation
+     */
+    public long macTableEvictions() {
+        return macTable.evictions();
+    }
+
+    /**
+     * Returns the number of MAC addresses that aged out.
+     *
+     * @return expiration count since activation
+     */
+    public long macTableExpirations() {
+        return macTable.expirations();
+    }
+
+    /**
+     * Returns the number of MAC bindings this instance shared with the cluster.
+     *
+     * @return published binding count since distribution was enabled
+     */
+    public long macTablePublished() {
+        DistributedMacTable table = distributedTable;
+        return table == null ? 0 : table.published();
+    }
+
+    /**
+     * Returns the number of local MAC table misses answered by the cluster.
+     *
+     * @return read-through hit count since distribution was enabled
+     */
+    public long macTableReadThroughs() {
+        DistributedMacTable table = distributedTable;
+        return table == null ? 0 : table.readThroughs();
+    }
+
+    /**
+     * Returns the number of MAC bindings received from the cluster.
+     *
+     * @return applied update count since distribution was enabled
+     */
+    public long macTableRemoteUpdates() {
+        DistributedMacTable table = distributedTable;
+        return table == null ? 0 : table.applied();
+    }
+
+    /**
+     * Returns the number of times a known MAC showed up on another port.
+     *
+     * @return host move count since activation
+     */
+    public long hostMoves() {
+        return hostMoves.sum();
+    }
+
+    /**
+     * Returns the number of flows placed on one of several equal-cost paths.
+     *
+     * @return multipath selection count since activation
+     */
+    public long ecmpSelections() {
+        return ecmpSelections.sum();
+    }
+
+    /**
+     * Returns the number of rules removed because their destination moved
+     * or to relearn the peers of a destination.
+     *
+     * @return removed rule count since activation
+     */
+    public long staleRulesRemoved() {
+        return staleRulesRemoved.sum();
+    }
+
+    /**
+     * Returns the number of rules withdrawn in destination-only mode so the
+     * sources sending through them punt and are learned again.
+     *
+     * @return withdrawn rule count since activation
+     */
+    public long relearnWithdrawals() {
+        return relearnWithdrawals.sum();
+    }
+
+    /**
+     * Returns the number of bridge flow rules currently on the switches.
+     *
+     * @return installed rule count
+     */
+    public int installedFlowRules() {
+        return installedRules.size();
+    }
+
+    /**
+     * Returns the number of flows that came back to the controller shortly
+     * after their rule expired.
+     *
+     * @return re-punt count since activation
+     */
+    public long flowRepunts() {
+        return flowLifetimes.repunts();
+    }
+
+    /**
+     * Returns the number of times the idle timeout of a flow was raised.
+     *
+     * @return raise count since activation
+     */
+    public long flowTimeoutsRaised() {
+        return flowLifetimes.raised();
+    }
+
+    /**
+     * Returns the number of times the idle timeout of a flow was lowered.
+     *
+     * @return lower count since activation
+     */
+    public long flowTimeoutsLowered() {
+        return flowLifetimes.lowered();
+    }
+
+    /**
+     * Returns the number of flow rule batches pushed to the core.
+     *
+     * @return batch count since activation
+     */
+    public long flowBatches() {
+        return flowRuleBatcher.flushes();
+    }
+
+    /**
+     * Returns the mean number of flow rules per pushed batch.
+     *
+     * @return average batch size
+     */
+    public double flowBatchAverageSize() {
+        return flowRuleBatcher.averageBatchSize();
+    }
+
+    /**
+     * Returns the mean time a batch waited before being pushed.
+     *
+     * @return average flush delay in microseconds
+     */
+    public long flowBatchAverageFlushDelayMicros() {
+        return flowRuleBatcher.averageFlushDelayMicros();
+    }
+
+    /**
+     * Returns the longest time a batch waited before being pushed.
+     *
+     * @return maximum flush delay in microseconds
+     */
+    public long flowBatchMaxFlushDelayMicros() {
+        return flowRuleBatcher.maxFlushDelayMicros();
+    }
+
+    /**
+     * Returns the mean time the core took to confirm a batch.
+     *
+     * @return average completion latency in microseconds
+     */
+    public long flowBatchCompletionMicros() {
+        return flowRuleBatcher.averageCompletionMicros();
+    }
+
+    /**
+     * Returns the rate at which batched flow rules were pushed.
+     *
+     * @return flow rules per second since activation
+     */
+    public double flowBatchThroughput() {
+        return flowRuleBatcher.throughput();
+    }
+
+    /**
+     * Returns the install latency and throughput measured for a backend.
+     *
+     * @param backend flow backend
+     * @return measurements of the backend since activation
+     */
+    InstallLatency.Stats installLatency(FlowBackend backend) {
+        return installLatency.stats(backend);
+    }
+
+    /**
+     * Returns the number of packet-ins whose destination was known.
+     *
+     * @return hit count since activation
+     */
+    public long packetInHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of packet-ins whose destination was unknown.
+     *
+     * @return miss count since activation
+     */
+    public long packetInMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of packets flooded.
+     *
+     * @return flood count since activation
+     */
+    public long floods() {
+        return floods.sum();
+    }
+
+    /**
+     * Returns the number of flow rules requested from the backend.
+     *
+     * @return install count since activation
+     */
+    public long flowInstalls() {
+        return installs.sum();
+    }
+
+    /**
+     * Returns the time from packet-in to switch confirmation of the rules
+     * installed on each device.
+     *
+     * @return live read-only view of the latency histogram of each device
+     */
+    public Map<DeviceId, LatencyHistogram> installLatencies() {
+        return installLatency.histograms();
+    }
+
+    /**
+     * Returns the number of packet-ins waiting for a packet worker.
+     *
+     * @return queued packet-in count, 0 while packet-ins are handled inline
+     */
+    public int packetQueueDepth() {
+        PacketOffload offload = workers;
+        return offload == null ? 0 : offload.depth();
+    }
+
+    /**
+     * Returns the number of packet-ins that found their worker queue full.
+     *
+     * @return overflow count since activation
+     */
+    public long packetQueueOverflows() {
+        return queueOverflows.sum();
+    }
+
+    /**
+     * Returns the number of destination rules installed ahead of traffic.
+     *
+     * @return proactive rule count, 0 while the proactive mode is off
+     */
+    public int proactiveFlowRules() {
+        ProactiveHosts hosts = proactive;
+        return hosts == null ? 0 : hosts.size();
+    }
+
+    /**
+     * Returns the number of packet-outs that released a frame from the
+     * switch buffer rather than carrying it.
+     *
+     * @return buffered packet-out count since activation
+     */
+    public long bufferedPacketOuts() {
+        return bufferedPacketOuts.sum();
+    }
+
+    /**
+     * Returns the payload bytes buffered packet-outs kept off the control
+     * channel.
+     *
+     * @return saved byte count since activation
+     */
+    public long packetOutBytesSaved() {
+        return packetOutBytesSaved.sum();
+    }
+
+    /**
+     * Returns the tree flood copies dropped because the flooded frame was
+     * held in the switch buffer and could be released towards one port only.
+     *
+     * @return dropped flood copy count since activation
+     */
+    public long bufferedFloodDrops() {
+        return bufferedFloodDrops.sum();
+    }
+
+    /**
+     * Returns the sampled packet-in decisions still in the trace ring.
+     *
+     * @return trace records, oldest first
+     */
+    public List<PacketTrace.Record> packetTrace() {
+        return trace.records();
+    }
+
+    /**
+     * Returns the number of packet-in decisions traced, including the ones
+     * the ring no longer holds.
+     *
+     * @return traced decision count since the ring was created
+     */
+    public long packetTraceRecorded() {
+        return trace.recorded();
+    }
+
+    /**
+     * Drops every record in the trace ring.
+     */
+    public void clearPacketTrace() {
+        trace.clear();
+    }
+
+    /**
+     * Returns the number of flow installs skipped because one was in flight.
+     *
+     * @return suppressed install count since activation
+     */
+    public long suppressedInstalls() {
+        return pendingInstalls.suppressed();
+    }
+
+    /**
+     * Returns the number of packet-ins dropped by the per-port rate limiter.
+     *
+     * @return dropped packet-in count since activation
+     */
+    public long rateLimitedPacketIns() {
+        return rateLimiter.dropped();
+    }
+
+    // Runs the periodic table maintenance on the scheduled executor.
+    private void housekeeping() {
+        try {
+            ageMacTable();
+            long now = System.nanoTime();
+            pendingInstalls.purge(now);
+            pollFlowStats(now);
+            flowLifetimes.purge(now);
+            installLatency.purge(now);
+            BridgeMetrics published = metrics;
+            if (published != null) {
+                published.refresh(installLatency.histograms());
+            }
+            checkpointIfDue(now);
+            summarizeDrops();
+            rateLimiter.purge(now, RATE_BUCKET_IDLE_NANOS);
+        } catch (RuntimeException e) {
+            log.warn("Housekeeping failed", e);
+        }
+    }
+
+    // Loads the last MAC table checkpoint, skipping entries that aged out meanwhile.
+    private void restoreFromSnapshot() {
+        MacTableSnapshot snapshot = snapshot();
+        if (snapshot == null) {
+            return;
+        }
+        long cutoff = macAgingTime == 0 ? Long.MIN_VALUE : System.currentTimeMillis() - macAgingTime * 1000L;
+        long start = System.nanoTime();
+        try {
+            int loaded = snapshot.read(macTable, cutoff);
+            if (loaded > 0) {
+                log.info("Restored {} MAC addresses from {} in {} ms", loaded, snapshot.path(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to restore the MAC table from {}", snapshot.path(), e);
+        }
+    }
+
+    private void checkpointIfDue(long now) {
+        if (macSnapshotInterval == 0 || now - lastCheckpoint < TimeUnit.SECONDS.toNanos(macSnapshotInterval)) {
+            return;
+        }
+        lastCheckpoint = now;
+        checkpoint();
+    }
+
+    // Writes the MAC table to the snapshot file; learning carries on meanwhile.
+    // Writers take their own lock, so a slow disk never holds up reconfiguration.
+    private void checkpoint() {
+        MacTableSnapshot snapshot = snapshot();
+        if (snapshot == null || macSnapshotInterval == 0) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            long start = System.nanoTime();
+            try {
+                int written = snapshot.write(macTable, System.currentTimeMillis());
+                log.debug("Checkpointed {} MAC addresses to {} in {} ms", written, snapshot.path(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (IOException e) {
+                log.warn("Unable to checkpoint the MAC table to {}", snapshot.path(), e);
+            }
+        }
+    }
+
+    // Resolves the snapshot file, or returns null when there is nowhere to keep it.
+    private MacTableSnapshot snapshot() {
+        if (!macSnapshotFile.isEmpty()) {
+            return new MacTableSnapshot(Paths.get(macSnapshotFile));
+        }
+        String data = System.getProperty("karaf.data");
+        return data == null ? null : new MacTableSnapshot(Paths.get(data, "nctu.winlab.bridge", "mac-table.snapshot"));
+    }
+
+    /**
+     * Relearns the MAC table from the rules a previous run of the bridge
+     * left on the switches, so hits are answered without flooding first.
+     * Each rule binds its destination MAC to its output port. Proactive
+     * rules are left to the host service.
+     */
+    private void restoreFromFlows() {
+        int rules = 0;
+        for (FlowEntry entry : flowRuleService.getFlowEntriesById(appId)) {
+            FlowKey key = FlowKey.of(entry);
+            PortNumber port = outputPort(entry.treatment());
+            if (key == null || port == null || port.isLogical() || entry.priority() == PROACTIVE_PRIORITY) {
+                continue;
+            }
+            macTable.learn(key.deviceId(), key.dst(), port);
+            installedRules.added(key, entry);
+            rules++;
+        }
+        if (rules > 0) {
+            log.info("Relearned MAC addresses from {} installed flow rules", rules);
+        }
+    }
+
+    // Feeds the packet counters of the bridge rules to the lifetime engine.
+    private void pollFlowStats(long now) {
+        int interval = flowStatsPollInterval;
+        if (interval == 0 || now - lastFlowPoll < TimeUnit.SECONDS.toNanos(interval)) {
+            return;
+        }
+        lastFlowPoll = now;
+        for (FlowEntry entry : flowRuleService.getFlowEntriesById(appId)) {
+            FlowKey key = FlowKey.of(entry);
+            if (key != null) {
+                flowLifetimes.observe(key, entry.packets(), now);
+            }
+        }
+    }
+
+    // Logs one line per port that exceeded its packet-in rate since the last run.
+    private void summarizeDrops() {
+        for (Map.Entry<ConnectPoint, Long> drop : rateLimiter.drainDrops().entrySet()) {
+            log.warn("Dropped {} packet-ins from {} over the rate of {}/s", drop.getValue(), drop.getKey(),
+                    packetInRate);
+        }
+    }
+
+    // Drops MAC bindings that were not refreshed within the aging time.
+    private void ageMacTable() {
+        long cutoff = macAgingTime == 0 ? Long.MIN_VALUE
+                : System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(macAgingTime);
+        DistributedMacTable table = distributedTable;
+        int removed = macTable.expire(cutoff, table == null ? null : table::expired);
+        if (removed > 0) {
+            log.debug("Removed {} MAC entries, {} left", removed, macTable.size());
+        }
+    }
+
+    /**
+     * Removes, in one batch, every rule of the device that still forwards to
+     * a MAC address after it showed up on another port.
+     */
+    private void hostMoved(DeviceId switchId, MacAddress mac, PortNumber from, PortNumber to) {
+        hostMoves.increment();
+        pendingInstalls.release(switchId, mac.toLong());
+        Set<FlowRule> stale = installedRules.take(switchId, mac.toLong());
+        log.info("MAC address `{}` moved from port `{}` to `{}` on `{}`. Remove {} stale flow rules.", mac, from,
+                to, switchId, stale.size());
+        removeRules(switchId, mac, stale);
+    }
+
+    /**
+     * In destination-only mode traffic towards a known host never punts, so
+     * a source whose binding aged out is not learned again while it keeps
+     * sending. A packet to an unknown destination most likely comes from a
+     * peer of that destination: withdrawing the rules towards the peer makes
+     * the traffic sent to it punt again and teaches the bridge its sources.
+     * Only unicast misses count; ARP broadcasts and ND multicasts say nothing
+     * about aged out peers and would churn the rules on every resolution.
+     */
+    private void relearnPeers(DeviceId switchId, MacAddress peer) {
+        Set<FlowRule> rules = installedRules.take(switchId, peer.toLong());
+        if (rules.isEmpty()) {
+            return;
+        }
+        pendingInstalls.release(switchId, peer.toLong());
+        relearnWithdrawals.add(rules.size());
+        log.debug("Withdrawing {} flow rules towards `{}` on `{}` to relearn its peers", rules.size(), peer,
+                switchId);
+        removeRules(switchId, peer, rules);
+    }
+
+    // Removes rules forwarding to a MAC address in one batch.
+    private void removeRules(DeviceId switchId, MacAddress mac, Set<FlowRule> stale) {
+        if (stale.isEmpty()) {
+            return;
+        }
+        FlowRuleOperations.Builder builder = FlowRuleOperations.builder();
+        stale.forEach(builder::remove);
+        flowRuleService.apply(builder.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations ops) {
+                staleRulesRemoved.add(stale.size());
+            }
+
+            @Override
+            public void onError(FlowRuleOperations ops) {
+                log.warn("Failed to remove {} stale flow rules towards {} on {}", stale.size(), mac, switchId);
+            }
+        }));
+    }
+
+    /**
+     * Forgets the port of a destination once the last rule forwarding to it
+     * expired on the device, so the next packet relearns where it went.
+     */
+    private void forgetDestination(FlowKey key, FlowRule rule) {
+        PortNumber port = outputPort(rule.treatment());
+        if (port == null || !port.equals(macTable.lookup(key.deviceId(), key.dst()))) {
+            return;
+        }
+        macTable.remove(key.deviceId(), key.dst());
+        DistributedMacTable shared = distributedTable;
+        if (shared != null) {
+            shared.expired(key.deviceId(), key.dst());
+        }
+        log.debug("Forgot MAC address `{}` on `{}` after its last flow rule was removed",
+                MacAddress.valueOf(key.dst()), key.deviceId());
+    }
+
+    // Returns the first output port of a treatment.
+    private static PortNumber outputPort(TrafficTreatment treatment) {
+        for (Instruction instruction : treatment.allInstructions()) {
+            if (instruction.type() == Instruction.Type.OUTPUT) {
+                return ((Instructions.OutputInstruction) instruction).port();
+            }
+        }
+        return null;
+    }
+
+    // Starts, resizes or stops the packet workers to match the properties.
+    private synchronized void configureWorkers() {
+        PacketOffload current = workers;
+        if (current != null && current.workers() == packetWorkers && current.queueSize() == packetQueueSize
+                && (current instanceof DeviceActors) == (packetWorkerMode == PacketWorkerMode.ACTOR)) {
+            return;
+        }
+        if (packetWorkers == 0) {
+            workers = null;
+        } else if (packetWorkerMode == PacketWorkerMode.ACTOR) {
+            workers = new DeviceActors(packetWorkers, packetQueueSize, processor::forward,
+                    groupedThreads("onos/bridge", "device-actor-%d", log));
+        } else {
+            workers = new PacketWorkers(packetWorkers, packetQueueSize, processor::forward,
+                    groupedThreads("onos/bridge", "packet-worker-%d", log));
+        }
+        if (current != null) {
+            int discarded = current.close();
+            if (discarded > 0) {
+                log.info("Discarded {} packet-ins queued on the previous workers", discarded);
+            }
+        }
+    }
+
+    // Starts or stops the proactive host rules to follow the property.
+    private synchronized void configureProactive() {
+        if (proactiveHosts && proactive == null) {
+            proactive = new ProactiveHosts(hostService, topologyService, deviceService, flowRuleService, appId,
+                    PROACTIVE_PRIORITY);
+            log.info("Installed {} proactive rules", proactive.size());
+        } else if (!proactiveHosts && proactive != null) {
+            proactive.close();
+            proactive = null;
+        }
+    }
+
+    // Opens or closes the cluster-wide MAC table to follow the property.
+    private synchronized void configureDistribution() {
+        if (distributedMacTable && distributedTable == null) {
+            distributedTable = new DistributedMacTable(macTable, storageService, mastershipService);
+        } else if (!distributedMacTable && distributedTable != null) {
+            distributedTable.close();
+            distributedTable = null;
+        }
+    }
+
     /**
      * Whenever a packet goes into a controller, it will do the function.
      * Packet processor responsible for forwarding packets along their paths.
@@ -139,79 +1238,431 @@ public class AppComponent {
                 return;
             }
 
+            /** Shed load from ports that exceed their packet-in rate */
+            long receivedAt = System.nanoTime();
+            switch (rateLimiter.admit(pkt.receivedFrom(), receivedAt)) {
+                case BLOCK:
+                    blockPort(pkt.receivedFrom());
+                    context.block();
+                    trace(pkt, ethPkt, PacketTrace.Decision.BLOCK);
+                    return;
+                case DROP:
+                    context.block();
+                    trace(pkt, ethPkt, PacketTrace.Decision.DROP);
+                    return;
+                default:
+                    break;
+            }
+
+            /** Hand the packet-in over to its worker if the forwarding runs off the dispatch thread */
+            // A buffered packet-in stays here, as only its unclaimed context can release the buffer.
+            PacketOffload offload = workers;
+            if (offload != null && !PacketBuffers.isTruncated(pkt)) {
+                offload(offload, context, receivedAt);
+                return;
+            }
+            forward(context, receivedAt);
+        }
+
+        // Claims the packet-in and queues it on the worker of its device.
+        private void offload(PacketOffload offload, PacketContext context, long receivedAt) {
+            context.block();
+            DeviceId switchId = context.inPacket().receivedFrom().deviceId();
+            QueueOverflowPolicy policy = packetQueueOverflow;
+            boolean queued = policy == QueueOverflowPolicy.BLOCK
+                    ? offload.put(switchId, context, receivedAt)
+                    : offload.offer(switchId, context, receivedAt);
+            if (queued) {
+                return;
+            }
+            queueOverflows.increment();
+            trace(context.inPacket(), context.inPacket().parsed(), PacketTrace.Decision.OVERFLOW);
+            if (policy == QueueOverflowPolicy.FLOOD) {
+                flood(context, switchId, context.inPacket().receivedFrom().port());
+            }
+        }
+
+        /**
+         * Learns from a packet-in and forwards it, on the dispatch thread or
+         * on a packet worker.
+         *
+         * @param context    packet context
+         * @param receivedAt {@code System.nanoTime()} the packet-in arrived at
+         */
+        void forward(PacketContext context, long receivedAt) {
+            InboundPacket pkt = context.inPacket();
+            Ethernet ethPkt = pkt.parsed();
             MacAddress sourceMac = ethPkt.getSourceMAC();
             MacAddress destinationMac = ethPkt.getDestinationMAC();
             DeviceId switchId = pkt.receivedFrom().deviceId();
-            PortNumber inPort = context.inPacket().receivedFrom().port();
+            PortNumber inPort = pkt.receivedFrom().port();
 
             /** Update ONOS mac table */
-            log.info("Add an entry to the port table of `{}`. MAC address: `{}` => Port: `{}`.", switchId, sourceMac,
-                    inPort);
-            updateMacTable(switchId, sourceMac, inPort);
+            MacTable.DeviceTable table = macTable.device(switchId);
+            long source = sourceMac.toLong();
+            PortNumber previous = table.learn(source, inPort);
+            DistributedMacTable shared = distributedTable;
+            if (shared != null) {
+                shared.learned(switchId, source, inPort, previous);
+            }
+            if (previous != null && !previous.equals(inPort)) {
+                hostMoved(switchId, sourceMac, previous, inPort);
+            }
+
+            /** Program the whole path at once if the destination host is known */
+            boolean ecmp = ecmpForwarding;
+            if ((pathForwarding || ecmp) && forwardAlongPath(context, switchId, inPort, sourceMac, destinationMac,
+                    ecmp ? FiveTuple.of(ethPkt) : null, receivedAt)) {
+                hits.increment();
+                trace(pkt, ethPkt, PacketTrace.Decision.PATH);
+                return;
+            }
 
             /** If Query is hit, install a flow rule, else flood the packet */
-            Boolean ifHitTable = macTable.containsKey(switchId)
-                    && macTable.get(switchId).containsKey(destinationMac);
-            if (ifHitTable) {
-                log.info("MAC address `{}` is matched on `{}`. Install a flow rule.", destinationMac, switchId);
-                PortNumber toPort = macTable.get(switchId).get(destinationMac);
-                installFlowRule(context, toPort);
+            PortNumber toPort = table.lookup(destinationMac.toLong());
+            if (toPort == null && shared != null) {
+                toPort = shared.readThrough(switchId, destinationMac.toLong());
+            }
+            if (toPort != null) {
+                hits.increment();
+                trace(pkt, ethPkt, PacketTrace.Decision.FORWARD);
+                installFlowRule(switchId, sourceMac, destinationMac, toPort, receivedAt);
                 packetOut(context, toPort);
             } else {
-                log.info("MAC address `{}` is missed on `{}`. Flood the packet.", destinationMac, switchId);
-                packetOut(context, PortNumber.FLOOD);
+                misses.increment();
+                trace(pkt, ethPkt, PacketTrace.Decision.FLOOD);
+                flood(context, switchId, inPort);
+                if (forwardingMode == ForwardingMode.DST_ONLY
+                        && !destinationMac.isBroadcast() && !destinationMac.isMulticast()) {
+                    relearnPeers(switchId, sourceMac);
+                }
             }
         }
     }
 
-    private void updateMacTable(DeviceId switchId, MacAddress sourceMac, PortNumber inPort) {
-        macTable.computeIfAbsent(switchId, k -> new HashMap<>()).put(sourceMac, inPort);
+    // Samples a packet-in decision into the trace ring.
+    private void trace(InboundPacket pkt, Ethernet ethPkt, PacketTrace.Decision decision) {
+        trace.record(pkt.receivedFrom().deviceId(), pkt.receivedFrom().port(), ethPkt.getSourceMAC().toLong(),
+                ethPkt.getDestinationMAC().toLong(), decision);
+    }
+
+    /**
+     * Floods a packet out of the edge and broadcast tree ports of the switch.
+     * Copies arriving over a link outside the tree are duplicates and get
+     * dropped. The packet is emitted with one output per port because a
+     * packet context only honours its first output. A buffered packet is
+     * released from the switch buffer instead, towards its first tree port
+     * only: its captured bytes are too short to emit as copies, and the
+     * switch flood would ignore the tree. The tree ports it misses are counted.
+     */
+    private void flood(PacketContext context, DeviceId switchId, PortNumber inPort) {
+        floods.increment();
+        if (!treeFlooding) {
+            packetOut(context, PortNumber.FLOOD);
+            return;
+        }
+        TrafficTreatment treatment = broadcastTree.floodTreatment(switchId, inPort);
+        if (treatment != null && !context.isHandled() && PacketBuffers.isTruncated(context.inPacket())) {
+            bufferedFloodDrops.add(treatment.allInstructions().size() - 1);
+            packetOut(context, outputPort(treatment));
+            return;
+        }
+        context.block();
+        if (treatment != null) {
+            packetService.emit(new DefaultOutboundPacket(switchId, treatment, context.inPacket().unparsed()));
+        }
+    }
+
+    /**
+     * Installs a short-lived rule that drops everything arriving on an edge
+     * port in a packet-in storm. Infrastructure ports are never blocked.
+     */
+    private void blockPort(ConnectPoint ingress) {
+        if (stormBlockTime == 0
+                || topologyService.isInfrastructure(topologyService.currentTopology(), ingress)) {
+            return;
+        }
+        log.warn("Blocking {} for {}s after a packet-in storm", ingress, stormBlockTime);
+        flowRuleService.applyFlowRules(DefaultFlowRule.builder()
+                .forDevice(ingress.deviceId())
+                .withSelector(DefaultTrafficSelector.builder().matchInPort(ingress.port()).build())
+                .withTreatment(DefaultTrafficTreatment.builder().drop().build())
+                .withPriority(STORM_BLOCK_PRIORITY)
+                .makeTemporary(stormBlockTime)
+                .withHardTimeout(stormBlockTime)
+                .fromApp(appId)
+                .build());
     }
 
-    // Sends a packet out the specified port.
+    // Sends a packet out the specified port. A context claimed for a packet
+    // worker can no longer be sent, so its packet is emitted instead. Sending
+    // a buffered packet through its context leaves the payload on the switch.
     private void packetOut(PacketContext context, PortNumber portNumber) {
+        InboundPacket pkt = context.inPacket();
+        if (context.isHandled()) {
+            packetService.emit(new DefaultOutboundPacket(pkt.receivedFrom().deviceId(),
+                    outputTreatment(portNumber), pkt.unparsed()));
+            return;
+        }
+        if (PacketBuffers.isTruncated(pkt)) {
+            bufferedPacketOuts.increment();
+            packetOutBytesSaved.add(pkt.unparsed().remaining());
+        }
         context.treatmentBuilder().setOutput(portNumber);
         context.send();
     }
 
-    // Install a flow rule to a switch.
-    private void installFlowRule(PacketContext context, PortNumber portNumber) {
-        InboundPacket pkt = context.inPacket();
-        Ethernet ethPkt = pkt.parsed();
+    /**
+     * Programs every hop from this switch to the destination host and sends
+     * the packet towards the first hop, so the flow costs a single packet-in
+     * whatever the path length. Given a 5-tuple, the rules match only that
+     * flow and the path is picked among the equal-cost ones by its hash.
+     *
+     * @return false if the host or a usable path is unknown
+     */
+    private boolean forwardAlongPath(PacketContext context, DeviceId switchId, PortNumber inPort,
+                                     MacAddress sourceMac, MacAddress destinationMac, FiveTuple tuple,
+                                     long receivedAt) {
+        Host host = hostService.getHost(HostId.hostId(destinationMac));
+        if (host == null) {
+            return false;
+        }
+        HostLocation location = host.location();
+        if (location.deviceId().equals(switchId)) {
+            if (location.port().equals(inPort)) {
+                return false;
+            }
+            installFlowRule(switchId, sourceMac, destinationMac, location.port(), tuple, receivedAt);
+            packetOut(context, location.port());
+            return true;
+        }
+
+        Set<Path> paths = topologyService.getPaths(topologyService.currentTopology(), switchId,
+                location.deviceId());
+        Path path = tuple == null ? pickForwardPath(paths, inPort) : pickEcmpPath(paths, inPort, tuple.hash());
+        if (path == null) {
+            return false;
+        }
+
+        // Program from the host backwards so upstream hops never outrun downstream ones.
+        installFlowRule(location.deviceId(), sourceMac, destinationMac, location.port(), tuple, receivedAt);
+        List<Link> links = path.links();
+        for (int i = links.size() - 1; i >= 0; i--) {
+            ConnectPoint egress = links.get(i).src();
+            installFlowRule(egress.deviceId(), sourceMac, destinationMac, egress.port(), tuple, receivedAt);
+        }
+        packetOut(context, path.src().port());
+        return true;
+    }
+
+    // Picks a path that does not lead back out of the port the packet came in on.
+    private Path pickForwardPath(Set<Path> paths, PortNumber notToPort) {
+        for (Path path : paths) {
+            if (!path.src().port().equals(notToPort)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    // Picks one of the equal-cost paths that do not lead back out of the ingress
+    // port by flow hash. Candidates are totally ordered by their links, so every
+    // packet-in of a flow lands on the same path whatever order the topology
+    // returns them in, and distinct paths never tie.
+    private Path pickEcmpPath(Set<Path> paths, PortNumber notToPort, int hash) {
+        if (paths.size() <= 1) {
+            return pickForwardPath(paths, notToPort);
+        }
+        List<Path> candidates = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            if (!path.src().port().equals(notToPort)) {
+                candidates.add(path);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        candidates.sort(PATH_ORDER);
+        ecmpSelections.increment();
+        return candidates.get(Math.floorMod(hash, candidates.size()));
+    }
 
-        if (ethPkt == null) {
+    // Install a flow rule to a switch, unless the same install is still in flight.
+    // The install is timed from receivedAt, the System.nanoTime() of the packet-in.
+    private void installFlowRule(DeviceId switchId, MacAddress sourceMac, MacAddress destinationMac,
+                                 PortNumber portNumber, long receivedAt) {
+        installFlowRule(switchId, sourceMac, destinationMac, portNumber, null, receivedAt);
+    }
+
+    // A non-null tuple narrows the rule to that one IPv4 flow, above the MAC rules.
+    private void installFlowRule(DeviceId switchId, MacAddress sourceMac, MacAddress destinationMac,
+                                 PortNumber portNumber, FiveTuple tuple, long receivedAt) {
+        boolean matchSource = tuple != null || forwardingMode == ForwardingMode.SRC_DST;
+        FlowKey key = new FlowKey(switchId, matchSource ? sourceMac.toLong() : FlowKey.ANY_SOURCE,
+                destinationMac.toLong(), tuple);
+        if (!pendingInstalls.claim(key, receivedAt)) {
             return;
         }
+        int timeout = flowStatsPollInterval == 0 ? DEFAULT_TIMEOUT : flowLifetimes.timeoutFor(key, receivedAt);
+        TrafficSelector selector;
+        if (tuple != null) {
+            selector = tuple.selector(sourceMac, destinationMac);
+        } else if (matchSource) {
+            selector = pairSelector(sourceMac, destinationMac);
+        } else {
+            selector = destinationSelector(destinationMac);
+        }
+        TrafficTreatment treatment = outputTreatment(portNumber);
+        FlowProgrammer programmer = flowProgrammer;
+        installs.increment();
+        installLatency.requested(key, programmer.backend(), receivedAt);
+        programmer.install(switchId, selector, treatment, tuple == null ? DEFAULT_PRIORITY : ECMP_PRIORITY,
+                timeout);
+    }
+
+    // Creates the programmer of the given backend.
+    private FlowProgrammer programmer(FlowBackend backend) {
+        switch (backend) {
+            case FLOW_RULE:
+                return new RuleFlowProgrammer(flowRuleBatcher, appId);
+            case OBJECTIVE:
+            default:
+                return new ObjectiveFlowProgrammer(flowObjectiveService, appId);
+        }
+    }
 
-        MacAddress sourceMac = ethPkt.getSourceMAC();
-        MacAddress destinationMac = ethPkt.getDestinationMAC();
-        DeviceId switchId = pkt.receivedFrom().deviceId(); // The one sending pktIn to the controller.
-        /**
-         * FlowObjectiveService
-         */
-        TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
-        TrafficTreatment treatment;
-        selector.matchEthSrc(MacAddress.valueOf(sourceMac.toString()))
-                .matchEthDst(MacAddress.valueOf(destinationMac.toString()));
-        treatment = context.treatmentBuilder().setOutput(portNumber).build();
-        ForwardingObjective forwardingObjective = DefaultForwardingObjective.builder()
-                .withSelector(selector.build())
-                .withTreatment(treatment)
-                .withPriority(DEFAULT_PRIORITY)
-                .withFlag(ForwardingObjective.Flag.VERSATILE)
-                .fromApp(appId)
-                .makeTemporary(DEFAULT_TIMEOUT)
-                .add();
-        flowObjectiveService.forward(switchId, forwardingObjective);
+    // Returns the shared treatment that outputs to the given port.
+    private TrafficTreatment outputTreatment(PortNumber portNumber) {
+        TrafficTreatment treatment = outputTreatments.get(portNumber);
+        if (treatment == null) {
+            treatment = outputTreatments.computeIfAbsent(portNumber,
+                    port -> DefaultTrafficTreatment.builder().setOutput(port).build());
+        }
+        return treatment;
+    }
+
+    // Returns the shared selector matching only the given destination MAC.
+    private TrafficSelector destinationSelector(MacAddress destinationMac) {
+        TrafficSelector selector = destinationSelectors.get(destinationMac);
+        if (selector == null) {
+            if (destinationSelectors.size() >= SELECTOR_CACHE_SIZE) {
+                destinationSelectors.clear();
+            }
+            selector = destinationSelectors.computeIfAbsent(destinationMac,
+                    mac -> DefaultTrafficSelector.builder().matchEthDst(mac).build());
+        }
+        return selector;
+    }
+
+    // Returns the shared selector matching the given source and destination MACs.
+    private TrafficSelector pairSelector(MacAddress sourceMac, MacAddress destinationMac) {
+        ConcurrentMap<MacAddress, TrafficSelector> sources = pairSelectors.get(destinationMac);
+        TrafficSelector selector = sources == null ? null : sources.get(sourceMac);
+        if (selector == null) {
+            if (pairSelectorCount.get() >= SELECTOR_CACHE_SIZE) {
+                pairSelectors.clear();
+                pairSelectorCount.set(0);
+            }
+            selector = pairSelectors.computeIfAbsent(destinationMac, mac -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(sourceMac, mac -> {
+                        pairSelectorCount.incrementAndGet();
+                        return DefaultTrafficSelector.builder().matchEthSrc(mac).matchEthDst(destinationMac).build();
+                    });
+        }
+        return selector;
+    }
+
+    /**
+     * Clears pending installs once the switch reports the rule, and keeps
+     * the installed rule index and the MAC table in step with the switches.
+     * Proactive rules follow the host service instead and are ignored.
+     */
+    private class InternalFlowRuleListener implements FlowRuleListener {
+
+        @Override
+        public boolean isRelevant(FlowRuleEvent event) {
+            return event.subject().appId() == appId.id() && event.subject().priority() != PROACTIVE_PRIORITY;
+        }
+
+        @Override
+        public void event(FlowRuleEvent event) {
+            FlowRule rule = event.subject();
+            FlowKey key = FlowKey.of(rule);
+            if (key == null) {
+                return;
+            }
+            switch (event.type()) {
+                case RULE_ADDED:
+                    pendingInstalls.confirm(key);
+                    installLatency.added(key, System.nanoTime());
+                    installedRules.added(key, rule);
+                    break;
+                case RULE_REMOVED:
+                    pendingInstalls.confirm(key);
+                    flowLifetimes.removed(key, rule instanceof FlowEntry ? ((FlowEntry) rule).packets() : 0,
+                            System.nanoTime());
+                    if (installedRules.removed(key, rule)) {
+                        forgetDestination(key, rule);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recomputes flood ports of devices whose ports change.
+     */
+    private class InternalDeviceListener implements DeviceListener {
+
+        @Override
+        public void event(DeviceEvent event) {
+            switch (event.type()) {
+                case PORT_ADDED:
+                case PORT_UPDATED:
+                case PORT_REMOVED:
+                case DEVICE_REMOVED:
+                case DEVICE_AVAILABILITY_CHANGED:
+                    broadcastTree.invalidate(event.subject().id());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recomputes flood ports once links come or go. One link can reshape the
+     * broadcast tree of its whole cluster, so every device is recomputed.
+     */
+    private class InternalTopologyListener implements TopologyListener {
+
+        @Override
+        public void event(TopologyEvent event) {
+            List<Event> reasons = event.reasons();
+            if (reasons == null || reasons.stream().anyMatch(reason -> reason instanceof LinkEvent)) {
+                broadcastTree.clear();
+            }
+        }
     }
 
     /**
      * Request packet in via packet service.
+     * In destination-only mode known destinations no longer punt, so ARP is
+     * requested as well; every host ARPs before talking IPv4, and those
+     * broadcasts keep teaching the bridge about new sources.
      */
     private void requestIntercepts() {
         TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
         selector.matchEthType(Ethernet.TYPE_IPV4);
         packetService.requestPackets(selector.build(), PacketPriority.REACTIVE, appId);
+        selector.matchEthType(Ethernet.TYPE_ARP);
+        if (forwardingMode == ForwardingMode.DST_ONLY) {
+            packetService.requestPackets(selector.build(), PacketPriority.REACTIVE, appId);
+        } else {
+            packetService.cancelPackets(selector.build(), PacketPriority.REACTIVE, appId);
+        }
     }
 
     /**
@@ -223,5 +1674,7 @@ public class AppComponent {
         packetService.cancelPackets(selector.build(), PacketPriority.REACTIVE, appId);
         selector.matchEthType(Ethernet.TYPE_IPV6);
         packetService.cancelPackets(selector.build(), PacketPriority.REACTIVE, appId);
+        selector.matchEthType(Ethernet.TYPE_ARP);
+        packetService.cancelPackets(selector.build(), PacketPriority.REACTIVE, appId);
     }
 }
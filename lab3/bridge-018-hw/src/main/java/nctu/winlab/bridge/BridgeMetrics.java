@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.codahale.metrics.Gauge;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onosproject.net.DeviceId;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Publishes the bridge counters and install latency histograms through the
+ * ONOS {@link MetricsService}, under the {@value #COMPONENT} component.
+ * <p>
+ * Every metric is a gauge reading a counter or histogram of the bridge when
+ * it is polled, so the packet path pays nothing for publishing. Histogram
+ * gauges of a device appear on the first {@link #refresh(Map)} after the
+ * device confirmed a rule.
+ */
+final class BridgeMetrics {
+
+    static final String COMPONENT = "nctu.winlab.bridge";
+    static final String PACKETS = "packets";
+    static final String INSTALL_LATENCY = "installLatency";
+
+    private static final String[] HISTOGRAM_GAUGES = {"count", "p50", "p99", "p999", "max"};
+
+    private final MetricsService metricsService;
+    private final MetricsComponent component;
+    private final MetricsFeature packets;
+    private final MetricsFeature installLatency;
+    private final Set<String> packetMetrics = new HashSet<>();
+    private final Set<DeviceId> devices = new HashSet<>();
+
+    /**
+     * Registers the bridge component with the metrics service.
+     *
+     * @param metricsService metrics service
+     */
+    BridgeMetrics(MetricsService metricsService) {
+        this.metricsService = metricsService;
+        this.component = metricsService.registerComponent(COMPONENT);
+        this.packets = component.registerFeature(PACKETS);
+        this.installLatency = component.registerFeature(INSTALL_LATENCY);
+    }
+
+    /**
+     * Publishes a counter of the packet path.
+     *
+     * @param name    metric name
+     * @param counter counter read when the metric is polled
+     */
+    synchronized void counter(String name, LongAdder counter) {
+        metricsService.registerMetric(component, packets, name, (Gauge<Long>) counter::sum);
+        packetMetrics.add(name);
+    }
+
+    /**
+     * Publishes a value of the bridge read when the metric is polled.
+     *
+     * @param name  metric name
+     * @param value supplier of the value
+     */
+    synchronized void gauge(String name, LongSupplier value) {
+        metricsService.registerMetric(component, packets, name, (Gauge<Long>) value::getAsLong);
+        packetMetrics.add(name);
+    }
+
+    /**
+     * Publishes the histograms of devices seen for the first time: sample
+     * count, median, 99th and 99.9th percentiles and maximum, in
+     * microseconds, named after the device.
+     *
+     * @param histograms install latency histogram of each device
+     */
+    synchronized void refresh(Map<DeviceId, LatencyHistogram> histograms) {
+        histograms.forEach((deviceId, histogram) -> {
+            if (devices.add(deviceId)) {
+                gauge(deviceId, "count", histogram, LatencyHistogram::count);
+                gauge(deviceId, "p50", histogram, h -> h.percentileMicros(50));
+                gauge(deviceId, "p99", histogram, h -> h.percentileMicros(99));
+                gauge(deviceId, "p999", histogram, h -> h.percentileMicros(99.9));
+                gauge(deviceId, "max", histogram, LatencyHistogram::maxMicros);
+            }
+        });
+    }
+
+    /**
+     * Withdraws every metric published so far.
+     */
+    synchronized void close() {
+        packetMetrics.forEach(name -> metricsService.removeMetric(component, packets, name));
+        packetMetrics.clear();
+        for (DeviceId deviceId : devices) {
+            for (String suffix : HISTOGRAM_GAUGES) {
+                metricsService.removeMetric(component, installLatency, name(deviceId, suffix));
+            }
+        }
+        devices.clear();
+    }
+
+    private void gauge(DeviceId deviceId, String suffix, LatencyHistogram histogram,
+                       ToLongFunction<LatencyHistogram> reading) {
+        metricsService.registerMetric(component, installLatency, name(deviceId, suffix),
+                (Gauge<Long>) () -> reading.applyAsLong(histogram));
+    }
+
+    private static String name(DeviceId deviceId, String suffix) {
+        return deviceId + "." + suffix;
+    }
+}
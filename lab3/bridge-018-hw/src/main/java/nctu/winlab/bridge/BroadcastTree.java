@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableSet;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Flood port sets that follow the broadcast tree of each topology cluster.
+ * <p>
+ * A port floods when it is an edge port or when its link belongs to the
+ * cluster broadcast tree maintained by {@link TopologyService}, so a flooded
+ * frame crosses every link at most once. Port sets are computed lazily per
+ * device and recomputed when the topology snapshot changes, a link comes or
+ * goes, or the device reports a port change. The flood treatment for each ingress port is built
+ * once per port set and shared by every flooded packet.
+ */
+final class BroadcastTree {
+
+    private final TopologyService topologyService;
+    private final DeviceService deviceService;
+    private final ConcurrentMap<DeviceId, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a broadcast tree view.
+     *
+     * @param topologyService topology service providing the broadcast sets
+     * @param deviceService   device service providing the device ports
+     */
+    BroadcastTree(TopologyService topologyService, DeviceService deviceService) {
+        this.topologyService = topologyService;
+        this.deviceService = deviceService;
+    }
+
+    /**
+     * Returns the ports of a device that a flooded frame must leave from.
+     *
+     * @param deviceId device identifier
+     * @return enabled edge and broadcast tree ports of the device
+     */
+    ImmutableSet<PortNumber> floodPorts(DeviceId deviceId) {
+        return entry(deviceId).ports;
+    }
+
+    /**
+     * Returns the treatment that floods a frame received on the given port.
+     *
+     * @param deviceId device identifier
+     * @param inPort   port the frame was received on
+     * @return treatment with one output per flood port other than the ingress
+     * port, or null if the frame must not be flooded because it arrived over
+     * a link outside the tree or there is nowhere else to send it
+     */
+    TrafficTreatment floodTreatment(DeviceId deviceId, PortNumber inPort) {
+        Entry entry = entry(deviceId);
+        if (!entry.ports.contains(inPort)) {
+            return null;
+        }
+        TrafficTreatment treatment = entry.treatments.get(inPort);
+        if (treatment == null) {
+            treatment = entry.treatments.computeIfAbsent(inPort, entry::buildTreatment);
+        }
+        return treatment.allInstructions().isEmpty() ? null : treatment;
+    }
+
+    private Entry entry(DeviceId deviceId) {
+        Topology topology = topologyService.currentTopology();
+        Entry entry = entries.get(deviceId);
+        if (entry == null || entry.topology != topology) {
+            entry = new Entry(topology, compute(topology, deviceId));
+            entries.put(deviceId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Forgets the port set of a device after one of its ports changed.
+     *
+     * @param deviceId device identifier
+     */
+    void invalidate(DeviceId deviceId) {
+        entries.remove(deviceId);
+    }
+
+    /**
+     * Forgets every port set, after a link change that may reshape the tree.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    private ImmutableSet<PortNumber> compute(Topology topology, DeviceId deviceId) {
+        ImmutableSet.Builder<PortNumber> ports = ImmutableSet.builder();
+        for (Port port : deviceService.getPorts(deviceId)) {
+            if (!port.isEnabled() || port.number().isLogical()) {
+                continue;
+            }
+            ConnectPoint point = new ConnectPoint(deviceId, port.number());
+            if (topologyService.isBroadcastPoint(topology, point)) {
+                ports.add(port.number());
+            }
+        }
+        return ports.build();
+    }
+
+    // Port set computed against one topology snapshot.
+    private static final class Entry {
+        private final Topology topology;
+        private final ImmutableSet<PortNumber> ports;
+        private final ConcurrentMap<PortNumber, TrafficTreatment> treatments = new ConcurrentHashMap<>();
+
+        private Entry(Topology topology, ImmutableSet<PortNumber> ports) {
+            this.topology = topology;
+            this.ports = ports;
+        }
+
+        private TrafficTreatment buildTreatment(PortNumber inPort) {
+            TrafficTreatment.Builder builder = DefaultTrafficTreatment.builder();
+            for (PortNumber port : ports) {
+                if (!port.equals(inPort)) {
+                    builder.setOutput(port);
+                }
+            }
+            return builder.build();
+        }
+    }
+}
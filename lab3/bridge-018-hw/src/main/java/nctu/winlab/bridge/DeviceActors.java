@@ -0,0 +1,225 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * One actor per device on a shared thread pool. Each device owns a bounded,
+ * lock-free mailbox; an actor is scheduled on the pool whenever its mailbox
+ * turns non-empty and drains it serially, so the packet-ins of a device are
+ * handled by one thread at a time and in arrival order, with no lock
+ * between the dispatch thread and the worker. Unlike the fixed shards of
+ * {@link PacketWorkers}, a busy device never holds up the devices that
+ * would hash to the same shard: idle threads pick up any runnable actor.
+ * <p>
+ * An actor hands its thread back after {@link #BATCH} packet-ins so a
+ * flooding device cannot starve the others.
+ */
+final class DeviceActors implements PacketOffload {
+
+    static final int BATCH = 64;
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<DeviceId, Actor> actors = new ConcurrentHashMap<>();
+    private final ExecutorService pool;
+    private final int threads;
+    private final int mailboxSize;
+    private final Handler handler;
+    private final LongAdder handled = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /**
+     * Starts the thread pool the actors run on.
+     *
+     * @param threads       number of pool threads
+     * @param mailboxSize   packet-ins each device may have waiting
+     * @param handler       handler run for each packet-in
+     * @param threadFactory factory of the pool threads
+     */
+    DeviceActors(int threads, int mailboxSize, Handler handler, ThreadFactory threadFactory) {
+        checkArgument(threads > 0, "Thread count must be positive");
+        checkArgument(mailboxSize > 0, "Mailbox size must be positive");
+        this.threads = threads;
+        this.mailboxSize = mailboxSize;
+        this.handler = handler;
+        this.pool = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    @Override
+    public int workers() {
+        return threads;
+    }
+
+    @Override
+    public int queueSize() {
+        return mailboxSize;
+    }
+
+    @Override
+    public boolean offer(DeviceId deviceId, PacketContext context, long receivedAt) {
+        if (!running) {
+            return false;
+        }
+        Actor actor = actors.get(deviceId);
+        if (actor == null) {
+            actor = actors.computeIfAbsent(deviceId, k -> new Actor());
+        }
+        return actor.tell(new Job(context, receivedAt));
+    }
+
+    @Override
+    public boolean put(DeviceId deviceId, PacketContext context, long receivedAt) {
+        while (running) {
+            if (offer(deviceId, context, receivedAt)) {
+                return true;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int depth() {
+        int depth = 0;
+        for (Actor actor : actors.values()) {
+            depth += actor.size.get();
+        }
+        return depth;
+    }
+
+    @Override
+    public int maxDepth() {
+        int depth = 0;
+        for (Actor actor : actors.values()) {
+            depth = Math.max(depth, actor.size.get());
+        }
+        return depth;
+    }
+
+    @Override
+    public long handled() {
+        return handled.sum();
+    }
+
+    /**
+     * Returns the number of devices that have an actor.
+     *
+     * @return actor count
+     */
+    int actors() {
+        return actors.size();
+    }
+
+    @Override
+    public int close() {
+        running = false;
+        pool.shutdownNow();
+        int discarded = 0;
+        for (Actor actor : actors.values()) {
+            discarded += actor.size.getAndSet(0);
+            actor.mailbox.clear();
+        }
+        actors.clear();
+        return discarded;
+    }
+
+    // Mailbox of one device, drained by at most one pool thread at a time.
+    private final class Actor implements Runnable {
+        private final Queue<Job> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private boolean tell(Job job) {
+            if (size.incrementAndGet() > mailboxSize) {
+                size.decrementAndGet();
+                return false;
+            }
+            mailbox.offer(job);
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH && running; i++) {
+                Job job = mailbox.poll();
+                if (job == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                try {
+                    handler.handle(job.context, job.receivedAt);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to handle a packet-in", e);
+                }
+                handled.increment();
+            }
+            scheduled.set(false);
+            // A packet-in told after the last poll found the actor still scheduled.
+            if (running && !mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    // Packet-in waiting in a mailbox.
+    private static final class Job {
+        private final PacketContext context;
+        private final long receivedAt;
+
+        private Job(PacketContext context, long receivedAt) {
+            this.context = context;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onlab.util.KryoNamespace;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapEvent;
+import org.onosproject.store.service.EventuallyConsistentMapListener;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.WallClockTimestamp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster-wide MAC to port bindings backed by an eventually consistent map.
+ * <p>
+ * The local {@link MacTable} stays the table the packet path reads and
+ * writes. Only bindings that are new or moved are published to the map, so
+ * relearning a known host costs no replication. Bindings learned by other
+ * instances are applied to the local table as they arrive, and a local miss
+ * reads through to the map before the caller floods. A new instance seeds
+ * its table from the map, so it forwards right away after a failover.
+ * Entries that age out or are evicted for capacity locally are withdrawn
+ * from the map only by the master of their device, which receives the
+ * packet-ins that keep them fresh; other instances just drop their cached
+ * copy, so a replica that hears nothing from the host cannot delete the
+ * binding the master still refreshes. A master that still sees the host
+ * publishes it again on its next packet-in. The map thus stays bounded by
+ * the capacity of the masters' tables.
+ */
+final class DistributedMacTable {
+
+    static final String MAP_NAME = "nctu-winlab-bridge-mac-table";
+
+    private final MacTable cache;
+    private final MastershipService mastershipService;
+    private final EventuallyConsistentMap<MacTableKey, PortNumber> bindings;
+    private final EventuallyConsistentMapListener<MacTableKey, PortNumber> listener = new InternalMapListener();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder readThroughs = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+
+    /**
+     * Opens the distributed table and seeds the local table from it.
+     *
+     * @param cache             local table used by the packet path
+     * @param storageService    storage service providing the map
+     * @param mastershipService mastership service telling which instance
+     *                          may withdraw the bindings of a device
+     */
+    DistributedMacTable(MacTable cache, StorageService storageService, MastershipService mastershipService) {
+        this.cache = cache;
+        this.mastershipService = mastershipService;
+        KryoNamespace.Builder serializer = KryoNamespace.newBuilder()
+                .register(KryoNamespaces.API)
+                .register(MacTableKey.class);
+        this.bindings = storageService.<MacTableKey, PortNumber>eventuallyConsistentMapBuilder()
+                .withName(MAP_NAME)
+                .withSerializer(serializer)
+                .withTimestampProvider((key, port) -> new WallClockTimestamp())
+                .build();
+        bindings.addListener(listener);
+        cache.setEvictionListener(this::evicted);
+        bindings.entrySet().forEach(e -> cache.learn(e.getKey().deviceId(), e.getKey().mac(), e.getValue()));
+    }
+
+    /**
+     * Publishes a binding the packet path just learned.
+     *
+     * @param deviceId device the MAC was seen on
+     * @param mac      MAC address as a long
+     * @param port     port the MAC was seen on
+     * @param previous port the local table held before, or null
+     */
+    void learned(DeviceId deviceId, long mac, PortNumber port, PortNumber previous) {
+        if (!port.equals(previous)) {
+            bindings.put(new MacTableKey(deviceId, mac), port);
+            published.increment();
+        }
+    }
+
+    /**
+     * Looks up a MAC the local table does not know, caching what is found.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as a long
+     * @return port bound by another instance, or null if the MAC is unknown
+     */
+    PortNumber readThrough(DeviceId deviceId, long mac) {
+        PortNumber port = bindings.get(new MacTableKey(deviceId, mac));
+        if (port != null) {
+            cache.learn(deviceId, mac, port);
+            readThroughs.increment();
+        }
+        return port;
+    }
+
+    /**
+     * Withdraws a binding that aged out of the local table, if this instance
+     * is the master of its device. Elsewhere only the local copy goes.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as a long
+     */
+    void expired(DeviceId deviceId, long mac) {
+        withdraw(deviceId, mac);
+    }
+
+    /**
+     * Withdraws a binding evicted from the local table for capacity, if this
+     * instance is the master of its device. Elsewhere only the local copy
+     * goes.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as a long
+     */
+    void evicted(DeviceId deviceId, long mac) {
+        withdraw(deviceId, mac);
+    }
+
+    private void withdraw(DeviceId deviceId, long mac) {
+        if (mastershipService.isLocalMaster(deviceId)) {
+            bindings.remove(new MacTableKey(deviceId, mac));
+        }
+    }
+
+    /**
+     * Returns the number of bindings this instance published.
+     *
+     * @return published binding count
+     */
+    long published() {
+        return published.sum();
+    }
+
+    /**
+     * Returns the number of local misses answered by the map.
+     *
+     * @return read-through hit count
+     */
+    long readThroughs() {
+        return readThroughs.sum();
+    }
+
+    /**
+     * Returns the number of map updates applied to the local table.
+     *
+     * @return applied update count
+     */
+    long applied() {
+        return applied.sum();
+    }
+
+    /**
+     * Stops following the map and releases the local replica. The bindings
+     * stay available to the other instances.
+     */
+    void close() {
+        cache.setEvictionListener(null);
+        bindings.removeListener(listener);
+        bindings.destroy();
+    }
+
+    // Mirrors bindings learned or withdrawn elsewhere into the local table.
+    private class InternalMapListener implements EventuallyConsistentMapListener<MacTableKey, PortNumber> {
+        @Override
+        public void event(EventuallyConsistentMapEvent<MacTableKey, PortNumber> event) {
+            MacTableKey key = event.key();
+            switch (event.type()) {
+                case PUT:
+                    if (!event.value().equals(cache.lookup(key.deviceId(), key.mac()))) {
+                        cache.learn(key.deviceId(), key.mac(), event.value());
+                        applied.increment();
+                    }
+                    break;
+                case REMOVE:
+                    if (cache.remove(key.deviceId(), key.mac()) != null) {
+                        applied.increment();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
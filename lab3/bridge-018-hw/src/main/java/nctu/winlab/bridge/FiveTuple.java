@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.TCP;
+import org.onlab.packet.TpPort;
+import org.onlab.packet.UDP;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.flow.criteria.IPProtocolCriterion;
+import org.onosproject.net.flow.criteria.TcpPortCriterion;
+import org.onosproject.net.flow.criteria.UdpPortCriterion;
+
+/**
+ * IPv4 5-tuple of a flow: addresses, protocol and, for TCP and UDP, ports.
+ * <p>
+ * The tuple is read either from a frame or from the selector of a rule
+ * built by {@link #selector(MacAddress, MacAddress)}, and both give equal
+ * tuples, so rule events can be matched to the packet-ins they came from.
+ * Its {@link #hash()} spreads flows evenly over equal-cost paths.
+ */
+final class FiveTuple {
+
+    private final int srcIp;
+    private final int dstIp;
+    private final byte protocol;
+    private final int srcPort;
+    private final int dstPort;
+
+    private FiveTuple(int srcIp, int dstIp, byte protocol, int srcPort, int dstPort) {
+        this.srcIp = srcIp;
+        this.dstIp = dstIp;
+        this.protocol = protocol;
+        this.srcPort = srcPort;
+        this.dstPort = dstPort;
+    }
+
+    /**
+     * Reads the tuple of a frame.
+     *
+     * @param frame parsed Ethernet frame
+     * @return tuple, or null if the frame is not IPv4
+     */
+    static FiveTuple of(Ethernet frame) {
+        if (frame.getEtherType() != Ethernet.TYPE_IPV4 || !(frame.getPayload() instanceof IPv4)) {
+            return null;
+        }
+        IPv4 ip = (IPv4) frame.getPayload();
+        int srcPort = 0;
+        int dstPort = 0;
+        if (ip.getPayload() instanceof TCP) {
+            srcPort = ((TCP) ip.getPayload()).getSourcePort();
+            dstPort = ((TCP) ip.getPayload()).getDestinationPort();
+        } else if (ip.getPayload() instanceof UDP) {
+            srcPort = ((UDP) ip.getPayload()).getSourcePort();
+            dstPort = ((UDP) ip.getPayload()).getDestinationPort();
+        }
+        return new FiveTuple(ip.getSourceAddress(), ip.getDestinationAddress(), ip.getProtocol(), srcPort, dstPort);
+    }
+
+    /**
+     * Reads the tuple a rule selector matches.
+     *
+     * @param selector traffic selector
+     * @return tuple, or null if the selector does not match IPv4 addresses
+     */
+    static FiveTuple of(TrafficSelector selector) {
+        Criterion src = selector.getCriterion(Criterion.Type.IPV4_SRC);
+        Criterion dst = selector.getCriterion(Criterion.Type.IPV4_DST);
+        Criterion proto = selector.getCriterion(Criterion.Type.IP_PROTO);
+        if (src == null || dst == null || proto == null) {
+            return null;
+        }
+        byte protocol = (byte) ((IPProtocolCriterion) proto).protocol();
+        int srcPort = 0;
+        int dstPort = 0;
+        if (protocol == IPv4.PROTOCOL_TCP) {
+            srcPort = tcpPort(selector, Criterion.Type.TCP_SRC);
+            dstPort = tcpPort(selector, Criterion.Type.TCP_DST);
+        } else if (protocol == IPv4.PROTOCOL_UDP) {
+            srcPort = udpPort(selector, Criterion.Type.UDP_SRC);
+            dstPort = udpPort(selector, Criterion.Type.UDP_DST);
+        }
+        return new FiveTuple(((IPCriterion) src).ip().address().getIp4Address().toInt(),
+                             ((IPCriterion) dst).ip().address().getIp4Address().toInt(),
+                             protocol, srcPort, dstPort);
+    }
+
+    private static int tcpPort(TrafficSelector selector, Criterion.Type type) {
+        Criterion port = selector.getCriterion(type);
+        return port == null ? 0 : ((TcpPortCriterion) port).tcpPort().toInt();
+    }
+
+    private static int udpPort(TrafficSelector selector, Criterion.Type type) {
+        Criterion port = selector.getCriterion(type);
+        return port == null ? 0 : ((UdpPortCriterion) port).udpPort().toInt();
+    }
+
+    /**
+     * Builds a selector matching this tuple between two MAC addresses.
+     *
+     * @param srcMac source MAC address
+     * @param dstMac destination MAC address
+     * @return traffic selector
+     */
+    TrafficSelector selector(MacAddress srcMac, MacAddress dstMac) {
+        TrafficSelector.Builder builder = DefaultTrafficSelector.builder()
+                .matchEthSrc(srcMac)
+                .matchEthDst(dstMac)
+                .matchEthType(Ethernet.TYPE_IPV4)
+                .matchIPSrc(IpPrefix.valueOf(Ip4Address.valueOf(srcIp), Ip4Address.BIT_LENGTH))
+                .matchIPDst(IpPrefix.valueOf(Ip4Address.valueOf(dstIp), Ip4Address.BIT_LENGTH))
+                .matchIPProtocol(protocol);
+        if (protocol == IPv4.PROTOCOL_TCP) {
+            builder.matchTcpSrc(TpPort.tpPort(srcPort)).matchTcpDst(TpPort.tpPort(dstPort));
+        } else if (protocol == IPv4.PROTOCOL_UDP) {
+            builder.matchUdpSrc(TpPort.tpPort(srcPort)).matchUdpDst(TpPort.tpPort(dstPort));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a well mixed hash of the tuple for picking one of several
+     * equal-cost paths; flows that differ in any field land on unrelated
+     * paths.
+     *
+     * @return hash of the tuple
+     */
+    int hash() {
+        long h = ((long) srcIp << 32) ^ (dstIp & 0xffffffffL);
+        h ^= ((long) (protocol & 0xff) << 40) ^ ((long) srcPort << 16) ^ dstPort;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FiveTuple)) {
+            return false;
+        }
+        FiveTuple that = (FiveTuple) obj;
+        return srcIp == that.srcIp && dstIp == that.dstIp && protocol == that.protocol
+                && srcPort == that.srcPort && dstPort == that.dstPort;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("src", Ip4Address.valueOf(srcIp) + ":" + srcPort)
+                .add("dst", Ip4Address.valueOf(dstIp) + ":" + dstPort)
+                .add("protocol", protocol & 0xff)
+                .toString();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Identifies a bridge flow by the device it is installed on, the source and
+ * destination MAC addresses it matches and, for multipath rules, the IPv4
+ * 5-tuple it matches.
+ */
+final class FlowKey {
+
+    /** Source value used for rules that do not match on the source MAC. */
+    static final long ANY_SOURCE = 0L;
+
+    private final DeviceId deviceId;
+    private final long src;
+    private final long dst;
+    private final FiveTuple tuple;
+
+    /**
+     * Creates a flow key.
+     *
+     * @param deviceId device the flow is installed on
+     * @param src      source MAC as a long, or {@link #ANY_SOURCE}
+     * @param dst      destination MAC as a long
+     */
+    FlowKey(DeviceId deviceId, long src, long dst) {
+        this(deviceId, src, dst, null);
+    }
+
+    /**
+     * Creates a flow key.
+     *
+     * @param deviceId device the flow is installed on
+     * @param src      source MAC as a long, or {@link #ANY_SOURCE}
+     * @param dst      destination MAC as a long
+     * @param tuple    5-tuple the flow matches, or null for a MAC-only flow
+     */
+    FlowKey(DeviceId deviceId, long src, long dst, FiveTuple tuple) {
+        this.deviceId = deviceId;
+        this.src = src;
+        this.dst = dst;
+        this.tuple = tuple;
+    }
+
+    /**
+     * Extracts the key of a flow rule installed by the bridge.
+     *
+     * @param rule flow rule
+     * @return flow key, or null if the rule does not match a destination MAC
+     */
+    static FlowKey of(FlowRule rule) {
+        Criterion dst = rule.selector().getCriterion(Criterion.Type.ETH_DST);
+        if (dst == null) {
+            return null;
+        }
+        Criterion src = rule.selector().getCriterion(Criterion.Type.ETH_SRC);
+        return new FlowKey(rule.deviceId(),
+                           src == null ? ANY_SOURCE : ((EthCriterion) src).mac().toLong(),
+                           ((EthCriterion) dst).mac().toLong(),
+                           FiveTuple.of(rule.selector()));
+    }
+
+    DeviceId deviceId() {
+        return deviceId;
+    }
+
+    long src() {
+        return src;
+    }
+
+    long dst() {
+        return dst;
+    }
+
+    FiveTuple tuple() {
+        return tuple;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FlowKey)) {
+            return false;
+        }
+        FlowKey that = (FlowKey) obj;
+        return src == that.src && dst == that.dst && deviceId.equals(that.deviceId)
+                && Objects.equals(tuple, that.tuple);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceId, src, dst, tuple);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("src", src == ANY_SOURCE ? "*" : MacAddress.valueOf(src))
+                .add("dst", MacAddress.valueOf(dst))
+                .add("tuple", tuple)
+                .toString();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Adaptive idle timeouts for bridge flows.
+ * <p>
+ * Every flow starts with the minimum idle timeout, so short flows give
+ * their table entry back quickly. Packet counters polled from the switches
+ * are recorded per flow. When a rule that carried traffic expires and the
+ * same flow comes back to the controller before one more timeout has
+ * passed, the flow is steady but bursty, and its timeout is doubled up to
+ * the maximum. When a rule expires having carried at most one packet, its
+ * timeout is halved down to the minimum.
+ */
+final class FlowLifetimes {
+
+    private final ConcurrentMap<FlowKey, Lifetime> lifetimes = new ConcurrentHashMap<>();
+    private final LongAdder raised = new LongAdder();
+    private final LongAdder lowered = new LongAdder();
+    private final LongAdder repunts = new LongAdder();
+
+    private volatile int minTimeout;
+    private volatile int maxTimeout;
+
+    /**
+     * Creates a lifetime engine.
+     *
+     * @param minTimeout smallest idle timeout in seconds
+     * @param maxTimeout largest idle timeout in seconds
+     */
+    FlowLifetimes(int minTimeout, int maxTimeout) {
+        configure(minTimeout, maxTimeout);
+    }
+
+    /**
+     * Changes the timeout bounds; known flows are clamped on their next
+     * install.
+     *
+     * @param minTimeout smallest idle timeout in seconds
+     * @param maxTimeout largest idle timeout in seconds
+     */
+    void configure(int minTimeout, int maxTimeout) {
+        checkArgument(minTimeout > 0 && maxTimeout >= minTimeout, "Timeouts must satisfy 0 < min <= max");
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Returns the idle timeout to install a flow with, adapting it first if
+     * the previous rule of the flow has expired.
+     *
+     * @param key flow key
+     * @param now current {@code System.nanoTime()}
+     * @return idle timeout in seconds
+     */
+    int timeoutFor(FlowKey key, long now) {
+        Lifetime lifetime = lifetimes.get(key);
+        if (lifetime == null) {
+            lifetime = lifetimes.computeIfAbsent(key, k -> new Lifetime(minTimeout, now));
+        }
+        return lifetime.install(now);
+    }
+
+    /**
+     * Records the packet counter of an installed rule.
+     *
+     * @param key     flow key
+     * @param packets packets matched by the rule so far
+     * @param now     current {@code System.nanoTime()}
+     */
+    void observe(FlowKey key, long packets, long now) {
+        Lifetime lifetime = lifetimes.get(key);
+        if (lifetime != null) {
+            lifetime.observe(packets, now);
+        }
+    }
+
+    /**
+     * Records that the rule of a flow left the switch.
+     *
+     * @param key     flow key
+     * @param packets final packet counter of the rule, if known
+     * @param now     current {@code System.nanoTime()}
+     */
+    void removed(FlowKey key, long packets, long now) {
+        Lifetime lifetime = lifetimes.get(key);
+        if (lifetime != null) {
+            lifetime.removed(packets, now);
+        }
+    }
+
+    /**
+     * Forgets flows that were neither installed, observed nor removed for
+     * longer than twice the maximum timeout.
+     *
+     * @param now current {@code System.nanoTime()}
+     */
+    void purge(long now) {
+        long idle = TimeUnit.SECONDS.toNanos(2L * maxTimeout);
+        lifetimes.values().removeIf(lifetime -> lifetime.idleFor(now) > idle);
+    }
+
+    /**
+     * Returns the number of flows tracked.
+     *
+     * @return tracked flow count
+     */
+    int size() {
+        return lifetimes.size();
+    }
+
+    /**
+     * Returns the number of times a timeout was doubled.
+     *
+     * @return raise count
+     */
+    long raised() {
+        return raised.sum();
+    }
+
+    /**
+     * Returns the number of times a timeout was halved.
+     *
+     * @return lower count
+     */
+    long lowered() {
+        return lowered.sum();
+    }
+
+    /**
+     * Returns the number of flows that came back to the controller within
+     * one timeout after their rule expired.
+     *
+     * @return re-punt count
+     */
+    long repunts() {
+        return repunts.sum();
+    }
+
+    /**
+     * Forgets every flow.
+     */
+    void clear() {
+        lifetimes.clear();
+    }
+
+    // Timeout and traffic history of one flow, guarded by its own monitor.
+    private final class Lifetime {
+        private int timeout;
+        private long packets;
+        private long removedAt = -1;
+        private long touchedAt;
+
+        private Lifetime(int timeout, long now) {
+            this.timeout = timeout;
+            this.touchedAt = now;
+        }
+
+        synchronized int install(long now) {
+            touchedAt = now;
+            int min = minTimeout;
+            int max = maxTimeout;
+            if (removedAt >= 0) {
+                boolean repunt = now - removedAt <= TimeUnit.SECONDS.toNanos(timeout);
+                if (repunt) {
+                    repunts.increment();
+                }
+                if (repunt && packets > 1 && timeout < max) {
+                    timeout = Math.min(max, timeout * 2);
+                    raised.increment();
+                } else if (packets <= 1 && timeout > min) {
+                    timeout = Math.max(min, timeout / 2);
+                    lowered.increment();
+                }
+                removedAt = -1;
+                packets = 0;
+            }
+            timeout = Math.max(min, Math.min(max, timeout));
+            return timeout;
+        }
+
+        synchronized void observe(long packets, long now) {
+            this.packets = Math.max(this.packets, packets);
+            touchedAt = now;
+        }
+
+        synchronized void removed(long packets, long now) {
+            this.packets = Math.max(this.packets, packets);
+            removedAt = now;
+            touchedAt = now;
+        }
+
+        synchronized long idleFor(long now) {
+            return now - touchedAt;
+        }
+    }
+}
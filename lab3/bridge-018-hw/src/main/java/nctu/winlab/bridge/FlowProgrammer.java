@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+
+/**
+ * Programs the forwarding rules of the bridge on the switches.
+ */
+interface FlowProgrammer {
+
+    /**
+     * Returns the backend this programmer uses.
+     *
+     * @return flow backend
+     */
+    FlowBackend backend();
+
+    /**
+     * Installs a temporary forwarding rule on a device. The rule is
+     * confirmed asynchronously by a {@code RULE_ADDED} flow rule event.
+     *
+     * @param deviceId  device to program
+     * @param selector  traffic the rule matches
+     * @param treatment what the rule does with the traffic
+     * @param priority  rule priority
+     * @param timeout   idle timeout in seconds
+     */
+    void install(DeviceId deviceId, TrafficSelector selector, TrafficTreatment treatment,
+                 int priority, int timeout);
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
+import org.onosproject.net.flow.FlowRuleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Collects flow rules per device and pushes them as one
+ * {@link FlowRuleOperations} batch once either the batch is full or the
+ * oldest pending rule has waited for the flush window, whichever comes first.
+ * <p>
+ * Window timers run on the given executor, which should not be shared with
+ * slow work. A rule added after the window of its batch elapsed flushes the
+ * batch from the adding thread, so a late timer does not hold rules back
+ * while traffic keeps coming.
+ */
+final class FlowRuleBatcher {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final FlowRuleService flowRuleService;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<DeviceId, Batch> batches = new ConcurrentHashMap<>();
+
+    private volatile int batchSize;
+    private volatile long windowMillis;
+
+    private final long createdAt = System.nanoTime();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rules = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder flushDelayNanos = new LongAdder();
+    private final AtomicLong maxFlushDelayNanos = new AtomicLong();
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder completionNanos = new LongAdder();
+
+    /**
+     * Creates a batcher.
+     *
+     * @param flowRuleService service the batches are applied to
+     * @param executor        executor running the window timers
+     * @param batchSize       number of rules that triggers an immediate flush
+     * @param windowMillis    longest time a rule waits before being flushed
+     */
+    FlowRuleBatcher(FlowRuleService flowRuleService, ScheduledExecutorService executor,
+                    int batchSize, long windowMillis) {
+        this.flowRuleService = flowRuleService;
+        this.executor = executor;
+        configure(batchSize, windowMillis);
+    }
+
+    /**
+     * Changes the flush thresholds; pending batches keep their timers.
+     *
+     * @param batchSize    number of rules that triggers an immediate flush
+     * @param windowMillis longest time a rule waits before being flushed
+     */
+    void configure(int batchSize, long windowMillis) {
+        checkArgument(batchSize > 0, "Batch size must be positive");
+        checkArgument(windowMillis >= 0, "Flush window must not be negative");
+        this.batchSize = batchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Queues a rule for installation on its device.
+     *
+     * @param rule flow rule to install
+     */
+    void add(FlowRule rule) {
+        Batch batch = batches.computeIfAbsent(rule.deviceId(), Batch::new);
+        List<FlowRule> ready = null;
+        long openedAt;
+        synchronized (batch) {
+            batch.rules.add(rule);
+            openedAt = batch.openedAt;
+            if (batch.rules.size() == 1) {
+                openedAt = System.nanoTime();
+                batch.openedAt = openedAt;
+                if (batchSize > 1 && windowMillis > 0) {
+                    batch.timer = executor.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (batch.rules.size() >= batchSize || windowMillis == 0
+                    || System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(windowMillis)) {
+                ready = batch.drain();
+            }
+        }
+        if (ready != null) {
+            apply(batch.deviceId, ready, openedAt);
+        }
+    }
+
+    /**
+     * Pushes every pending batch right away.
+     */
+    void flushAll() {
+        batches.values().forEach(this::flush);
+    }
+
+    /**
+     * Drops every pending batch without pushing it.
+     *
+     * @return number of rules dropped
+     */
+    int discardAll() {
+        int dropped = 0;
+        for (Batch batch : batches.values()) {
+            synchronized (batch) {
+                dropped += batch.drain().size();
+            }
+        }
+        return dropped;
+    }
+
+    private void flush(Batch batch) {
+        List<FlowRule> ready;
+        long openedAt;
+        synchronized (batch) {
+            if (batch.rules.isEmpty()) {
+                return;
+            }
+            openedAt = batch.openedAt;
+            ready = batch.drain();
+        }
+        apply(batch.deviceId, ready, openedAt);
+    }
+
+    private void apply(DeviceId deviceId, List<FlowRule> ready, long openedAt) {
+        FlowRuleOperations.Builder builder = FlowRuleOperations.builder();
+        ready.forEach(builder::add);
+        long appliedAt = System.nanoTime();
+        flowRuleService.apply(builder.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations ops) {
+                completions.increment();
+                completionNanos.add(System.nanoTime() - appliedAt);
+            }
+
+            @Override
+            public void onError(FlowRuleOperations ops) {
+                failures.increment();
+                log.warn("Failed to install a batch of {} rules on {}", ready.size(), deviceId);
+            }
+        }));
+        long delay = appliedAt - openedAt;
+        flushes.increment();
+        rules.add(ready.size());
+        flushDelayNanos.add(delay);
+        maxFlushDelayNanos.accumulateAndGet(delay, Math::max);
+    }
+
+    /**
+     * Returns the number of batches pushed so far.
+     *
+     * @return flush count
+     */
+    long flushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the number of rules pushed so far.
+     *
+     * @return rule count
+     */
+    long rules() {
+        return rules.sum();
+    }
+
+    /**
+     * Returns the number of batches the core reported as failed.
+     *
+     * @return failed batch count
+     */
+    long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the mean number of rules per batch.
+     *
+     * @return average batch size
+     */
+    double averageBatchSize() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : (double) rules.sum() / flushCount;
+    }
+
+    /**
+     * Returns the mean time between a batch receiving its first rule and
+     * being pushed.
+     *
+     * @return average flush delay in microseconds
+     */
+    long averageFlushDelayMicros() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(flushDelayNanos.sum() / flushCount);
+    }
+
+    /**
+     * Returns the longest time a batch waited before being pushed.
+     *
+     * @return maximum flush delay in microseconds
+     */
+    long maxFlushDelayMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxFlushDelayNanos.get());
+    }
+
+    /**
+     * Returns the mean time the core took to confirm a batch.
+     *
+     * @return average completion latency in microseconds
+     */
+    long averageCompletionMicros() {
+        long count = completions.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(completionNanos.sum() / count);
+    }
+
+    /**
+     * Returns the rate at which rules were pushed since creation.
+     *
+     * @return rules per second
+     */
+    double throughput() {
+        long elapsed = System.nanoTime() - createdAt;
+        return elapsed <= 0 ? 0 : rules.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    // Rules waiting for one device, guarded by the batch monitor.
+    private static final class Batch {
+        private final DeviceId deviceId;
+        private final List<FlowRule> rules = new ArrayList<>();
+        private long openedAt;
+        private ScheduledFuture<?> timer;
+
+        private Batch(DeviceId deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        private List<FlowRule> drain() {
+            List<FlowRule> drained = new ArrayList<>(rules);
+            rules.clear();
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+/**
+ * How the bridge matches the flow rules it installs.
+ */
+enum ForwardingMode {
+
+    /** One rule per source and destination MAC pair, O(N^2) entries per device. */
+    SRC_DST,
+
+    /** One rule per learned destination MAC, O(N) entries per device. */
+    DST_ONLY
+}
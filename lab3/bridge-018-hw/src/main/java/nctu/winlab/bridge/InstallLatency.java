@@ -0,0 +1,226 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the time from the packet-in that requested a rule to the
+ * {@code RULE_ADDED} event confirming it, separately for each
+ * {@link FlowBackend}, so the backends can be compared on a live network.
+ * Latencies are also recorded in one {@link LatencyHistogram} per device.
+ * <p>
+ * A request that is not confirmed within the loss timeout is counted as
+ * lost and forgotten. A request repeated before its confirmation restarts
+ * the measurement.
+ */
+final class InstallLatency {
+
+    private final ConcurrentMap<FlowKey, Request> requests = new ConcurrentHashMap<>();
+    private final Map<FlowBackend, Stats> stats = new EnumMap<>(FlowBackend.class);
+    private final ConcurrentMap<DeviceId, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final long lossTimeoutNanos;
+
+    /**
+     * Creates the latency tracker.
+     *
+     * @param lossTimeoutMillis time after which an unconfirmed request is
+     *                          counted as lost
+     */
+    InstallLatency(long lossTimeoutMillis) {
+        this.lossTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lossTimeoutMillis);
+        for (FlowBackend backend : FlowBackend.values()) {
+            stats.put(backend, new Stats());
+        }
+    }
+
+    /**
+     * Records that a rule was requested through a backend.
+     *
+     * @param key     flow key of the rule
+     * @param backend backend the rule was requested through
+     * @param now     current {@code System.nanoTime()}
+     */
+    void requested(FlowKey key, FlowBackend backend, long now) {
+        requests.put(key, new Request(backend, now));
+        stats.get(backend).requested(now);
+    }
+
+    /**
+     * Records that a requested rule was confirmed by the switch.
+     *
+     * @param key flow key of the rule
+     * @param now current {@code System.nanoTime()}
+     */
+    void added(FlowKey key, long now) {
+        Request request = requests.remove(key);
+        if (request != null) {
+            long latency = now - request.at;
+            stats.get(request.backend).added(latency, now);
+            LatencyHistogram histogram = histograms.get(key.deviceId());
+            if (histogram == null) {
+                histogram = histograms.computeIfAbsent(key.deviceId(), k -> new LatencyHistogram());
+            }
+            histogram.record(latency);
+        }
+    }
+
+    /**
+     * Counts requests waiting for longer than the loss timeout as lost.
+     *
+     * @param now current {@code System.nanoTime()}
+     */
+    void purge(long now) {
+        requests.values().removeIf(request -> {
+            if (now - request.at < lossTimeoutNanos) {
+                return false;
+            }
+            stats.get(request.backend).lost.increment();
+            return true;
+        });
+    }
+
+    /**
+     * Returns the measurements of a backend.
+     *
+     * @param backend flow backend
+     * @return latency and throughput of the backend
+     */
+    Stats stats(FlowBackend backend) {
+        return stats.get(backend);
+    }
+
+    /**
+     * Returns the latency histograms of the devices that confirmed a rule.
+     *
+     * @return live read-only view of the histogram of each device
+     */
+    Map<DeviceId, LatencyHistogram> histograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Forgets the requests still waiting for confirmation and the device
+     * histograms.
+     */
+    void clear() {
+        requests.clear();
+        histograms.clear();
+    }
+
+    // Backend and time of one unconfirmed request.
+    private static final class Request {
+        private final FlowBackend backend;
+        private final long at;
+
+        private Request(FlowBackend backend, long at) {
+            this.backend = backend;
+            this.at = at;
+        }
+    }
+
+    /**
+     * Install latency and throughput of one backend.
+     */
+    static final class Stats {
+
+        private final LongAdder requested = new LongAdder();
+        private final LongAdder added = new LongAdder();
+        private final LongAdder lost = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private final AtomicLong firstRequestAt = new AtomicLong();
+        private final AtomicLong lastAddedAt = new AtomicLong();
+
+        private void requested(long now) {
+            requested.increment();
+            firstRequestAt.compareAndSet(0, now);
+        }
+
+        private void added(long latency, long now) {
+            added.increment();
+            latencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            lastAddedAt.accumulateAndGet(now, Math::max);
+        }
+
+        /**
+         * Returns the number of rules requested through the backend.
+         *
+         * @return request count
+         */
+        long requested() {
+            return requested.sum();
+        }
+
+        /**
+         * Returns the number of requested rules the switches confirmed.
+         *
+         * @return confirmation count
+         */
+        long added() {
+            return added.sum();
+        }
+
+        /**
+         * Returns the number of requested rules never confirmed.
+         *
+         * @return lost request count
+         */
+        long lost() {
+            return lost.sum();
+        }
+
+        /**
+         * Returns the mean time from request to confirmation.
+         *
+         * @return average latency in microseconds
+         */
+        long averageLatencyMicros() {
+            long count = added.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(latencyNanos.sum() / count);
+        }
+
+        /**
+         * Returns the longest time from request to confirmation.
+         *
+         * @return maximum latency in microseconds
+         */
+        long maxLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+        }
+
+        /**
+         * Returns the rate at which rules were confirmed, from the first
+         * request to the latest confirmation.
+         *
+         * @return confirmed rules per second
+         */
+        double throughput() {
+            long elapsed = lastAddedAt.get() - firstRequestAt.get();
+            return elapsed <= 0 ? 0 : added.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableSet;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the bridge flow rules present on the switches, keyed by device
+ * and destination MAC.
+ * <p>
+ * The index follows the flow rule events, so it lets the bridge find every
+ * rule forwarding to a MAC without scanning the flow table, and tells when
+ * the last rule towards a MAC on a device went away.
+ */
+final class InstalledRules {
+
+    private final ConcurrentMap<MacTableKey, Set<FlowRule>> rules = new ConcurrentHashMap<>();
+
+    /**
+     * Records a rule the switch reported as added.
+     *
+     * @param key  key of the rule
+     * @param rule flow rule
+     */
+    void added(FlowKey key, FlowRule rule) {
+        rules.computeIfAbsent(new MacTableKey(key.deviceId(), key.dst()), k -> ConcurrentHashMap.newKeySet())
+                .add(rule);
+    }
+
+    /**
+     * Forgets a rule the switch reported as removed.
+     *
+     * @param key  key of the rule
+     * @param rule flow rule
+     * @return true if the rule was indexed and was the last one forwarding
+     * to its destination MAC on its device
+     */
+    boolean removed(FlowKey key, FlowRule rule) {
+        boolean[] last = new boolean[1];
+        rules.computeIfPresent(new MacTableKey(key.deviceId(), key.dst()), (k, set) -> {
+            last[0] = set.remove(rule) && set.isEmpty();
+            return set.isEmpty() ? null : set;
+        });
+        return last[0];
+    }
+
+    /**
+     * Removes and returns every rule forwarding to the MAC on the device.
+     *
+     * @param deviceId device identifier
+     * @param mac      destination MAC address as a long
+     * @return indexed rules, empty if there are none
+     */
+    Set<FlowRule> take(DeviceId deviceId, long mac) {
+        Set<FlowRule> taken = rules.remove(new MacTableKey(deviceId, mac));
+        return taken == null ? ImmutableSet.of() : taken;
+    }
+
+    /**
+     * Returns the number of indexed rules.
+     *
+     * @return rule count
+     */
+    int size() {
+        return rules.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Forgets every rule.
+     */
+    void clear() {
+        rules.clear();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets, after HdrHistogram.
+ * <p>
+ * Values below {@code 2^SUB_BITS} nanoseconds get a bucket each; above that
+ * every power of two is split into {@code 2^(SUB_BITS - 1)} linear
+ * sub-buckets, so a reported percentile is within about 6% of the true
+ * value whatever its magnitude. Recording is one array increment and never
+ * allocates, so it can run on the event threads.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT >>> 1;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * HALF_COUNT + HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos latency in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return sample count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean recorded latency.
+     *
+     * @return mean latency in microseconds, 0 without samples
+     */
+    public long meanMicros() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(total.sum() / samples);
+    }
+
+    /**
+     * Returns the largest recorded latency.
+     *
+     * @return maximum latency in microseconds
+     */
+    public long maxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(max.get());
+    }
+
+    /**
+     * Returns the latency below which the given share of samples fall,
+     * rounded up to the top of its bucket.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return latency at the percentile in microseconds, 0 without samples
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            samples += snapshot[i];
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return TimeUnit.NANOSECONDS.toMicros(Math.min(highest(i), max.get()));
+            }
+        }
+        return maxMicros();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long highest(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / HALF_COUNT - 1;
+        long sub = bucket - shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,654 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Concurrent MAC learning table shared by the packet worker threads.
+ * <p>
+ * Every device owns a fixed number of lock stripes chosen by the MAC hash.
+ * Each stripe is a small chained hash map keyed by the 48-bit MAC address as a
+ * primitive {@code long}, so learning and lookups neither box nor allocate.
+ * <p>
+ * Entries of a stripe are also kept on a least-recently-learned list, and
+ * {@link #expire(long)} drops idle entries by walking from the head until it
+ * meets a fresh one. The capacity limit applies to the whole device: when a
+ * new MAC takes a device over its limit, the head of the stripe holding the
+ * oldest entry is evicted, whichever stripe the new MAC went to.
+ */
+final class MacTable {
+
+    static final int DEFAULT_STRIPES = 16;
+
+    // MACs are 48 bits wide, so no MAC is ever -1.
+    private static final long NO_MAC = -1L;
+
+    /**
+     * Receives the MACs that aged out of the table.
+     */
+    interface ExpiryListener {
+        /**
+         * Called after a MAC aged out, outside of the table locks.
+         *
+         * @param deviceId device the MAC was learned on
+         * @param mac      MAC address as a long
+         */
+        void expired(DeviceId deviceId, long mac);
+    }
+
+    /**
+     * Receives the MACs evicted to respect the capacity limit.
+     */
+    interface EvictionListener {
+        /**
+         * Called after a MAC was evicted, outside of the table locks.
+         *
+         * @param deviceId device the MAC was learned on
+         * @param mac      MAC address as a long
+         */
+        void evicted(DeviceId deviceId, long mac);
+    }
+
+    /**
+     * Receives the entries of a device table one at a time.
+     */
+    interface EntryVisitor {
+        /**
+         * Called for each entry while its stripe is locked; implementations
+         * must be short and must not call back into the table.
+         *
+         * @param mac  MAC address as a long
+         * @param port bound port
+         * @param seen wall-clock time in millis the MAC was last learned
+         */
+        void visit(long mac, PortNumber port, long seen);
+    }
+
+    private final int stripes;
+    private final ConcurrentMap<DeviceId, DeviceTable> devices = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    // Per-device capacity; 0 means unbounded.
+    private volatile int capacity;
+
+    private volatile EvictionListener evictionListener;
+
+    /**
+     * Creates a MAC table with the default number of stripes per device.
+     */
+    MacTable() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a MAC table with the given number of stripes per device.
+     *
+     * @param stripes number of lock stripes, must be a power of two
+     */
+    MacTable(int stripes) {
+        checkArgument(stripes > 0 && Integer.bitCount(stripes) == 1,
+                      "Stripe count must be a positive power of two");
+        this.stripes = stripes;
+    }
+
+    /**
+     * Limits the number of MACs kept per device. Every MAC can be learned
+     * whatever the limit and however the MAC hashes spread over the stripes;
+     * a new MAC that takes the device over the limit evicts the oldest entry
+     * of the device. Concurrent learners may overshoot the limit by one entry
+     * each until their evictions complete. Tables above a lowered limit
+     * shrink on the next {@link #expire(long)}.
+     *
+     * @param capacity maximum entries per device, 0 for no limit
+     */
+    void setCapacity(int capacity) {
+        checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the receiver of the MACs evicted for capacity, whether by a
+     * learn or by {@link #expire(long)}.
+     *
+     * @param listener receiver of the evicted MACs, or null
+     */
+    void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Returns the table of the given device, creating it on first use.
+     * Callers on the packet path fetch the device table once and then learn
+     * and look up against it directly.
+     *
+     * @param deviceId device identifier
+     * @return per-device table
+     */
+    DeviceTable device(DeviceId deviceId) {
+        DeviceTable table = devices.get(deviceId);
+        if (table == null) {
+            table = devices.computeIfAbsent(deviceId, DeviceTable::new);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the port bound to the MAC on the given device.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as returned by {@code MacAddress.toLong()}
+     * @return bound port, or null if the MAC is unknown on the device
+     */
+    PortNumber lookup(DeviceId deviceId, long mac) {
+        DeviceTable table = devices.get(deviceId);
+        return table == null ? null : table.lookup(mac);
+    }
+
+    /**
+     * Binds the MAC to the port on the given device.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as returned by {@code MacAddress.toLong()}
+     * @param port     port the MAC was seen on
+     * @return previously bound port, or null if the MAC was unknown
+     */
+    PortNumber learn(DeviceId deviceId, long mac, PortNumber port) {
+        return device(deviceId).learn(mac, port);
+    }
+
+    /**
+     * Removes the MAC from the given device.
+     *
+     * @param deviceId device identifier
+     * @param mac      MAC address as returned by {@code MacAddress.toLong()}
+     * @return removed port, or null if the MAC was unknown
+     */
+    PortNumber remove(DeviceId deviceId, long mac) {
+        DeviceTable table = devices.get(deviceId);
+        return table == null ? null : table.remove(mac);
+    }
+
+    /**
+     * Returns the number of MACs learned on the given device.
+     *
+     * @param deviceId device identifier
+     * @return number of entries
+     */
+    int size(DeviceId deviceId) {
+        DeviceTable table = devices.get(deviceId);
+        return table == null ? 0 : table.size();
+    }
+
+    /**
+     * Returns the number of MACs learned across all devices.
+     *
+     * @return number of entries
+     */
+    int size() {
+        int size = 0;
+        for (DeviceTable table : devices.values()) {
+            size += table.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the devices that have a table, as a live read-only view.
+     *
+     * @return device identifiers
+     */
+    Set<DeviceId> deviceIds() {
+        return Collections.unmodifiableSet(devices.keySet());
+    }
+
+    /**
+     * Visits every entry learned on a device, least recently learned first
+     * within each stripe. Only one stripe is locked at a time, so learning
+     * carries on in the other stripes while the walk is in progress and the
+     * visit is not an atomic view of the whole device.
+     *
+     * @param deviceId device identifier
+     * @param visitor  receiver of the entries
+     * @return number of visited entries
+     */
+    int forEach(DeviceId deviceId, EntryVisitor visitor) {
+        DeviceTable table = devices.get(deviceId);
+        return table == null ? 0 : table.forEach(visitor);
+    }
+
+    /**
+     * Forgets everything learned so far.
+     */
+    void clear() {
+        devices.clear();
+    }
+
+    /**
+     * Removes entries not learned again since the cutoff and trims tables
+     * that are above the capacity limit.
+     *
+     * @param cutoff wall-clock time in millis; older entries are dropped
+     * @return number of removed entries
+     */
+    int expire(long cutoff) {
+        return expire(cutoff, null);
+    }
+
+    /**
+     * Removes entries not learned again since the cutoff, reporting each of
+     * them, and trims tables that are above the capacity limit. Entries
+     * evicted for capacity go to the eviction listener instead.
+     *
+     * @param cutoff   wall-clock time in millis; older entries are dropped
+     * @param listener receiver of the aged out MACs, or null
+     * @return number of removed entries
+     */
+    int expire(long cutoff, ExpiryListener listener) {
+        int removed = 0;
+        for (DeviceTable table : devices.values()) {
+            removed += table.expire(cutoff, listener);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the capacity limit.
+     *
+     * @return eviction count since creation
+     */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped because they aged out.
+     *
+     * @return expiration count since creation
+     */
+    long expirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * MAC to port bindings of a single device.
+     */
+    final class DeviceTable {
+
+        private final DeviceId deviceId;
+        private final Stripe[] stripes;
+        private final int stripeMask;
+        private final AtomicInteger size = new AtomicInteger();
+
+        private DeviceTable(DeviceId deviceId) {
+            this.deviceId = deviceId;
+            this.stripes = new Stripe[MacTable.this.stripes];
+            for (int i = 0; i < this.stripes.length; i++) {
+                this.stripes[i] = new Stripe(size);
+            }
+            this.stripeMask = this.stripes.length - 1;
+        }
+
+        /**
+         * Returns the port bound to the MAC.
+         *
+         * @param mac MAC address as a long
+         * @return bound port, or null if unknown
+         */
+        PortNumber lookup(long mac) {
+            long hash = hash(mac);
+            return stripe(hash).lookup(mac, (int) hash);
+        }
+
+        /**
+         * Binds the MAC to the port.
+         *
+         * @param mac  MAC address as a long
+         * @param port port the MAC was seen on
+         * @return previously bound port, or null if unknown
+         */
+        PortNumber learn(long mac, PortNumber port) {
+            return learn(mac, port, System.currentTimeMillis());
+        }
+
+        /**
+         * Binds the MAC to the port as of the given time.
+         *
+         * @param mac  MAC address as a long
+         * @param port port the MAC was seen on
+         * @param now  wall-clock time in millis
+         * @return previously bound port, or null if unknown
+         */
+        PortNumber learn(long mac, PortNumber port, long now) {
+            long hash = hash(mac);
+            Stripe stripe = stripe(hash);
+            PortNumber previous = stripe.learn(mac, (int) hash, port, now);
+            if (previous == null) {
+                trim(stripe);
+            }
+            return previous;
+        }
+
+        /**
+         * Removes the MAC.
+         *
+         * @param mac MAC address as a long
+         * @return removed port, or null if unknown
+         */
+        PortNumber remove(long mac) {
+            long hash = hash(mac);
+            return stripe(hash).remove(mac, (int) hash);
+        }
+
+        /**
+         * Returns the number of learned MACs.
+         *
+         * @return number of entries
+         */
+        int size() {
+            return size.get();
+        }
+
+        private int forEach(EntryVisitor visitor) {
+            int visited = 0;
+            for (Stripe stripe : stripes) {
+                visited += stripe.forEach(visitor);
+            }
+            return visited;
+        }
+
+        private int expire(long cutoff, ExpiryListener listener) {
+            List<Long> aged = listener == null ? null : new ArrayList<>();
+            int removed = 0;
+            for (Stripe stripe : stripes) {
+                removed += stripe.expire(cutoff, aged);
+            }
+            expirations.add(removed);
+            removed += trim(null);
+            if (aged != null) {
+                for (long mac : aged) {
+                    listener.expired(deviceId, mac);
+                }
+            }
+            return removed;
+        }
+
+        // Evicts the oldest entries of the device until it is within the
+        // capacity, sparing the entry just learned into the given stripe.
+        private int trim(Stripe learning) {
+            EvictionListener listener = evictionListener;
+            int evicted = 0;
+            int limit = capacity;
+            while (limit > 0 && size.get() > limit) {
+                Stripe victim = null;
+                long oldest = Long.MAX_VALUE;
+                for (Stripe stripe : stripes) {
+                    long head = stripe.headSeen;
+                    if (head != Long.MAX_VALUE && (head < oldest || head == oldest && victim == learning)) {
+                        victim = stripe;
+                        oldest = head;
+                    }
+                }
+                if (victim == null) {
+                    break;
+                }
+                long mac = victim.evictOldest();
+                if (mac != NO_MAC) {
+                    evictions.increment();
+                    evicted++;
+                    if (listener != null) {
+                        listener.evicted(deviceId, mac);
+                    }
+                }
+            }
+            return evicted;
+        }
+
+        private Stripe stripe(long hash) {
+            return stripes[(int) (hash >>> 32) & stripeMask];
+        }
+    }
+
+    /**
+     * Chained hash map from MAC to port guarded by its own monitor.
+     * Entries live in parallel arrays and freed slots are recycled through a
+     * free list threaded over {@code next}. A second, doubly linked list over
+     * {@code older}/{@code newer} orders the entries by last learning time;
+     * the learning time of its head is published for device-wide eviction.
+     */
+    private final class Stripe {
+
+        private static final int NIL = -1;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final AtomicInteger deviceSize;
+        private long[] macs = new long[INITIAL_CAPACITY];
+        private PortNumber[] ports = new PortNumber[INITIAL_CAPACITY];
+        private long[] seen = new long[INITIAL_CAPACITY];
+        private int[] next = new int[INITIAL_CAPACITY];
+        private int[] older = new int[INITIAL_CAPACITY];
+        private int[] newer = new int[INITIAL_CAPACITY];
+        private int[] buckets = newBuckets(INITIAL_CAPACITY);
+        private int used;
+        private int free = NIL;
+        private int oldest = NIL;
+        private int newest = NIL;
+        private int size;
+        // Learning time of the oldest entry, Long.MAX_VALUE when empty.
+        private volatile long headSeen = Long.MAX_VALUE;
+
+        private Stripe(AtomicInteger deviceSize) {
+            this.deviceSize = deviceSize;
+        }
+
+        synchronized PortNumber lookup(long mac, int hash) {
+            int slot = find(mac, hash);
+            return slot == NIL ? null : ports[slot];
+        }
+
+        synchronized PortNumber learn(long mac, int hash, PortNumber port, long now) {
+            int slot = find(mac, hash);
+            if (slot != NIL) {
+                PortNumber previous = ports[slot];
+                if (!previous.equals(port)) {
+                    ports[slot] = port;
+                }
+                seen[slot] = now;
+                if (slot != newest) {
+                    unlinkAge(slot);
+                    linkNewest(slot);
+                    publishHead();
+                }
+                return previous;
+            }
+            slot = allocate();
+            macs[slot] = mac;
+            ports[slot] = port;
+            seen[slot] = now;
+            int bucket = hash & (buckets.length - 1);
+            next[slot] = buckets[bucket];
+            buckets[bucket] = slot;
+            linkNewest(slot);
+            size++;
+            deviceSize.incrementAndGet();
+            publishHead();
+            if (size > buckets.length - (buckets.length >>> 2)) {
+                rehash(buckets.length << 1);
+            }
+            return null;
+        }
+
+        synchronized PortNumber remove(long mac, int hash) {
+            int slot = find(mac, hash);
+            if (slot == NIL) {
+                return null;
+            }
+            PortNumber port = ports[slot];
+            removeSlot(slot);
+            publishHead();
+            return port;
+        }
+
+        synchronized int forEach(EntryVisitor visitor) {
+            for (int slot = oldest; slot != NIL; slot = newer[slot]) {
+                visitor.visit(macs[slot], ports[slot], seen[slot]);
+            }
+            return size;
+        }
+
+        synchronized int expire(long cutoff, List<Long> aged) {
+            int removed = 0;
+            while (oldest != NIL && seen[oldest] < cutoff) {
+                if (aged != null) {
+                    aged.add(macs[oldest]);
+                }
+                removeSlot(oldest);
+                removed++;
+            }
+            publishHead();
+            return removed;
+        }
+
+        synchronized long evictOldest() {
+            if (oldest == NIL) {
+                return NO_MAC;
+            }
+            long mac = macs[oldest];
+            removeSlot(oldest);
+            publishHead();
+            return mac;
+        }
+
+        private int find(long mac, int hash) {
+            for (int slot = buckets[hash & (buckets.length - 1)]; slot != NIL; slot = next[slot]) {
+                if (macs[slot] == mac) {
+                    return slot;
+                }
+            }
+            return NIL;
+        }
+
+        private void removeSlot(int slot) {
+            int bucket = (int) hash(macs[slot]) & (buckets.length - 1);
+            if (buckets[bucket] == slot) {
+                buckets[bucket] = next[slot];
+            } else {
+                int previous = buckets[bucket];
+                while (next[previous] != slot) {
+                    previous = next[previous];
+                }
+                next[previous] = next[slot];
+            }
+            unlinkAge(slot);
+            ports[slot] = null;
+            next[slot] = free;
+            free = slot;
+            size--;
+            deviceSize.decrementAndGet();
+        }
+
+        private void publishHead() {
+            long head = oldest == NIL ? Long.MAX_VALUE : seen[oldest];
+            if (headSeen != head) {
+                headSeen = head;
+            }
+        }
+
+        private void linkNewest(int slot) {
+            older[slot] = newest;
+            newer[slot] = NIL;
+            if (newest == NIL) {
+                oldest = slot;
+            } else {
+                newer[newest] = slot;
+            }
+            newest = slot;
+        }
+
+        private void unlinkAge(int slot) {
+            if (older[slot] == NIL) {
+                oldest = newer[slot];
+            } else {
+                newer[older[slot]] = newer[slot];
+            }
+            if (newer[slot] == NIL) {
+                newest = older[slot];
+            } else {
+                older[newer[slot]] = older[slot];
+            }
+        }
+
+        private int allocate() {
+            if (free != NIL) {
+                int slot = free;
+                free = next[slot];
+                return slot;
+            }
+            if (used == macs.length) {
+                int capacity = macs.length << 1;
+                macs = Arrays.copyOf(macs, capacity);
+                ports = Arrays.copyOf(ports, capacity);
+                seen = Arrays.copyOf(seen, capacity);
+                next = Arrays.copyOf(next, capacity);
+                older = Arrays.copyOf(older, capacity);
+                newer = Arrays.copyOf(newer, capacity);
+            }
+            return used++;
+        }
+
+        private void rehash(int bucketCount) {
+            buckets = newBuckets(bucketCount);
+            for (int slot = 0; slot < used; slot++) {
+                if (ports[slot] != null) {
+                    int bucket = (int) hash(macs[slot]) & (bucketCount - 1);
+                    next[slot] = buckets[bucket];
+                    buckets[bucket] = slot;
+                }
+            }
+        }
+    }
+
+    private static int[] newBuckets(int count) {
+        int[] buckets = new int[count];
+        Arrays.fill(buckets, -1);
+        return buckets;
+    }
+
+    // MurmurHash3 finalizer; the high half picks the stripe, the low half the bucket.
+    private static long hash(long mac) {
+        long h = mac;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+
+/**
+ * Key of a MAC binding in the distributed MAC table.
+ */
+final class MacTableKey {
+
+    private final DeviceId deviceId;
+    private final long mac;
+
+    /**
+     * Creates a key.
+     *
+     * @param deviceId device the MAC was learned on
+     * @param mac      MAC address as returned by {@code MacAddress.toLong()}
+     */
+    MacTableKey(DeviceId deviceId, long mac) {
+        this.deviceId = deviceId;
+        this.mac = mac;
+    }
+
+    /**
+     * Returns the device the MAC was learned on.
+     *
+     * @return device identifier
+     */
+    DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the MAC address.
+     *
+     * @return MAC address as a long
+     */
+    long mac() {
+        return mac;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MacTableKey)) {
+            return false;
+        }
+        MacTableKey that = (MacTableKey) obj;
+        return mac == that.mac && deviceId.equals(that.deviceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceId, mac);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("mac", MacAddress.valueOf(mac))
+                .toString();
+    }
+}
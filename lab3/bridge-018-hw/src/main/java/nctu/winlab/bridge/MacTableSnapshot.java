@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checkpoints the MAC table to a compact binary file and loads it back.
+ * <p>
+ * The file starts with a fixed header followed by one section per device:
+ * the device identifier, its entry count and then fixed-width entries of
+ * MAC address, port number and last learning time. The file is written
+ * through a memory-mapped buffer straight from the table, one lock stripe at
+ * a time, so a checkpoint never copies the table and never holds up
+ * learning on the other stripes. It is written next to the target and moved
+ * over it once complete, so a crash mid-write leaves the previous checkpoint
+ * in place.
+ */
+final class MacTableSnapshot {
+
+    static final int MAGIC = 0x4d414354;
+    static final int VERSION = 1;
+
+    // Magic, version, creation time, device count and entry count.
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+    // 48-bit MAC, 32-bit port number and learning time.
+    static final int ENTRY_BYTES = 6 + 4 + 8;
+
+    private static final int SECTION_BYTES = 2 + 4;
+    private static final int SLACK_ENTRIES = 64;
+
+    private final Path path;
+
+    /**
+     * Creates a snapshot bound to a file.
+     *
+     * @param path file the checkpoints are written to and loaded from
+     */
+    MacTableSnapshot(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the file the checkpoints are written to.
+     *
+     * @return snapshot file
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Writes the current content of the table. Each device section is sized
+     * from the device occupancy plus some headroom, and a device never writes
+     * more entries than its section holds: entries learned during the walk
+     * beyond that headroom are left out of this checkpoint rather than
+     * spilling into the sections of the devices that follow.
+     *
+     * @param table table to checkpoint
+     * @param now   wall-clock time in millis recorded as the creation time
+     * @return number of entries written
+     * @throws IOException if the file cannot be written
+     */
+    int write(MacTable table, long now) throws IOException {
+        List<DeviceId> deviceIds = new ArrayList<>(table.deviceIds());
+        List<byte[]> names = new ArrayList<>(deviceIds.size());
+        int[] budgets = new int[deviceIds.size()];
+        long length = HEADER_BYTES;
+        for (int i = 0; i < deviceIds.size(); i++) {
+            byte[] name = deviceIds.get(i).toString().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            int size = table.size(deviceIds.get(i));
+            budgets[i] = size + (size >>> 3) + SLACK_ENTRIES;
+            length += SECTION_BYTES + name.length + (long) ENTRY_BYTES * budgets[i];
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("MAC table too large to checkpoint: " + length + " bytes");
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.position(HEADER_BYTES);
+            for (int i = 0; i < deviceIds.size(); i++) {
+                written += writeDevice(table, deviceIds.get(i), names.get(i), budgets[i], buffer);
+            }
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putLong(8, now)
+                    .putInt(16, deviceIds.size())
+                    .putInt(20, written);
+            buffer.force();
+        } catch (BufferOverflowException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("MAC table outgrew its checkpoint: " + path, e);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    private static int writeDevice(MacTable table, DeviceId deviceId, byte[] name, int budget,
+                                   ByteBuffer buffer) {
+        buffer.putShort((short) name.length).put(name);
+        int countAt = buffer.position();
+        buffer.position(countAt + 4);
+        int[] count = new int[1];
+        table.forEach(deviceId, (mac, port, seen) -> {
+            if (count[0] < budget) {
+                buffer.putShort((short) (mac >>> 32))
+                        .putInt((int) mac)
+                        .putInt((int) port.toLong())
+                        .putLong(seen);
+                count[0]++;
+            }
+        });
+        buffer.putInt(countAt, count[0]);
+        int end = countAt + 4 + count[0] * ENTRY_BYTES;
+        // Hand the unused headroom of this section over to the next one.
+        buffer.position(end);
+        return count[0];
+    }
+
+    /**
+     * Loads the last checkpoint into the table, keeping the learning times
+     * it recorded. Entries last learned before the cutoff are skipped.
+     *
+     * @param table  table to fill
+     * @param cutoff wall-clock time in millis; older entries are skipped
+     * @return number of entries loaded, 0 if there is no checkpoint
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    int read(MacTable table, long cutoff) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a MAC table snapshot: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a MAC table snapshot: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported MAC table snapshot version " + version);
+            }
+            buffer.getLong();
+            int devices = buffer.getInt();
+            buffer.getInt();
+            return readDevices(table, buffer, devices, cutoff);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated MAC table snapshot: " + path, e);
+        }
+    }
+
+    private static int readDevices(MacTable table, ByteBuffer buffer, int devices, long cutoff) {
+        // Port numbers repeat across entries, so one instance serves them all.
+        Map<Integer, PortNumber> ports = new HashMap<>();
+        int loaded = 0;
+        for (int d = 0; d < devices; d++) {
+            byte[] name = new byte[buffer.getShort() & 0xffff];
+            buffer.get(name);
+            int count = buffer.getInt();
+            MacTable.DeviceTable device = table.device(DeviceId.deviceId(new String(name, StandardCharsets.UTF_8)));
+            for (int i = 0; i < count; i++) {
+                long mac = (buffer.getShort() & 0xffffL) << 32 | buffer.getInt() & 0xffffffffL;
+                int number = buffer.getInt();
+                long seen = buffer.getLong();
+                if (seen < cutoff) {
+                    continue;
+                }
+                PortNumber port = ports.get(number);
+                if (port == null) {
+                    port = PortNumber.portNumber(Integer.toUnsignedLong(number));
+                    ports.put(number, port);
+                }
+                device.learn(mac, port, seen);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.FlowObjectiveService;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+
+/**
+ * Installs rules as versatile forwarding objectives, leaving the translation
+ * into flow rules to the pipeliner of each device.
+ */
+final class ObjectiveFlowProgrammer implements FlowProgrammer {
+
+    private final FlowObjectiveService flowObjectiveService;
+    private final ApplicationId appId;
+
+    /**
+     * Creates an objective programmer.
+     *
+     * @param flowObjectiveService service the objectives are submitted to
+     * @param appId                application the rules belong to
+     */
+    ObjectiveFlowProgrammer(FlowObjectiveService flowObjectiveService, ApplicationId appId) {
+        this.flowObjectiveService = flowObjectiveService;
+        this.appId = appId;
+    }
+
+    @Override
+    public FlowBackend backend() {
+        return FlowBackend.OBJECTIVE;
+    }
+
+    @Override
+    public void install(DeviceId deviceId, TrafficSelector selector, TrafficTreatment treatment,
+                        int priority, int timeout) {
+        flowObjectiveService.forward(deviceId, DefaultForwardingObjective.builder()
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(priority)
+                .withFlag(ForwardingObjective.Flag.VERSATILE)
+                .fromApp(appId)
+                .makeTemporary(timeout)
+                .add());
+    }
+}
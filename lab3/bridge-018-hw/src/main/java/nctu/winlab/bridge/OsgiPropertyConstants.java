@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+/**
+ * Constants for default values of configurable properties.
+ */
+final class OsgiPropertyConstants {
+
+    private OsgiPropertyConstants() {
+    }
+
+    /**
+     * Parses an enum property value, ignoring case.
+     *
+     * @param type         enum class
+     * @param value        property value, may be null
+     * @param defaultValue constant used when the value is missing or unknown
+     * @param <E>          enum type
+     * @return enum constant
+     */
+    static <E extends Enum<E>> E parseEnum(Class<E> type, String value, E defaultValue) {
+        if (value != null) {
+            for (E constant : type.getEnumConstants()) {
+                if (constant.name().equalsIgnoreCase(value.trim())) {
+                    return constant;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    static final String MAC_TABLE_CAPACITY = "macTableCapacity";
+    static final int MAC_TABLE_CAPACITY_DEFAULT = 8192;
+
+    static final String MAC_AGING_TIME = "macAgingTime";
+    static final int MAC_AGING_TIME_DEFAULT = 300;
+
+    static final String DISTRIBUTED_MAC_TABLE = "distributedMacTable";
+    static final boolean DISTRIBUTED_MAC_TABLE_DEFAULT = false;
+
+    static final String MAC_SNAPSHOT_FILE = "macSnapshotFile";
+    static final String MAC_SNAPSHOT_FILE_DEFAULT = "";
+
+    static final String MAC_SNAPSHOT_INTERVAL = "macSnapshotInterval";
+    static final int MAC_SNAPSHOT_INTERVAL_DEFAULT = 60;
+
+    static final String FLOW_BACKEND = "flowBackend";
+    static final String FLOW_BACKEND_DEFAULT = "OBJECTIVE";
+
+    static final String FLOW_BATCH_SIZE = "flowBatchSize";
+    static final int FLOW_BATCH_SIZE_DEFAULT = 1;
+
+    static final String FLOW_BATCH_WINDOW = "flowBatchWindow";
+    static final int FLOW_BATCH_WINDOW_DEFAULT = 10;
+
+    static final String PENDING_INSTALL_TIMEOUT = "pendingInstallTimeout";
+    static final int PENDING_INSTALL_TIMEOUT_DEFAULT = 2000;
+
+    static final String FLOW_IDLE_TIMEOUT_MIN = "flowIdleTimeoutMin";
+    static final int FLOW_IDLE_TIMEOUT_MIN_DEFAULT = 10;
+
+    static final String FLOW_IDLE_TIMEOUT_MAX = "flowIdleTimeoutMax";
+    static final int FLOW_IDLE_TIMEOUT_MAX_DEFAULT = 300;
+
+    static final String FLOW_STATS_POLL_INTERVAL = "flowStatsPollInterval";
+    static final int FLOW_STATS_POLL_INTERVAL_DEFAULT = 0;
+
+    static final String FORWARDING_MODE = "forwardingMode";
+    static final String FORWARDING_MODE_DEFAULT = "SRC_DST";
+
+    static final String PATH_FORWARDING = "pathForwarding";
+    static final boolean PATH_FORWARDING_DEFAULT = false;
+
+    static final String ECMP_FORWARDING = "ecmpForwarding";
+    static final boolean ECMP_FORWARDING_DEFAULT = false;
+
+    static final String TREE_FLOODING = "treeFlooding";
+    static final boolean TREE_FLOODING_DEFAULT = false;
+
+    static final String PROACTIVE_HOSTS = "proactiveHosts";
+    static final boolean PROACTIVE_HOSTS_DEFAULT = false;
+
+    static final String PACKET_WORKERS = "packetWorkers";
+    static final int PACKET_WORKERS_DEFAULT = 0;
+
+    static final String PACKET_WORKER_MODE = "packetWorkerMode";
+    static final String PACKET_WORKER_MODE_DEFAULT = "SHARDED";
+
+    static final String PACKET_QUEUE_SIZE = "packetQueueSize";
+    static final int PACKET_QUEUE_SIZE_DEFAULT = 1024;
+
+    static final String PACKET_QUEUE_OVERFLOW = "packetQueueOverflow";
+    static final String PACKET_QUEUE_OVERFLOW_DEFAULT = "DROP";
+
+    static final String PACKET_IN_RATE = "packetInRate";
+    static final int PACKET_IN_RATE_DEFAULT = 0;
+
+    static final String PACKET_IN_BURST = "packetInBurst";
+    static final int PACKET_IN_BURST_DEFAULT = 1000;
+
+    static final String STORM_THRESHOLD = "stormThreshold";
+    static final int STORM_THRESHOLD_DEFAULT = 5;
+
+    static final String STORM_BLOCK_TIME = "stormBlockTime";
+    static final int STORM_BLOCK_TIME_DEFAULT = 0;
+
+    static final String TRACE_SAMPLE_RATE = "traceSampleRate";
+    static final int TRACE_SAMPLE_RATE_DEFAULT = 100;
+
+    static final String TRACE_BUFFER_SIZE = "traceBufferSize";
+    static final int TRACE_BUFFER_SIZE_DEFAULT = 1024;
+}
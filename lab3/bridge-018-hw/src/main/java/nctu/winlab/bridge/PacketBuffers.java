@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IPv6;
+import org.onosproject.net.packet.InboundPacket;
+
+/**
+ * Tells packet-ins the switch kept in its buffer apart from complete ones.
+ * <p>
+ * A switch that buffers a frame sends only the first miss-send-length
+ * bytes to the controller, and the packet context answers with the buffer
+ * ID instead of the payload. Packet contexts do not expose that ID, so a
+ * packet-in is taken as buffered when it carries fewer bytes than its IP
+ * header says the frame has. Such a frame can only be released through
+ * its context: emitting the captured bytes would forward a truncated frame.
+ */
+final class PacketBuffers {
+
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int VLAN_HEADER_LENGTH = 4;
+    private static final int IPV6_HEADER_LENGTH = 40;
+
+    private PacketBuffers() {
+    }
+
+    /**
+     * Returns whether the packet-in carries only part of its frame.
+     *
+     * @param packet inbound packet
+     * @return true if the switch holds the rest of the frame in its buffer
+     */
+    static boolean isTruncated(InboundPacket packet) {
+        int length = frameLength(packet.parsed());
+        return length > 0 && packet.unparsed().remaining() < length;
+    }
+
+    /**
+     * Returns the length of the frame on the wire, from its IP header.
+     *
+     * @param frame parsed Ethernet frame, may be null
+     * @return frame length in bytes without the frame check sequence, or -1
+     * if the frame does not carry IP
+     */
+    static int frameLength(Ethernet frame) {
+        if (frame == null) {
+            return -1;
+        }
+        int header = ETHERNET_HEADER_LENGTH;
+        if (frame.getVlanID() != Ethernet.VLAN_UNTAGGED) {
+            header += VLAN_HEADER_LENGTH;
+        }
+        if (frame.getQinQVID() != Ethernet.VLAN_UNTAGGED) {
+            header += VLAN_HEADER_LENGTH;
+        }
+        if (frame.getPayload() instanceof IPv4) {
+            return header + (((IPv4) frame.getPayload()).getTotalLength() & 0xffff);
+        }
+        if (frame.getPayload() instanceof IPv6) {
+            return header + IPV6_HEADER_LENGTH + (((IPv6) frame.getPayload()).getPayloadLength() & 0xffff);
+        }
+        return -1;
+    }
+}
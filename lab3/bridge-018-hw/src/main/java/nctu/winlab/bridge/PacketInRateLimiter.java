@@ -0,0 +1,198 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.ConnectPoint;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token bucket rate limiter for packet-ins, one bucket per ingress port.
+ * <p>
+ * A port that keeps exceeding its rate for longer than the storm threshold
+ * is reported once as {@link Verdict#BLOCK}, so the caller can stop the
+ * traffic on the switch itself.
+ */
+final class PacketInRateLimiter {
+
+    /** Outcome of admitting one packet-in. */
+    enum Verdict {
+        /** Within the rate; process the packet. */
+        PASS,
+        /** Over the rate; drop the packet. */
+        DROP,
+        /** Over the rate for longer than the storm threshold; drop and block the port. */
+        BLOCK
+    }
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentMap<ConnectPoint, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile double rate;
+    private volatile double burst;
+    private volatile long stormThresholdNanos;
+
+    /**
+     * Creates a rate limiter.
+     *
+     * @param rate            packet-ins per second allowed per port, 0 for no limit
+     * @param burst           packet-ins a port may send back to back
+     * @param stormThreshold  seconds a port must stay over the rate before it
+     *                        is reported for blocking, 0 to never report
+     */
+    PacketInRateLimiter(int rate, int burst, int stormThreshold) {
+        configure(rate, burst, stormThreshold);
+    }
+
+    /**
+     * Changes the limits; existing buckets pick them up on their next refill.
+     *
+     * @param rate            packet-ins per second allowed per port, 0 for no limit
+     * @param burst           packet-ins a port may send back to back
+     * @param stormThreshold  seconds over the rate before a port is reported
+     */
+    void configure(int rate, int burst, int stormThreshold) {
+        checkArgument(rate >= 0 && burst >= 0 && stormThreshold >= 0, "Limits must not be negative");
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.stormThresholdNanos = TimeUnit.SECONDS.toNanos(stormThreshold);
+    }
+
+    /**
+     * Charges one packet-in to its ingress port.
+     *
+     * @param ingress port the packet was received on
+     * @param now     current {@code System.nanoTime()}
+     * @return what to do with the packet
+     */
+    Verdict admit(ConnectPoint ingress, long now) {
+        if (rate == 0) {
+            return Verdict.PASS;
+        }
+        Bucket bucket = buckets.get(ingress);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(ingress, k -> new Bucket(burst, now));
+        }
+        Verdict verdict = bucket.take(now);
+        if (verdict != Verdict.PASS) {
+            dropped.increment();
+        }
+        return verdict;
+    }
+
+    /**
+     * Returns the drops of every port since the previous call and resets
+     * them, for periodic summaries.
+     *
+     * @return packet-ins dropped per ingress port
+     */
+    Map<ConnectPoint, Long> drainDrops() {
+        Map<ConnectPoint, Long> drops = new HashMap<>();
+        buckets.forEach((point, bucket) -> {
+            long count = bucket.drainDrops();
+            if (count > 0) {
+                drops.put(point, count);
+            }
+        });
+        return drops;
+    }
+
+    /**
+     * Forgets buckets of ports that have been quiet for a while.
+     *
+     * @param now  current {@code System.nanoTime()}
+     * @param idle nanoseconds without packet-ins after which a bucket goes
+     */
+    void purge(long now, long idle) {
+        buckets.values().removeIf(bucket -> bucket.idleSince(now) >= idle);
+    }
+
+    /**
+     * Returns the total number of packet-ins dropped.
+     *
+     * @return dropped packet-in count
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Forgets every bucket.
+     */
+    void clear() {
+        buckets.clear();
+    }
+
+    // Token bucket of one port, guarded by its own monitor.
+    private final class Bucket {
+        private double tokens;
+        private long refilledAt;
+        private long overSince = -1;
+        private long lastDropAt;
+        private boolean reported;
+        private long drops;
+
+        private Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        synchronized Verdict take(long now) {
+            double limit = burst;
+            tokens = Math.min(limit, tokens + (now - refilledAt) * rate / SECOND);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                if (overSince >= 0 && now - lastDropAt > SECOND) {
+                    overSince = -1;
+                    reported = false;
+                }
+                return Verdict.PASS;
+            }
+            drops++;
+            if (overSince < 0 || now - lastDropAt > SECOND) {
+                overSince = now;
+                reported = false;
+            }
+            lastDropAt = now;
+            long threshold = stormThresholdNanos;
+            if (threshold > 0 && !reported && now - overSince >= threshold) {
+                reported = true;
+                return Verdict.BLOCK;
+            }
+            return Verdict.DROP;
+        }
+
+        synchronized long drainDrops() {
+            long count = drops;
+            drops = 0;
+            return count;
+        }
+
+        synchronized long idleSince(long now) {
+            return now - refilledAt;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+
+/**
+ * Hands packet-ins over from the packet dispatch thread to worker threads,
+ * keeping the packet-ins of each device in arrival order. Queues are
+ * bounded; a full queue is reported to the caller, which applies its
+ * {@link QueueOverflowPolicy}.
+ */
+interface PacketOffload {
+
+    /**
+     * Handles a packet-in on a worker thread.
+     */
+    interface Handler {
+        /**
+         * Handles one packet-in.
+         *
+         * @param context    packet context, already claimed by the caller
+         * @param receivedAt {@code System.nanoTime()} the packet-in arrived at
+         */
+        void handle(PacketContext context, long receivedAt);
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return worker count
+     */
+    int workers();
+
+    /**
+     * Returns the number of packet-ins each queue may hold.
+     *
+     * @return queue capacity
+     */
+    int queueSize();
+
+    /**
+     * Queues a packet-in for its device without waiting.
+     *
+     * @param deviceId   device the packet-in came from
+     * @param context    packet context
+     * @param receivedAt {@code System.nanoTime()} the packet-in arrived at
+     * @return false if the queue is full or the offload is closed
+     */
+    boolean offer(DeviceId deviceId, PacketContext context, long receivedAt);
+
+    /**
+     * Queues a packet-in for its device, waiting for room.
+     *
+     * @param deviceId   device the packet-in came from
+     * @param context    packet context
+     * @param receivedAt {@code System.nanoTime()} the packet-in arrived at
+     * @return false if the offload was closed before the packet-in was queued
+     */
+    boolean put(DeviceId deviceId, PacketContext context, long receivedAt);
+
+    /**
+     * Returns the number of packet-ins waiting in all queues.
+     *
+     * @return total queue depth
+     */
+    int depth();
+
+    /**
+     * Returns the number of packet-ins waiting in the fullest queue.
+     *
+     * @return largest queue depth
+     */
+    int maxDepth();
+
+    /**
+     * Returns the number of packet-ins the workers handled.
+     *
+     * @return handled packet-in count
+     */
+    long handled();
+
+    /**
+     * Stops the workers; packet-ins still queued are discarded.
+     *
+     * @return number of discarded packet-ins
+     */
+    int close();
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Fixed-size, lock-free ring of sampled packet-in decisions, kept in place
+ * of per-packet log lines.
+ * <p>
+ * One in {@code sampleRate} packet-ins is recorded as an immutable record
+ * holding the raw addresses; nothing is formatted until the ring is read.
+ * Writers claim a slot with a single atomic increment and overwrite the
+ * oldest record once the ring is full, so tracing never blocks the packet
+ * path. Readers get the records still in the ring, oldest first.
+ */
+public final class PacketTrace {
+
+    /** What the bridge did with a packet-in. */
+    public enum Decision {
+        /** Destination known; rule installed and packet sent to its port. */
+        FORWARD,
+        /** Destination host known; every hop of the path programmed. */
+        PATH,
+        /** Destination unknown; packet flooded. */
+        FLOOD,
+        /** Ingress port over its packet-in rate; packet dropped. */
+        DROP,
+        /** Ingress port in a packet-in storm; port blocked on the switch. */
+        BLOCK,
+        /** Worker queue full; overflow policy applied. */
+        OVERFLOW
+    }
+
+    private final AtomicReferenceArray<Record> ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private volatile int sampleRate;
+
+    /**
+     * Creates a trace.
+     *
+     * @param capacity   number of records kept, rounded up to a power of two
+     * @param sampleRate record one in this many packet-ins, 0 to record none
+     */
+    PacketTrace(int capacity, int sampleRate) {
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be between 1 and 2^30");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        ring = new AtomicReferenceArray<>(Math.max(1, size));
+        mask = ring.length() - 1;
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Changes how many packet-ins share one record.
+     *
+     * @param sampleRate record one in this many packet-ins, 0 to record none
+     */
+    void setSampleRate(int sampleRate) {
+        checkArgument(sampleRate >= 0, "Sample rate must not be negative");
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Records a packet-in decision if the packet-in is sampled.
+     *
+     * @param deviceId device the packet-in came from
+     * @param port     port the packet-in came from
+     * @param src      source MAC as a long
+     * @param dst      destination MAC as a long
+     * @param decision what was done with the packet-in
+     */
+    void record(DeviceId deviceId, PortNumber port, long src, long dst, Decision decision) {
+        int rate = sampleRate;
+        if (rate == 0 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        ring.lazySet((int) sequence & mask,
+                new Record(sequence, System.currentTimeMillis(), deviceId, port, src, dst, decision));
+    }
+
+    /**
+     * Returns the records still in the ring.
+     *
+     * @return records, oldest first
+     */
+    List<Record> records() {
+        long end = cursor.get();
+        long start = Math.max(0, end - ring.length());
+        List<Record> records = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Record record = ring.get((int) sequence & mask);
+            if (record != null && record.sequence == sequence) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns the number of records written since creation, including the
+     * ones overwritten since.
+     *
+     * @return record count
+     */
+    long recorded() {
+        return cursor.get();
+    }
+
+    /**
+     * Returns the number of records the ring holds.
+     *
+     * @return ring capacity
+     */
+    int capacity() {
+        return ring.length();
+    }
+
+    /**
+     * Drops every record in the ring.
+     */
+    void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+    }
+
+    /**
+     * One sampled packet-in decision.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final long timeMillis;
+        private final DeviceId deviceId;
+        private final PortNumber port;
+        private final long src;
+        private final long dst;
+        private final Decision decision;
+
+        private Record(long sequence, long timeMillis, DeviceId deviceId, PortNumber port, long src, long dst,
+                       Decision decision) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.deviceId = deviceId;
+            this.port = port;
+            this.src = src;
+            this.dst = dst;
+            this.decision = decision;
+        }
+
+        /**
+         * Returns when the decision was made.
+         *
+         * @return wall clock time
+         */
+        public Instant time() {
+            return Instant.ofEpochMilli(timeMillis);
+        }
+
+        /**
+         * Returns the device the packet-in came from.
+         *
+         * @return device identifier
+         */
+        public DeviceId deviceId() {
+            return deviceId;
+        }
+
+        /**
+         * Returns the port the packet-in came from.
+         *
+         * @return ingress port
+         */
+        public PortNumber port() {
+            return port;
+        }
+
+        /**
+         * Returns the source MAC address of the frame.
+         *
+         * @return source MAC address
+         */
+        public MacAddress src() {
+            return MacAddress.valueOf(src);
+        }
+
+        /**
+         * Returns the destination MAC address of the frame.
+         *
+         * @return destination MAC address
+         */
+        public MacAddress dst() {
+            return MacAddress.valueOf(dst);
+        }
+
+        /**
+         * Returns what was done with the packet-in.
+         *
+         * @return decision
+         */
+        public Decision decision() {
+            return decision;
+        }
+    }
+}
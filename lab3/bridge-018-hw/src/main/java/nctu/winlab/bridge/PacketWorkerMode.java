@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+/**
+ * How packet-ins handed off the dispatch thread are spread over threads.
+ */
+enum PacketWorkerMode {
+
+    /** Fixed worker threads, each serving the devices that hash to it. */
+    SHARDED,
+
+    /** One serial mailbox per device, run by any free thread of a shared pool. */
+    ACTOR
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Fixed pool of workers, each owning one bounded queue. Packet-ins are
+ * sharded by device, so the packet-ins of a device are handled in arrival
+ * order by a single thread while different devices proceed in parallel.
+ * Devices that hash to the same worker share its queue and thread.
+ */
+final class PacketWorkers implements PacketOffload {
+
+    private static final long BLOCK_POLL_MILLIS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final List<BlockingQueue<Job>> queues;
+    private final List<Thread> threads;
+    private final Handler handler;
+    private final int queueSize;
+    private final LongAdder handled = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /**
+     * Starts the workers.
+     *
+     * @param workers       number of worker threads
+     * @param queueSize     packet-ins each worker may hold
+     * @param handler       handler run for each packet-in
+     * @param threadFactory factory of the worker threads
+     */
+    PacketWorkers(int workers, int queueSize, Handler handler, ThreadFactory threadFactory) {
+        checkArgument(workers > 0, "Worker count must be positive");
+        checkArgument(queueSize > 0, "Queue size must be positive");
+        this.handler = handler;
+        this.queueSize = queueSize;
+        this.queues = new ArrayList<>(workers);
+        this.threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<Job> queue = new ArrayBlockingQueue<>(queueSize);
+            queues.add(queue);
+            Thread thread = threadFactory.newThread(() -> run(queue));
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public int workers() {
+        return queues.size();
+    }
+
+    @Override
+    public int queueSize() {
+        return queueSize;
+    }
+
+    @Override
+    public boolean offer(DeviceId deviceId, PacketContext context, long receivedAt) {
+        return running && queue(deviceId).offer(new Job(context, receivedAt));
+    }
+
+    @Override
+    public boolean put(DeviceId deviceId, PacketContext context, long receivedAt) {
+        BlockingQueue<Job> queue = queue(deviceId);
+        Job job = new Job(context, receivedAt);
+        try {
+            while (running) {
+                if (queue.offer(job, BLOCK_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public int depth() {
+        int depth = 0;
+        for (BlockingQueue<Job> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    @Override
+    public int maxDepth() {
+        int depth = 0;
+        for (BlockingQueue<Job> queue : queues) {
+            depth = Math.max(depth, queue.size());
+        }
+        return depth;
+    }
+
+    @Override
+    public long handled() {
+        return handled.sum();
+    }
+
+    @Override
+    public int close() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        int discarded = 0;
+        for (BlockingQueue<Job> queue : queues) {
+            discarded += queue.size();
+            queue.clear();
+        }
+        return discarded;
+    }
+
+    private BlockingQueue<Job> queue(DeviceId deviceId) {
+        int hash = deviceId.hashCode();
+        return queues.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % queues.size());
+    }
+
+    private void run(BlockingQueue<Job> queue) {
+        while (running) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                handler.handle(job.context, job.receivedAt);
+            } catch (RuntimeException e) {
+                log.warn("Failed to handle a packet-in", e);
+            }
+            handled.increment();
+        }
+    }
+
+    // Packet-in waiting for a worker.
+    private static final class Job {
+        private final PacketContext context;
+        private final long receivedAt;
+
+        private Job(PacketContext context, long receivedAt) {
+            this.context = context;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
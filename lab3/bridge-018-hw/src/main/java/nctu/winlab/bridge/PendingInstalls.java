@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers flow installs that were requested but not yet confirmed, so a
+ * burst of packet-ins for the same flow triggers a single install.
+ * <p>
+ * An entry is cleared when the rule is reported as added, or it lapses after
+ * the timeout so a lost install is retried by the next packet-in.
+ */
+final class PendingInstalls {
+
+    private final ConcurrentMap<FlowKey, Long> pending = new ConcurrentHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+
+    private volatile long timeoutNanos;
+
+    /**
+     * Creates the pending install cache.
+     *
+     * @param timeoutMillis time after which an unconfirmed install is retried,
+     *                      0 to never suppress installs
+     */
+    PendingInstalls(long timeoutMillis) {
+        setTimeout(timeoutMillis);
+    }
+
+    /**
+     * Changes the time after which an unconfirmed install is retried.
+     *
+     * @param timeoutMillis timeout in milliseconds, 0 to never suppress
+     */
+    void setTimeout(long timeoutMillis) {
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Claims the install of a flow.
+     *
+     * @param key flow key
+     * @param now current {@code System.nanoTime()}
+     * @return true if the caller should install the flow, false if an
+     * earlier install is still in flight
+     */
+    boolean claim(FlowKey key, long now) {
+        long timeout = timeoutNanos;
+        if (timeout == 0) {
+            return true;
+        }
+        Long requestedAt = pending.putIfAbsent(key, now);
+        if (requestedAt == null) {
+            return true;
+        }
+        if (now - requestedAt >= timeout && pending.replace(key, requestedAt, now)) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Marks the install of a flow as finished.
+     *
+     * @param key flow key
+     * @return the {@code System.nanoTime()} the install was claimed at, or
+     * null if no install was pending
+     */
+    Long confirm(FlowKey key) {
+        return pending.remove(key);
+    }
+
+    /**
+     * Drops installs that were claimed longer than the timeout ago.
+     *
+     * @param now current {@code System.nanoTime()}
+     */
+    void purge(long now) {
+        long timeout = timeoutNanos;
+        pending.values().removeIf(requestedAt -> now - requestedAt >= timeout);
+    }
+
+    /**
+     * Drops the claims of every install towards a destination on a device,
+     * so the next packet-in may install towards its new port right away.
+     *
+     * @param deviceId device identifier
+     * @param dst      destination MAC as a long
+     */
+    void release(DeviceId deviceId, long dst) {
+        pending.keySet().removeIf(key -> key.dst() == dst && key.deviceId().equals(deviceId));
+    }
+
+    /**
+     * Returns the number of installs currently in flight.
+     *
+     * @return pending install count
+     */
+    int size() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of installs skipped because one was in flight.
+     *
+     * @return suppressed install count
+     */
+    long suppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Forgets all pending installs.
+     */
+    void clear() {
+        pending.clear();
+    }
+}
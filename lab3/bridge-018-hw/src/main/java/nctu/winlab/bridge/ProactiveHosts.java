@@ -0,0 +1,304 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.Path;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
+import org.onosproject.net.host.HostService;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.net.topology.TopologyListener;
+import org.onosproject.net.topology.TopologyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Destination rules installed ahead of traffic for every host the host
+ * service knows about.
+ * <p>
+ * When a host appears, every available device with a path to the host
+ * location gets a permanent rule matching the host MAC and forwarding to
+ * the next hop, so no packet towards a known host reaches the controller.
+ * When the host moves, or the topology changes, the rules are recomputed
+ * and only the ones that differ are replaced. When the host leaves, all
+ * its rules are removed. Each change is pushed as a single
+ * {@link FlowRuleOperations} batch.
+ */
+final class ProactiveHosts {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final HostService hostService;
+    private final TopologyService topologyService;
+    private final DeviceService deviceService;
+    private final FlowRuleService flowRuleService;
+    private final ApplicationId appId;
+    private final int priority;
+    private final HostListener hostListener = new InternalHostListener();
+    private final TopologyListener topologyListener = new InternalTopologyListener();
+
+    // Rules currently requested for each host, guarded by this.
+    private final Map<HostId, Map<DeviceId, FlowRule>> rules = new HashMap<>();
+    private int size;
+
+    private final LongAdder installed = new LongAdder();
+    private final LongAdder withdrawn = new LongAdder();
+
+    /**
+     * Starts following host and topology events and installs the rules of
+     * every host already known.
+     *
+     * @param hostService     host service announcing the hosts
+     * @param topologyService topology service providing the paths
+     * @param deviceService   device service listing the devices to program
+     * @param flowRuleService service the rule batches are applied to
+     * @param appId           application the rules belong to
+     * @param priority        priority of the rules
+     */
+    ProactiveHosts(HostService hostService, TopologyService topologyService, DeviceService deviceService,
+                   FlowRuleService flowRuleService, ApplicationId appId, int priority) {
+        this.hostService = hostService;
+        this.topologyService = topologyService;
+        this.deviceService = deviceService;
+        this.flowRuleService = flowRuleService;
+        this.appId = appId;
+        this.priority = priority;
+        hostService.addListener(hostListener);
+        topologyService.addListener(topologyListener);
+        refresh();
+    }
+
+    /**
+     * Recomputes the rules of every known host and applies the difference.
+     */
+    synchronized void refresh() {
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        int changes = 0;
+        Set<HostId> gone = new HashSet<>(rules.keySet());
+        for (Host host : hostService.getHosts()) {
+            gone.remove(host.id());
+            changes += update(host, ops);
+        }
+        for (HostId hostId : gone) {
+            changes += withdraw(hostId, ops);
+        }
+        apply(ops, changes, "all hosts");
+    }
+
+    /**
+     * Installs or updates the rules towards a host.
+     *
+     * @param host host that appeared or moved
+     */
+    synchronized void hostUpdated(Host host) {
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        apply(ops, update(host, ops), host.id());
+    }
+
+    /**
+     * Removes every rule towards a host.
+     *
+     * @param hostId host that left
+     */
+    synchronized void hostRemoved(HostId hostId) {
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        apply(ops, withdraw(hostId, ops), hostId);
+    }
+
+    /**
+     * Stops following events and removes every rule in one batch.
+     */
+    synchronized void close() {
+        hostService.removeListener(hostListener);
+        topologyService.removeListener(topologyListener);
+        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        int changes = 0;
+        for (HostId hostId : new HashSet<>(rules.keySet())) {
+            changes += withdraw(hostId, ops);
+        }
+        apply(ops, changes, "all hosts");
+    }
+
+    /**
+     * Returns the number of rules currently requested.
+     *
+     * @return proactive rule count
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of rules requested since creation.
+     *
+     * @return installed rule count
+     */
+    long installed() {
+        return installed.sum();
+    }
+
+    /**
+     * Returns the number of rules withdrawn since creation.
+     *
+     * @return withdrawn rule count
+     */
+    long withdrawn() {
+        return withdrawn.sum();
+    }
+
+    // Stages the rules that changed for a host and returns how many were staged.
+    // A rule with the same device, selector and priority replaces the old one in place.
+    private int update(Host host, FlowRuleOperations.Builder ops) {
+        Map<DeviceId, FlowRule> wanted = compute(host);
+        Map<DeviceId, FlowRule> current = rules.getOrDefault(host.id(), Map.of());
+        int changes = 0;
+        for (FlowRule rule : current.values()) {
+            if (!wanted.containsKey(rule.deviceId())) {
+                ops.remove(rule);
+                withdrawn.increment();
+                changes++;
+            }
+        }
+        for (FlowRule rule : wanted.values()) {
+            FlowRule old = current.get(rule.deviceId());
+            if (old == null || !old.exactMatch(rule)) {
+                ops.add(rule);
+                installed.increment();
+                changes++;
+            }
+        }
+        size += wanted.size() - current.size();
+        if (wanted.isEmpty()) {
+            rules.remove(host.id());
+        } else {
+            rules.put(host.id(), wanted);
+        }
+        return changes;
+    }
+
+    // Stages the removal of every rule of a host and returns how many were staged.
+    private int withdraw(HostId hostId, FlowRuleOperations.Builder ops) {
+        Map<DeviceId, FlowRule> current = rules.remove(hostId);
+        if (current == null) {
+            return 0;
+        }
+        current.values().forEach(ops::remove);
+        withdrawn.add(current.size());
+        size -= current.size();
+        return current.size();
+    }
+
+    // Builds one rule per device that can reach the host, forwarding to the next hop.
+    private Map<DeviceId, FlowRule> compute(Host host) {
+        HostLocation location = host.location();
+        TrafficSelector selector = DefaultTrafficSelector.builder().matchEthDst(host.mac()).build();
+        Topology topology = topologyService.currentTopology();
+        Map<DeviceId, FlowRule> wanted = new HashMap<>();
+        for (Device device : deviceService.getAvailableDevices()) {
+            DeviceId deviceId = device.id();
+            PortNumber port;
+            if (deviceId.equals(location.deviceId())) {
+                port = location.port();
+            } else {
+                Set<Path> paths = topologyService.getPaths(topology, deviceId, location.deviceId());
+                if (paths.isEmpty()) {
+                    continue;
+                }
+                port = paths.iterator().next().src().port();
+            }
+            wanted.put(deviceId, DefaultFlowRule.builder()
+                    .forDevice(deviceId)
+                    .withSelector(selector)
+                    .withTreatment(DefaultTrafficTreatment.builder().setOutput(port).build())
+                    .withPriority(priority)
+                    .makePermanent()
+                    .fromApp(appId)
+                    .build());
+        }
+        return wanted;
+    }
+
+    // Pushes the staged changes as one batch.
+    private void apply(FlowRuleOperations.Builder ops, int changes, Object subject) {
+        if (changes == 0) {
+            return;
+        }
+        FlowRuleOperations batch = ops.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onError(FlowRuleOperations failed) {
+                log.warn("Failed to apply proactive rules towards {}", subject);
+            }
+        });
+        log.debug("Applying {} proactive rule changes towards {}", changes, subject);
+        flowRuleService.apply(batch);
+    }
+
+    /**
+     * Follows hosts as the host service discovers, moves and forgets them.
+     */
+    private class InternalHostListener implements HostListener {
+
+        @Override
+        public void event(HostEvent event) {
+            switch (event.type()) {
+                case HOST_ADDED:
+                case HOST_MOVED:
+                case HOST_UPDATED:
+                    hostUpdated(event.subject());
+                    break;
+                case HOST_REMOVED:
+                    hostRemoved(event.subject().id());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recomputes every path once the topology changes.
+     */
+    private class InternalTopologyListener implements TopologyListener {
+
+        @Override
+        public void event(TopologyEvent event) {
+            refresh();
+        }
+    }
+}
@@ -15,33 +15,18 @@
  */
 package nctu.winlab.bridge;
 
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Test;
-import org.onosproject.cfg.ComponentConfigAdapter;
-
 /**
- * Set of tests of the ONOS application component.
+ * What the packet processor does with a packet-in when the queue of its
+ * packet worker is full.
  */
-public class AppComponentTest {
-
-    private AppComponent component;
-
-    @Before
-    public void setUp() {
-        component = new AppComponent();
-        component.cfgService = new ComponentConfigAdapter();
-        component.activate();
-    }
-
-    @After
-    public void tearDown() {
-        component.deactivate();
-    }
+enum QueueOverflowPolicy {
 
-    @Test
-    public void basics() {
+    /** Drop the packet-in; the switch retries with the next packet. */
+    DROP,
 
-    }
+    /** Flood the packet from the dispatch thread without learning from it. */
+    FLOOD,
 
+    /** Wait on the dispatch thread until the worker has room, slowing the packet pipeline down. */
+    BLOCK
 }
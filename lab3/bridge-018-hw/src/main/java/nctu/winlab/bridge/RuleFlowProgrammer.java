@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+
+/**
+ * Installs rules as flow rules through a {@link FlowRuleBatcher}, skipping
+ * the objective layer. With a batch size of 1 every rule is applied as soon
+ * as it is requested.
+ */
+final class RuleFlowProgrammer implements FlowProgrammer {
+
+    private final FlowRuleBatcher batcher;
+    private final ApplicationId appId;
+
+    /**
+     * Creates a flow rule programmer.
+     *
+     * @param batcher batcher the rules are queued on
+     * @param appId   application the rules belong to
+     */
+    RuleFlowProgrammer(FlowRuleBatcher batcher, ApplicationId appId) {
+        this.batcher = batcher;
+        this.appId = appId;
+    }
+
+    @Override
+    public FlowBackend backend() {
+        return FlowBackend.FLOW_RULE;
+    }
+
+    @Override
+    public void install(DeviceId deviceId, TrafficSelector selector, TrafficTreatment treatment,
+                        int priority, int timeout) {
+        batcher.add(DefaultFlowRule.builder()
+                .forDevice(deviceId)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(priority)
+                .makeTemporary(timeout)
+                .fromApp(appId)
+                .build());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge.cli;
+
+import nctu.winlab.bridge.AppComponent;
+import nctu.winlab.bridge.LatencyHistogram;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.net.DeviceId;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Shows the packet-in and MAC table counters of the learning bridge and the
+ * time from packet-in to switch confirmation of the rules it installed on
+ * each device.
+ */
+@Service
+@Command(scope = "onos", name = "bridge-stats",
+        description = "Shows learning bridge packet-in counters and flow install latency")
+public class BridgeStatsCommand extends AbstractShellCommand {
+
+    private static final String COUNTERS = "hits=%d, misses=%d, floods=%d, installs=%d";
+    private static final String MAC_TABLE = "macTable occupancy=%d, evictions=%d, expirations=%d";
+    private static final String LATENCY =
+            "deviceId=%s, confirmed=%d, meanUs=%d, p50Us=%d, p99Us=%d, p999Us=%d, maxUs=%d";
+
+    @Override
+    protected void doExecute() {
+        AppComponent bridge = get(AppComponent.class);
+        print(COUNTERS, bridge.packetInHits(), bridge.packetInMisses(), bridge.floods(), bridge.flowInstalls());
+        print(MAC_TABLE, bridge.macTableOccupancy(), bridge.macTableEvictions(), bridge.macTableExpirations());
+        bridge.installLatencies().entrySet().stream()
+                .sorted(Comparator.comparing(e -> e.getKey().toString()))
+                .forEach(this::printLatency);
+    }
+
+    private void printLatency(Map.Entry<DeviceId, LatencyHistogram> entry) {
+        LatencyHistogram histogram = entry.getValue();
+        print(LATENCY, entry.getKey(), histogram.count(), histogram.meanMicros(),
+                histogram.percentileMicros(50), histogram.percentileMicros(99),
+                histogram.percentileMicros(99.9), histogram.maxMicros());
+    }
+}
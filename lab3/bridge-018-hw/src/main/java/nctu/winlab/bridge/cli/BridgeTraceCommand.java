@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge.cli;
+
+import nctu.winlab.bridge.AppComponent;
+import nctu.winlab.bridge.PacketTrace;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+
+import java.util.List;
+
+/**
+ * Dumps the sampled packet-in decisions of the learning bridge, oldest
+ * first.
+ */
+@Service
+@Command(scope = "onos", name = "bridge-trace",
+        description = "Dumps the sampled packet-in decisions of the learning bridge")
+public class BridgeTraceCommand extends AbstractShellCommand {
+
+    private static final String RECORD = "time=%s, deviceId=%s, port=%s, src=%s, dst=%s, decision=%s";
+
+    @Option(name = "-c", aliases = "--clear", description = "Clear the trace after dumping it")
+    private boolean clear = false;
+
+    @Override
+    protected void doExecute() {
+        AppComponent bridge = get(AppComponent.class);
+        List<PacketTrace.Record> records = bridge.packetTrace();
+        for (PacketTrace.Record record : records) {
+            print(RECORD, record.time(), record.deviceId(), record.port(), record.src(), record.dst(),
+                    record.decision());
+        }
+        print("%d of %d traced packet-ins shown", records.size(), bridge.packetTraceRecorded());
+        if (clear) {
+            bridge.clearPacketTrace();
+        }
+    }
+}
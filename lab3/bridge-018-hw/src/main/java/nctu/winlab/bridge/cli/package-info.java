@@ -15,6 +15,6 @@
  */
 
 /**
- * ONOS application archetype.
+ * CLI commands of the learning bridge.
  */
-package nctu.winlab.bridge;
\ No newline at end of file
+package nctu.winlab.bridge.cli;
@@ -15,33 +15,384 @@
  */
 package nctu.winlab.bridge;
 
+import com.codahale.metrics.Gauge;
+import com.google.common.collect.ImmutableMap;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowEntry;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.flow.instructions.Instructions;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.store.service.TestStorageService;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Set of tests of the ONOS application component.
  */
 public class AppComponentTest {
 
-    private AppComponent component;
+    private static final ProviderId PID = new ProviderId("of", "nctu.winlab.bridge");
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId DEV2 = DeviceId.deviceId("of:0000000000000002");
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final MacAddress MAC3 = MacAddress.valueOf("00:00:00:00:00:03");
+
+    private BridgeHarness harness;
 
     @Before
     public void setUp() {
-        component = new AppComponent();
-        component.cfgService = new ComponentConfigAdapter();
-        component.activate();
+        harness = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.FORWARDING_MODE, "DST_ONLY",
+                OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0",
+                OsgiPropertyConstants.TREE_FLOODING, "false"));
     }
 
     @After
     public void tearDown() {
-        component.deactivate();
+        harness.close();
     }
 
     @Test
     public void basics() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        assertEquals(1, harness.sent());
+        assertEquals(0, harness.objectives());
+
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        assertEquals(2, harness.sent());
+        assertEquals(1, harness.objectives());
+        assertEquals(2, harness.component().macTableOccupancy());
+    }
+
+    @Test
+    public void hitsShareSelectorAndTreatment() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        ForwardingObjective first = harness.lastObjective();
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(3), MAC3, MAC1)));
+        ForwardingObjective second = harness.lastObjective();
+
+        assertEquals(2, harness.objectives());
+        assertSame(first.selector(), second.selector());
+        assertSame(first.treatment(), second.treatment());
+    }
+
+    @Test
+    public void sourceDestinationInstallsShareSelector() {
+        try (BridgeHarness pairs = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.FORWARDING_MODE, "SRC_DST",
+                OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0"))) {
+            pairs.process(pairs.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+            pairs.process(pairs.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            ForwardingObjective first = pairs.lastObjective();
+            pairs.process(pairs.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+
+            assertEquals(2, pairs.objectives());
+            assertEquals(2, first.selector().criteria().size());
+            assertSame(first.selector(), pairs.lastObjective().selector());
+        }
+    }
+
+    @Test
+    public void destinationOnlyRuleIsSharedBySources() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        ForwardingObjective objective = harness.lastObjective();
+        assertEquals(1, objective.selector().criteria().size());
+        assertEquals(MAC1, ((EthCriterion) objective.selector().getCriterion(Criterion.Type.ETH_DST)).mac());
+
+        FlowRule rule = BridgeHarness.installed(DEV1, objective);
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(3), MAC3, MAC1)));
+        assertEquals(rule, BridgeHarness.installed(DEV1, harness.lastObjective()));
+    }
+
+    @Test
+    public void destinationOnlyBroadcastKeepsRulesTowardsTheSender() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, BridgeHarness.installed(DEV1, harness.lastObjective()));
+
+        harness.process(harness.context(BridgeHarness.arp(DEV1, PortNumber.portNumber(1), MAC1)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1,
+                MacAddress.valueOf("33:33:00:00:00:01"))));
+
+        assertEquals(0, harness.component().relearnWithdrawals());
+        assertNull(harness.lastOperations());
+        assertEquals(1, harness.component().installedFlowRules());
+    }
+
+    @Test
+    public void destinationOnlyMissRelearnsPeers() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        FlowRule towardsMac1 = BridgeHarness.installed(DEV1, harness.lastObjective());
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, towardsMac1);
+
+        // MAC2 keeps sending through the rule towards MAC1 but its binding ages out
+        harness.component().macTable.remove(DEV1, MAC2.toLong());
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+
+        assertEquals(1, harness.component().relearnWithdrawals());
+        FlowRuleOperation removal = harness.lastOperations().stages().get(0).iterator().next();
+        assertEquals(FlowRuleOperation.Type.REMOVE, removal.type());
+        assertEquals(towardsMac1, removal.rule());
+
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        assertEquals(2, harness.component().macTableOccupancy());
+    }
+
+    @Test
+    public void hostMoveRemovesStaleRules() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        FlowRule rule = BridgeHarness.installed(DEV1, harness.lastObjective());
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(3), MAC1, MAC2)));
+        assertEquals(1, harness.component().hostMoves());
+        assertEquals(1, harness.ruleBatches());
+        FlowRuleOperation removal = harness.lastOperations().stages().get(0).iterator().next();
+        assertEquals(FlowRuleOperation.Type.REMOVE, removal.type());
+        assertEquals(rule, removal.rule());
+    }
+
+    @Test
+    public void expiredRuleForgetsDestination() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        FlowRule rule = BridgeHarness.installed(DEV1, harness.lastObjective());
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+        assertEquals(2, harness.component().macTableOccupancy());
+
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_REMOVED, rule);
+        assertEquals(1, harness.component().macTableOccupancy());
+    }
+
+    @Test
+    public void restartRelearnsFromInstalledRules() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        FlowEntry left = new DefaultFlowEntry(BridgeHarness.installed(DEV1, harness.lastObjective()),
+                FlowEntry.FlowEntryState.ADDED, 0, 0, 0);
+
+        try (BridgeHarness restarted = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.FORWARDING_MODE, "DST_ONLY",
+                OsgiPropertyConstants.TREE_FLOODING, "false"), new TestStorageService(), List.of(left))) {
+            assertEquals(1, restarted.component().macTableOccupancy());
+            assertEquals(1, restarted.component().installedFlowRules());
+
+            restarted.process(restarted.context(
+                    BridgeHarness.inbound(DEV1, PortNumber.portNumber(3), MAC3, MAC1)));
+            assertEquals(1, restarted.objectives());
+        }
+    }
+
+    @Test
+    public void deactivateRemovesAllRules() {
+        harness.close();
+        assertEquals(1, harness.removalsById());
+        harness = new BridgeHarness(ImmutableMap.of());
+    }
+
+    @Test
+    public void flowRuleBackendBypassesObjectives() {
+        try (BridgeHarness rules = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.FLOW_BACKEND, "flow_rule",
+                OsgiPropertyConstants.FORWARDING_MODE, "DST_ONLY",
+                OsgiPropertyConstants.TREE_FLOODING, "false"))) {
+            rules.process(rules.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            rules.process(rules.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+            assertEquals(0, rules.objectives());
+            assertEquals(1, rules.ruleBatches());
+
+            rules.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rules.lastRule());
+            InstallLatency.Stats stats = rules.component().installLatency(FlowBackend.FLOW_RULE);
+            assertEquals(1, stats.requested());
+            assertEquals(1, stats.added());
+            assertEquals(0, rules.component().installLatency(FlowBackend.OBJECTIVE).requested());
+        }
+    }
+
+    @Test
+    public void objectiveInstallLatencyIsMeasured() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        InstallLatency.Stats stats = harness.component().installLatency(FlowBackend.OBJECTIVE);
+        assertEquals(1, stats.requested());
+        assertEquals(0, stats.added());
+
+        FlowRule rule = BridgeHarness.installed(DEV1, harness.lastObjective());
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+        assertEquals(1, stats.added());
+        assertEquals(0, stats.lost());
+    }
+
+    @Test
+    public void flowsKeepTheFixedTimeoutByDefault() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        assertEquals(AppComponent.DEFAULT_TIMEOUT, harness.lastObjective().timeout());
+    }
+
+    @Test
+    public void countsOutcomesAndInstallLatency() {
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+        harness.process(harness.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+        AppComponent bridge = harness.component();
+        assertEquals(1, bridge.packetInHits());
+        assertEquals(1, bridge.packetInMisses());
+        assertEquals(1, bridge.floods());
+        assertEquals(1, bridge.flowInstalls());
+        assertEquals(1L, gauge("packets.hits").getValue());
 
+        FlowRule rule = BridgeHarness.installed(DEV1, harness.lastObjective());
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+        assertEquals(1, bridge.installLatencies().get(DEV1).count());
+    }
+
+    @Test
+    public void workersForwardOffTheDispatchThread() throws InterruptedException {
+        assertForwardsOffTheDispatchThread(PacketWorkerMode.SHARDED);
     }
 
+    @Test
+    public void actorsForwardOffTheDispatchThread() throws InterruptedException {
+        assertForwardsOffTheDispatchThread(PacketWorkerMode.ACTOR);
+    }
+
+    @Test
+    public void bufferedPacketInsAreReleasedFromTheSwitch() {
+        try (BridgeHarness async = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.PACKET_WORKERS, "2"))) {
+            async.process(async.context(BridgeHarness.buffered(DEV1, PortNumber.portNumber(1), MAC1, MAC2, 128)));
+            assertEquals(1, async.sent());
+            assertEquals(0, async.emitted());
+
+            async.process(async.context(BridgeHarness.buffered(DEV1, PortNumber.portNumber(2), MAC2, MAC1, 128)));
+            assertEquals(2, async.sent());
+            assertEquals(0, async.emitted());
+            assertEquals(0, async.component().packetQueueDepth());
+            assertEquals(2, async.component().bufferedPacketOuts());
+            assertEquals(256, async.component().packetOutBytesSaved());
+        }
+    }
+
+    @Test
+    public void decisionsAreTraced() {
+        try (BridgeHarness traced = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.TRACE_SAMPLE_RATE, "1"))) {
+            traced.process(traced.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            traced.process(traced.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+            List<PacketTrace.Record> records = traced.component().packetTrace();
+            assertEquals(2, records.size());
+            assertEquals(PacketTrace.Decision.FLOOD, records.get(0).decision());
+            assertEquals(MAC1, records.get(0).src());
+            assertEquals(PacketTrace.Decision.FORWARD, records.get(1).decision());
+            assertEquals(PortNumber.portNumber(2), records.get(1).port());
+        }
+    }
+
+    @Test
+    public void missFloodsAlongTree() {
+        try (BridgeHarness tree = new BridgeHarness(ImmutableMap.of(OsgiPropertyConstants.TREE_FLOODING, "true"))) {
+            tree.process(tree.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            assertEquals(1, tree.emitted());
+            assertEquals(0, tree.sent());
+        }
+    }
+
+    @Test
+    public void bufferedFloodIsReleasedTowardsOneTreePort() {
+        try (BridgeHarness tree = new BridgeHarness(ImmutableMap.of(OsgiPropertyConstants.TREE_FLOODING, "true"))) {
+            PacketContext miss = tree.context(BridgeHarness.buffered(DEV1, PortNumber.portNumber(1), MAC1, MAC2, 128));
+            tree.process(miss);
+            assertEquals(1, tree.sent());
+            assertEquals(0, tree.emitted());
+
+            List<Instruction> outputs = miss.treatmentBuilder().build().allInstructions();
+            assertEquals(1, outputs.size());
+            assertEquals(PortNumber.portNumber(2), ((Instructions.OutputInstruction) outputs.get(0)).port());
+            assertEquals(BridgeHarness.PORTS - 2, tree.component().bufferedFloodDrops());
+            assertEquals(1, tree.component().bufferedPacketOuts());
+        }
+    }
+
+    @Test
+    public void linkChangeRecomputesFloodTree() {
+        try (BridgeHarness tree = new BridgeHarness(ImmutableMap.of(OsgiPropertyConstants.TREE_FLOODING, "true"))) {
+            tree.process(tree.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            assertEquals(BridgeHarness.PORTS - 1, tree.lastEmitted().treatment().allInstructions().size());
+
+            ConnectPoint uplink = new ConnectPoint(DEV1, PortNumber.portNumber(4));
+            tree.removeFromTree(uplink);
+            tree.process(tree.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            assertEquals(BridgeHarness.PORTS - 1, tree.lastEmitted().treatment().allInstructions().size());
+
+            Link link = DefaultLink.builder()
+                    .providerId(PID)
+                    .src(uplink)
+                    .dst(new ConnectPoint(DEV2, PortNumber.portNumber(4)))
+                    .type(Link.Type.DIRECT)
+                    .build();
+            tree.topologyEvent(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, null,
+                    List.of(new LinkEvent(LinkEvent.Type.LINK_ADDED, link))));
+            tree.process(tree.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2)));
+            assertEquals(BridgeHarness.PORTS - 2, tree.lastEmitted().treatment().allInstructions().size());
+        }
+    }
+
+    private void assertForwardsOffTheDispatchThread(PacketWorkerMode mode) throws InterruptedException {
+        try (BridgeHarness async = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.PACKET_WORKERS, "2",
+                OsgiPropertyConstants.PACKET_WORKER_MODE, mode.name(),
+                OsgiPropertyConstants.FORWARDING_MODE, "DST_ONLY",
+                OsgiPropertyConstants.TREE_FLOODING, "false"))) {
+            PacketContext miss = async.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), MAC1, MAC2));
+            async.process(miss);
+            assertTrue(miss.isHandled());
+            async.process(async.context(BridgeHarness.inbound(DEV1, PortNumber.portNumber(2), MAC2, MAC1)));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((async.objectives() < 1 || async.emitted() < 2) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, async.objectives());
+            assertEquals(2, async.emitted());
+            assertEquals(0, async.sent());
+            assertEquals(0, async.component().packetQueueOverflows());
+        }
+    }
+
+    private Gauge<?> gauge(String name) {
+        return (Gauge<?>) harness.metricsService().getMetrics().entrySet().stream()
+                .filter(e -> e.getKey().endsWith(name))
+                .findFirst()
+                .orElseThrow()
+                .getValue();
+    }
 }
@@ -0,0 +1,668 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onlab.metrics.MetricsManager;
+import org.onlab.packet.ARP;
+import org.onlab.packet.ChassisId;
+import org.onlab.packet.Data;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.UDP;
+import org.onlab.packet.VlanId;
+import org.onosproject.TestApplicationId;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.mastership.MastershipServiceAdapter;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultHost;
+import org.onosproject.net.DefaultPort;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.Path;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.flowobjective.FlowObjectiveServiceAdapter;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.host.HostServiceAdapter;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.DefaultPacketContext;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.packet.PacketServiceAdapter;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyEvent;
+import org.onosproject.net.topology.TopologyListener;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.TestStorageService;
+import org.osgi.service.component.ComponentContext;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the bridge component against in-memory service adapters, so tests
+ * and benchmarks can push packet-ins straight into its packet processor.
+ * Every device has {@link #PORTS} enabled ports and every port is an edge
+ * port unless a test takes it off the broadcast tree, so tree flooding sends
+ * a frame out of all ports but the ingress.
+ */
+final class BridgeHarness implements AutoCloseable {
+
+    /** Number of ports on every device. */
+    static final int PORTS = 4;
+
+    private static final ProviderId PID = new ProviderId("of", "nctu.winlab.bridge");
+
+    private final AppComponent component = new AppComponent();
+    private final MetricsManager metricsService = new MetricsManager();
+    private final LongAdder objectives = new LongAdder();
+    private final LongAdder ruleBatches = new LongAdder();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder removalsById = new LongAdder();
+    private final List<FlowEntry> flowEntries = new CopyOnWriteArrayList<>();
+    private final Map<FlowRule, FlowRule> rules = new ConcurrentHashMap<>();
+    private final Queue<FlowRuleEvent> unconfirmed = new ConcurrentLinkedQueue<>();
+    private final Set<ConnectPoint> offTree = ConcurrentHashMap.newKeySet();
+    private final Map<HostId, Host> hosts = new ConcurrentHashMap<>();
+    private final List<Path> paths = new CopyOnWriteArrayList<>();
+
+    private volatile boolean trackRules;
+
+    private volatile PacketProcessor processor;
+    private volatile ForwardingObjective lastObjective;
+    private volatile FlowRuleOperations lastOperations;
+    private volatile FlowRuleListener flowRuleListener;
+    private volatile TopologyListener topologyListener;
+    private volatile OutboundPacket lastEmitted;
+
+    /**
+     * Activates the bridge with the given component properties.
+     *
+     * @param properties property names and values overriding the defaults
+     */
+    BridgeHarness(Map<String, String> properties) {
+        this(properties, new TestStorageService());
+    }
+
+    /**
+     * Activates the bridge with the given component properties on a storage
+     * service that may be shared with other harnesses, as cluster instances
+     * share their distributed maps.
+     *
+     * @param properties     property names and values overriding the defaults
+     * @param storageService storage service backing the distributed MAC table
+     */
+    BridgeHarness(Map<String, String> properties, StorageService storageService) {
+        this(properties, storageService, List.of());
+    }
+
+    /**
+     * Activates the bridge on switches that still hold flow entries from a
+     * previous run.
+     *
+     * @param properties     property names and values overriding the defaults
+     * @param storageService storage service backing the distributed MAC table
+     * @param installed      flow entries present before activation
+     */
+    BridgeHarness(Map<String, String> properties, StorageService storageService, List<FlowEntry> installed) {
+        flowEntries.addAll(installed);
+        component.cfgService = new ComponentConfigAdapter();
+        component.coreService = new TestCoreService();
+        component.packetService = new TestPacketService();
+        component.flowRuleService = new TestFlowRuleService();
+        component.flowObjectiveService = new TestFlowObjectiveService();
+        component.hostService = new TestHostService();
+        component.topologyService = new TestTopologyService();
+        component.deviceService = new TestDeviceService();
+        component.storageService = storageService;
+        component.mastershipService = new TestMastershipService();
+        component.metricsService = metricsService;
+        component.activate();
+        component.modified(context(properties));
+    }
+
+    /**
+     * Returns the component under test.
+     *
+     * @return bridge component
+     */
+    AppComponent component() {
+        return component;
+    }
+
+    /**
+     * Returns the metrics service the bridge publishes to.
+     *
+     * @return metrics service
+     */
+    MetricsManager metricsService() {
+        return metricsService;
+    }
+
+    /**
+     * Builds an IPv4 frame received on the given port.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param src      source MAC address
+     * @param dst      destination MAC address
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket inbound(DeviceId deviceId, PortNumber port, MacAddress src, MacAddress dst) {
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(src)
+                .setDestinationMACAddress(dst)
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(new IPv4()
+                        .setSourceAddress("10.0.0.1")
+                        .setDestinationAddress("10.0.0.2")
+                        .setProtocol(IPv4.PROTOCOL_UDP));
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    /**
+     * Builds a broadcast ARP request received on the given port.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param src      sender MAC address
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket arp(DeviceId deviceId, PortNumber port, MacAddress src) {
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(src)
+                .setDestinationMACAddress(MacAddress.BROADCAST)
+                .setEtherType(Ethernet.TYPE_ARP)
+                .setPayload(new ARP()
+                        .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                        .setProtocolType(ARP.PROTO_TYPE_IP)
+                        .setHardwareAddressLength((byte) Ethernet.DATALAYER_ADDRESS_LENGTH)
+                        .setProtocolAddressLength((byte) Ip4Address.BYTE_LENGTH)
+                        .setOpCode(ARP.OP_REQUEST)
+                        .setSenderHardwareAddress(src.toBytes())
+                        .setSenderProtocolAddress(Ip4Address.valueOf("10.0.0.1").toOctets())
+                        .setTargetHardwareAddress(MacAddress.ZERO.toBytes())
+                        .setTargetProtocolAddress(Ip4Address.valueOf("10.0.0.2").toOctets()));
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    /**
+     * Builds a UDP frame between the given transport ports, received on the
+     * given port.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param src      source MAC address
+     * @param dst      destination MAC address
+     * @param srcPort  UDP source port
+     * @param dstPort  UDP destination port
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket udp(DeviceId deviceId, PortNumber port, MacAddress src, MacAddress dst,
+                             int srcPort, int dstPort) {
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(src)
+                .setDestinationMACAddress(dst)
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(new IPv4()
+                        .setSourceAddress("10.0.0.1")
+                        .setDestinationAddress("10.0.0.2")
+                        .setProtocol(IPv4.PROTOCOL_UDP)
+                        .setPayload(new UDP()
+                                .setSourcePort(srcPort)
+                                .setDestinationPort(dstPort)));
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    /**
+     * Builds the packet-in of a switch that buffered a 256-byte IPv4 frame
+     * and sent only its first bytes.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param src      source MAC address
+     * @param dst      destination MAC address
+     * @param captured number of bytes the packet-in carries
+     * @return inbound packet carrying the truncated frame
+     */
+    static InboundPacket buffered(DeviceId deviceId, PortNumber port, MacAddress src, MacAddress dst,
+                                  int captured) {
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(src)
+                .setDestinationMACAddress(dst)
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(new IPv4()
+                        .setSourceAddress("10.0.0.1")
+                        .setDestinationAddress("10.0.0.2")
+                        .setProtocol(IPv4.PROTOCOL_UDP)
+                        .setPayload(new Data(new byte[256 - 34])));
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize(), 0, captured));
+    }
+
+    /**
+     * Wraps an inbound packet in a fresh, unhandled packet context.
+     *
+     * @param packet inbound packet
+     * @return packet context whose sends are counted by the harness
+     */
+    PacketContext context(InboundPacket packet) {
+        return new DefaultPacketContext(0, packet, null, false) {
+            @Override
+            public void send() {
+                if (!block()) {
+                    sent.increment();
+                }
+            }
+        };
+    }
+
+    /**
+     * Hands a packet context to the bridge packet processor.
+     *
+     * @param context packet context
+     */
+    void process(PacketContext context) {
+        processor.process(context);
+    }
+
+    /**
+     * Returns the number of forwarding objectives submitted.
+     *
+     * @return forwarding objective count
+     */
+    long objectives() {
+        return objectives.sum();
+    }
+
+    /**
+     * Returns the last forwarding objective submitted.
+     *
+     * @return last forwarding objective, or null if none was submitted
+     */
+    ForwardingObjective lastObjective() {
+        return lastObjective;
+    }
+
+    /**
+     * Returns the number of flow rule batches applied.
+     *
+     * @return flow rule batch count
+     */
+    long ruleBatches() {
+        return ruleBatches.sum();
+    }
+
+    /**
+     * Returns the last flow rule batch applied.
+     *
+     * @return last flow rule operations, or null if none were applied
+     */
+    FlowRuleOperations lastOperations() {
+        return lastOperations;
+    }
+
+    /**
+     * Returns the first rule of the last flow rule batch applied.
+     *
+     * @return last applied flow rule, or null if no batch was applied
+     */
+    FlowRule lastRule() {
+        FlowRuleOperations operations = lastOperations;
+        return operations == null ? null : operations.stages().get(0).iterator().next().rule();
+    }
+
+    /**
+     * Builds the flow rule the core would derive from a bridge forwarding
+     * objective.
+     *
+     * @param deviceId  device the objective was submitted to
+     * @param objective forwarding objective
+     * @return flow rule
+     */
+    static FlowRule installed(DeviceId deviceId, ForwardingObjective objective) {
+        return DefaultFlowRule.builder()
+                .forDevice(deviceId)
+                .withSelector(objective.selector())
+                .withTreatment(objective.treatment())
+                .withPriority(objective.priority())
+                .makeTemporary(objective.timeout())
+                .fromApp(new TestApplicationId("nctu.winlab.bridge"))
+                .build();
+    }
+
+    /**
+     * Returns the flow entries the flow rule service reports for the bridge;
+     * tests add entries to it to feed the counter polls.
+     *
+     * @return mutable list of flow entries
+     */
+    List<FlowEntry> flowEntries() {
+        return flowEntries;
+    }
+
+    /**
+     * Reports a flow rule event to the bridge, as the core does when a
+     * switch confirms or drops a rule.
+     *
+     * @param type event type
+     * @param rule flow rule
+     */
+    void flowRuleEvent(FlowRuleEvent.Type type, FlowRule rule) {
+        FlowRuleEvent event = new FlowRuleEvent(type, rule);
+        if (flowRuleListener.isRelevant(event)) {
+            flowRuleListener.event(event);
+        }
+    }
+
+    /**
+     * Starts keeping the rules the bridge installs, as a switch would, so
+     * they can be listed and confirmed back to the bridge. Off by default,
+     * so benchmarks do not accumulate rules.
+     */
+    void trackRules() {
+        trackRules = true;
+    }
+
+    /**
+     * Reports every rule change since the previous call back to the bridge,
+     * as a switch that applies rules instantly would.
+     *
+     * @return number of rule changes reported
+     */
+    int confirmRules() {
+        int count = 0;
+        FlowRuleEvent event;
+        while ((event = unconfirmed.poll()) != null) {
+            flowRuleEvent(event.type(), event.subject());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the rules installed since rule tracking started, the newest
+     * rule for each device, selector and priority.
+     *
+     * @return snapshot of the tracked rules
+     */
+    List<FlowRule> rules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    private void ruleAdded(FlowRule rule) {
+        if (trackRules) {
+            rules.put(rule, rule);
+            unconfirmed.add(new FlowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule));
+        }
+    }
+
+    private void ruleRemoved(FlowRule rule) {
+        if (trackRules && rules.remove(rule) != null) {
+            unconfirmed.add(new FlowRuleEvent(FlowRuleEvent.Type.RULE_REMOVED, rule));
+        }
+    }
+
+    /**
+     * Returns the number of times all bridge rules were removed at once.
+     *
+     * @return remove-by-application count
+     */
+    long removalsById() {
+        return removalsById.sum();
+    }
+
+    /**
+     * Returns the number of packets emitted through the packet service.
+     *
+     * @return emitted packet count
+     */
+    long emitted() {
+        return emitted.sum();
+    }
+
+    /**
+     * Returns the last packet emitted through the packet service.
+     *
+     * @return last emitted packet, or null if none was emitted
+     */
+    OutboundPacket lastEmitted() {
+        return lastEmitted;
+    }
+
+    /**
+     * Takes a port off the broadcast tree, as a new link the tree routes
+     * around would. The bridge only notices after a topology event.
+     *
+     * @param point connect point leaving the tree
+     */
+    void removeFromTree(ConnectPoint point) {
+        offTree.add(point);
+    }
+
+    /**
+     * Makes the host service report a host with the given MAC address.
+     *
+     * @param mac      host MAC address
+     * @param location port the host is attached to
+     */
+    void addHost(MacAddress mac, ConnectPoint location) {
+        hosts.put(HostId.hostId(mac), new DefaultHost(PID, HostId.hostId(mac), mac, VlanId.NONE,
+                new HostLocation(location, 0), Set.of()));
+    }
+
+    /**
+     * Makes the topology service report a path between its end devices;
+     * paths between the same devices are reported in the order they were
+     * added.
+     *
+     * @param path infrastructure path
+     */
+    void addPath(Path path) {
+        paths.add(path);
+    }
+
+    /**
+     * Reports a topology event to the bridge, as the core does when the
+     * topology changes.
+     *
+     * @param event topology event
+     */
+    void topologyEvent(TopologyEvent event) {
+        topologyListener.event(event);
+    }
+
+    /**
+     * Returns the number of packet contexts sent back to the switch.
+     *
+     * @return sent packet count
+     */
+    long sent() {
+        return sent.sum();
+    }
+
+    @Override
+    public void close() {
+        component.deactivate();
+    }
+
+    private static ComponentContext context(Map<String, String> properties) {
+        Dictionary<String, Object> dictionary = new Hashtable<>(properties);
+        return (ComponentContext) Proxy.newProxyInstance(ComponentContext.class.getClassLoader(),
+                new Class<?>[]{ComponentContext.class},
+                (proxy, method, args) -> "getProperties".equals(method.getName()) ? dictionary : null);
+    }
+
+    private static class TestCoreService extends CoreServiceAdapter {
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return new TestApplicationId(name);
+        }
+    }
+
+    private class TestPacketService extends PacketServiceAdapter {
+        @Override
+        public void addProcessor(PacketProcessor processor, int priority) {
+            BridgeHarness.this.processor = processor;
+        }
+
+        @Override
+        public void emit(OutboundPacket packet) {
+            lastEmitted = packet;
+            emitted.increment();
+        }
+    }
+
+    private class TestFlowRuleService extends FlowRuleServiceAdapter {
+        @Override
+        public void addListener(FlowRuleListener listener) {
+            flowRuleListener = listener;
+        }
+
+        @Override
+        public Iterable<FlowEntry> getFlowEntriesById(ApplicationId id) {
+            return flowEntries;
+        }
+
+        @Override
+        public void removeFlowRulesById(ApplicationId id) {
+            removalsById.increment();
+            rules.clear();
+        }
+
+        @Override
+        public void applyFlowRules(FlowRule... flowRules) {
+            for (FlowRule rule : flowRules) {
+                ruleAdded(rule);
+            }
+        }
+
+        @Override
+        public void apply(FlowRuleOperations ops) {
+            lastOperations = ops;
+            ruleBatches.increment();
+            for (Set<FlowRuleOperation> stage : ops.stages()) {
+                for (FlowRuleOperation operation : stage) {
+                    if (operation.type() == FlowRuleOperation.Type.REMOVE) {
+                        ruleRemoved(operation.rule());
+                    } else {
+                        ruleAdded(operation.rule());
+                    }
+                }
+            }
+        }
+    }
+
+    private class TestTopologyService extends TopologyServiceAdapter {
+        @Override
+        public boolean isBroadcastPoint(Topology topology, ConnectPoint connectPoint) {
+            return !offTree.contains(connectPoint);
+        }
+
+        @Override
+        public Set<Path> getPaths(Topology topology, DeviceId src, DeviceId dst) {
+            Set<Path> found = new LinkedHashSet<>();
+            for (Path path : paths) {
+                if (path.src().deviceId().equals(src) && path.dst().deviceId().equals(dst)) {
+                    found.add(path);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public void addListener(TopologyListener listener) {
+            topologyListener = listener;
+        }
+    }
+
+    private static class TestMastershipService extends MastershipServiceAdapter {
+        @Override
+        public boolean isLocalMaster(DeviceId deviceId) {
+            return true;
+        }
+    }
+
+    private class TestHostService extends HostServiceAdapter {
+        @Override
+        public Host getHost(HostId hostId) {
+            return hosts.get(hostId);
+        }
+    }
+
+    private static class TestDeviceService extends DeviceServiceAdapter {
+        @Override
+        public List<Port> getPorts(DeviceId deviceId) {
+            Device device = new DefaultDevice(PID, deviceId, Device.Type.SWITCH, "", "", "", "", new ChassisId());
+            List<Port> ports = new ArrayList<>();
+            for (int i = 1; i <= PORTS; i++) {
+                ports.add(new DefaultPort(device, PortNumber.portNumber(i), true));
+            }
+            return ports;
+        }
+    }
+
+    private class TestFlowObjectiveService extends FlowObjectiveServiceAdapter {
+        @Override
+        public void forward(DeviceId deviceId, ForwardingObjective forwardingObjective) {
+            lastObjective = forwardingObjective;
+            objectives.increment();
+            if (forwardingObjective.op() == Objective.Operation.ADD) {
+                ruleAdded(installed(deviceId, forwardingObjective));
+            } else if (forwardingObjective.op() == Objective.Operation.REMOVE) {
+                ruleRemoved(installed(deviceId, forwardingObjective));
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import org.onlab.packet.ChassisId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultPort;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.flow.instructions.Instructions;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of the broadcast tree flood ports on a switch with edge ports 1 and
+ * 2, port 3 on a tree link, port 4 on a link outside the tree and port 5
+ * disabled.
+ */
+public class BroadcastTreeTest {
+
+    private static final ProviderId PID = new ProviderId("of", "nctu.winlab.bridge");
+    private static final DeviceId S1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId S2 = DeviceId.deviceId("of:0000000000000002");
+
+    private final Set<ConnectPoint> broadcastPoints = new HashSet<>(Set.of(point(S1, 1), point(S1, 2),
+            point(S1, 3), point(S1, 5), point(S2, 1)));
+    private Topology topology = topology();
+    private final BroadcastTree tree = new BroadcastTree(new TestTopologyService(), new TestDeviceService());
+
+    @Test
+    public void floodsOutOfEdgeAndTreePorts() {
+        assertEquals(ports(1, 2, 3), tree.floodPorts(S1));
+        assertEquals(ports(2, 3), outputs(tree.floodTreatment(S1, PortNumber.portNumber(1))));
+        assertEquals(ports(1, 2), outputs(tree.floodTreatment(S1, PortNumber.portNumber(3))));
+        assertSame(tree.floodTreatment(S1, PortNumber.portNumber(1)),
+                tree.floodTreatment(S1, PortNumber.portNumber(1)));
+    }
+
+    @Test
+    public void dropsCopiesFromLinksOutsideTheTree() {
+        assertNull(tree.floodTreatment(S1, PortNumber.portNumber(4)));
+        assertNull(tree.floodTreatment(S1, PortNumber.portNumber(5)));
+    }
+
+    @Test
+    public void recomputesOnlyAfterInvalidation() {
+        tree.floodPorts(S1);
+        broadcastPoints.remove(point(S1, 3));
+        broadcastPoints.add(point(S1, 4));
+        assertEquals(ports(1, 2, 3), tree.floodPorts(S1));
+
+        tree.clear();
+        assertEquals(ports(1, 2, 4), tree.floodPorts(S1));
+        assertEquals(ports(2, 4), outputs(tree.floodTreatment(S1, PortNumber.portNumber(1))));
+        assertNull(tree.floodTreatment(S1, PortNumber.portNumber(3)));
+
+        broadcastPoints.remove(point(S1, 2));
+        tree.invalidate(S2);
+        assertEquals(ports(1, 2, 4), tree.floodPorts(S1));
+        tree.invalidate(S1);
+        assertEquals(ports(1, 4), tree.floodPorts(S1));
+    }
+
+    @Test
+    public void recomputesForNewTopology() {
+        tree.floodPorts(S1);
+        broadcastPoints.remove(point(S1, 3));
+        topology = topology();
+        assertEquals(ports(1, 2), tree.floodPorts(S1));
+    }
+
+    private static ConnectPoint point(DeviceId deviceId, int port) {
+        return new ConnectPoint(deviceId, PortNumber.portNumber(port));
+    }
+
+    private static Set<PortNumber> ports(int... numbers) {
+        ImmutableSet.Builder<PortNumber> ports = ImmutableSet.builder();
+        for (int number : numbers) {
+            ports.add(PortNumber.portNumber(number));
+        }
+        return ports.build();
+    }
+
+    private static Set<PortNumber> outputs(TrafficTreatment treatment) {
+        Set<PortNumber> outputs = new HashSet<>();
+        for (Instruction instruction : treatment.allInstructions()) {
+            outputs.add(((Instructions.OutputInstruction) instruction).port());
+        }
+        return outputs;
+    }
+
+    // Each call stands for a new topology snapshot.
+    private static Topology topology() {
+        return (Topology) Proxy.newProxyInstance(Topology.class.getClassLoader(), new Class<?>[]{Topology.class},
+                (proxy, method, args) -> null);
+    }
+
+    private class TestTopologyService extends TopologyServiceAdapter {
+        @Override
+        public Topology currentTopology() {
+            return topology;
+        }
+
+        @Override
+        public boolean isBroadcastPoint(Topology topology, ConnectPoint connectPoint) {
+            return broadcastPoints.contains(connectPoint);
+        }
+    }
+
+    private static class TestDeviceService extends DeviceServiceAdapter {
+        @Override
+        public List<Port> getPorts(DeviceId deviceId) {
+            Device device = new DefaultDevice(PID, deviceId, Device.Type.SWITCH, "", "", "", "", new ChassisId());
+            List<Port> ports = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                ports.add(new DefaultPort(device, PortNumber.portNumber(i), i != 5));
+            }
+            return ports;
+        }
+    }
+}
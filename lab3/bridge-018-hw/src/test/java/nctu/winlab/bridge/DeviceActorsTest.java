@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the per-device packet-in actors.
+ */
+public class DeviceActorsTest {
+
+    private static final int DEVICES = 16;
+    private static final int PACKETS = 2000;
+
+    private DeviceActors actors;
+
+    @After
+    public void tearDown() {
+        if (actors != null) {
+            actors.close();
+        }
+    }
+
+    @Test
+    public void eachDeviceIsSerialAndOrdered() throws InterruptedException {
+        Map<DeviceId, List<Long>> handled = new ConcurrentHashMap<>();
+        Map<DeviceId, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(DEVICES * PACKETS);
+        DeviceId[] devices = new DeviceId[DEVICES];
+        for (int d = 0; d < DEVICES; d++) {
+            devices[d] = DeviceId.deviceId(String.format("of:%016x", d + 1));
+            handled.put(devices[d], new CopyOnWriteArrayList<>());
+            running.put(devices[d], new AtomicInteger());
+        }
+        actors = new DeviceActors(4, PACKETS, (context, receivedAt) -> {
+            DeviceId deviceId = devices[(int) (receivedAt % DEVICES)];
+            if (running.get(deviceId).incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            handled.get(deviceId).add(receivedAt / DEVICES);
+            running.get(deviceId).decrementAndGet();
+            done.countDown();
+        }, Executors.defaultThreadFactory());
+
+        for (long i = 0; i < (long) DEVICES * PACKETS; i++) {
+            assertTrue(actors.put(devices[(int) (i % DEVICES)], null, i));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(DEVICES, actors.actors());
+        for (DeviceId deviceId : devices) {
+            List<Long> sequence = handled.get(deviceId);
+            assertEquals(PACKETS, sequence.size());
+            for (int i = 0; i < PACKETS; i++) {
+                assertEquals(i, (long) sequence.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void boundsEachMailbox() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        actors = new DeviceActors(1, 2, (context, receivedAt) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Executors.defaultThreadFactory());
+        DeviceId dev1 = DeviceId.deviceId("of:0000000000000001");
+        DeviceId dev2 = DeviceId.deviceId("of:0000000000000002");
+
+        assertTrue(actors.offer(dev1, null, 0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(actors.offer(dev1, null, 1));
+        assertTrue(actors.offer(dev1, null, 2));
+        assertFalse(actors.offer(dev1, null, 3));
+        assertTrue(actors.offer(dev2, null, 4));
+        assertEquals(3, actors.depth());
+        assertEquals(2, actors.maxDepth());
+
+        assertEquals(3, actors.close());
+        assertFalse(actors.offer(dev2, null, 5));
+        release.countDown();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.mastership.MastershipServiceAdapter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.instructions.Instructions.OutputInstruction;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapBuilder;
+import org.onosproject.store.service.TestEventuallyConsistentMap;
+import org.onosproject.store.service.TestStorageService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the MAC table shared through an eventually consistent map.
+ */
+public class DistributedMacTableTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final PortNumber P1 = PortNumber.portNumber(1);
+    private static final PortNumber P2 = PortNumber.portNumber(2);
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Map<String, String> PROPERTIES = ImmutableMap.of(
+            OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0",
+            OsgiPropertyConstants.TREE_FLOODING, "false",
+            OsgiPropertyConstants.DISTRIBUTED_MAC_TABLE, "true");
+
+    private static final MastershipService MASTER = new TestMastershipService(true);
+    private static final MastershipService REPLICA = new TestMastershipService(false);
+
+    private final SharedStorageService storage = new SharedStorageService();
+    private final List<BridgeHarness> instances = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        instances.clear();
+    }
+
+    @After
+    public void tearDown() {
+        instances.forEach(BridgeHarness::close);
+    }
+
+    @Test
+    public void bindingsReachOtherInstances() {
+        BridgeHarness first = instance();
+        BridgeHarness second = instance();
+
+        first.process(first.context(BridgeHarness.inbound(DEV1, P1, MAC1, MAC2)));
+        assertEquals(1, first.sent());
+        assertEquals(1, second.component().macTableRemoteUpdates());
+
+        second.process(second.context(BridgeHarness.inbound(DEV1, P2, MAC2, MAC1)));
+        assertEquals(1, second.objectives());
+        OutputInstruction output = (OutputInstruction) second.lastObjective().treatment().allInstructions().get(0);
+        assertEquals(P1, output.port());
+    }
+
+    @Test
+    public void relearningDoesNotReplicate() {
+        BridgeHarness first = instance();
+        for (int i = 0; i < 100; i++) {
+            first.process(first.context(BridgeHarness.inbound(DEV1, P1, MAC1, MAC2)));
+        }
+        assertEquals(1, first.component().macTablePublished());
+
+        first.process(first.context(BridgeHarness.inbound(DEV1, P2, MAC1, MAC2)));
+        assertEquals(2, first.component().macTablePublished());
+    }
+
+    @Test
+    public void newInstanceStartsWithClusterBindings() {
+        BridgeHarness first = instance();
+        first.process(first.context(BridgeHarness.inbound(DEV1, P1, MAC1, MAC2)));
+
+        BridgeHarness standby = instance();
+        assertEquals(1, standby.component().macTableOccupancy());
+        standby.process(standby.context(BridgeHarness.inbound(DEV1, P2, MAC2, MAC1)));
+        assertEquals(1, standby.objectives());
+        assertEquals(0, standby.component().macTableReadThroughs());
+    }
+
+    @Test
+    public void missReadsThroughToTheMap() {
+        MacTable local = new MacTable();
+        DistributedMacTable shared = new DistributedMacTable(local, storage, MASTER);
+        storage.map().put(new MacTableKey(DEV1, MAC1.toLong()), P1);
+        local.clear();
+
+        assertNull(local.lookup(DEV1, MAC1.toLong()));
+        assertEquals(P1, shared.readThrough(DEV1, MAC1.toLong()));
+        assertEquals(P1, local.lookup(DEV1, MAC1.toLong()));
+        assertEquals(1, shared.readThroughs());
+    }
+
+    @Test
+    public void expiredBindingsAreWithdrawn() {
+        MacTable firstTable = new MacTable();
+        MacTable secondTable = new MacTable();
+        DistributedMacTable first = new DistributedMacTable(firstTable, storage, MASTER);
+        new DistributedMacTable(secondTable, storage, REPLICA);
+
+        firstTable.learn(DEV1, MAC1.toLong(), P1);
+        first.learned(DEV1, MAC1.toLong(), P1, null);
+        assertEquals(P1, secondTable.lookup(DEV1, MAC1.toLong()));
+
+        assertEquals(1, firstTable.expire(Long.MAX_VALUE, first::expired));
+        assertNull(storage.map().get(new MacTableKey(DEV1, MAC1.toLong())));
+        assertNull(secondTable.lookup(DEV1, MAC1.toLong()));
+    }
+
+    @Test
+    public void replicaAgingKeepsTheMasterBinding() {
+        MacTable masterTable = new MacTable();
+        MacTable replicaTable = new MacTable();
+        DistributedMacTable master = new DistributedMacTable(masterTable, storage, MASTER);
+        DistributedMacTable replica = new DistributedMacTable(replicaTable, storage, REPLICA);
+
+        masterTable.learn(DEV1, MAC1.toLong(), P1);
+        master.learned(DEV1, MAC1.toLong(), P1, null);
+        assertEquals(P1, replicaTable.lookup(DEV1, MAC1.toLong()));
+
+        // The replica hears nothing from the host while the master keeps refreshing it
+        assertEquals(1, replicaTable.expire(Long.MAX_VALUE, replica::expired));
+        assertNull(replicaTable.lookup(DEV1, MAC1.toLong()));
+        assertEquals(P1, storage.map().get(new MacTableKey(DEV1, MAC1.toLong())));
+        assertEquals(P1, masterTable.lookup(DEV1, MAC1.toLong()));
+        assertEquals(P1, replica.readThrough(DEV1, MAC1.toLong()));
+    }
+
+    @Test
+    public void masterWithdrawsCapacityEvictions() {
+        MacTable masterTable = new MacTable();
+        MacTable replicaTable = new MacTable();
+        masterTable.setCapacity(1);
+        DistributedMacTable master = new DistributedMacTable(masterTable, storage, MASTER);
+        new DistributedMacTable(replicaTable, storage, REPLICA);
+
+        masterTable.learn(DEV1, MAC1.toLong(), P1);
+        master.learned(DEV1, MAC1.toLong(), P1, null);
+        masterTable.learn(DEV1, MAC2.toLong(), P2);
+        master.learned(DEV1, MAC2.toLong(), P2, null);
+
+        assertEquals(1, masterTable.evictions());
+        assertNull(storage.map().get(new MacTableKey(DEV1, MAC1.toLong())));
+        assertEquals(P2, storage.map().get(new MacTableKey(DEV1, MAC2.toLong())));
+        assertNull(replicaTable.lookup(DEV1, MAC1.toLong()));
+        assertNull(master.readThrough(DEV1, MAC1.toLong()));
+    }
+
+    @Test
+    public void replicaEvictionKeepsTheMasterBinding() {
+        MacTable masterTable = new MacTable();
+        MacTable replicaTable = new MacTable();
+        replicaTable.setCapacity(1);
+        DistributedMacTable master = new DistributedMacTable(masterTable, storage, MASTER);
+        new DistributedMacTable(replicaTable, storage, REPLICA);
+
+        masterTable.learn(DEV1, MAC1.toLong(), P1);
+        master.learned(DEV1, MAC1.toLong(), P1, null);
+        masterTable.learn(DEV1, MAC2.toLong(), P2);
+        master.learned(DEV1, MAC2.toLong(), P2, null);
+
+        assertEquals(1, replicaTable.evictions());
+        assertNull(replicaTable.lookup(DEV1, MAC1.toLong()));
+        assertEquals(P1, storage.map().get(new MacTableKey(DEV1, MAC1.toLong())));
+    }
+
+    private BridgeHarness instance() {
+        BridgeHarness harness = new BridgeHarness(PROPERTIES, storage);
+        instances.add(harness);
+        return harness;
+    }
+
+    private static class TestMastershipService extends MastershipServiceAdapter {
+        private final boolean master;
+
+        TestMastershipService(boolean master) {
+            this.master = master;
+        }
+
+        @Override
+        public boolean isLocalMaster(DeviceId deviceId) {
+            return master;
+        }
+    }
+
+    // Hands every caller the same map, as the cluster replicates one map.
+    private static class SharedStorageService extends TestStorageService {
+        private final EventuallyConsistentMap<Object, Object> map =
+                new TestEventuallyConsistentMap.Builder<>().build();
+
+        @SuppressWarnings("unchecked")
+        <K, V> EventuallyConsistentMap<K, V> map() {
+            return (EventuallyConsistentMap<K, V>) (EventuallyConsistentMap<?, ?>) map;
+        }
+
+        @Override
+        public <K, V> EventuallyConsistentMapBuilder<K, V> eventuallyConsistentMapBuilder() {
+            return new TestEventuallyConsistentMap.Builder<K, V>() {
+                @Override
+                public EventuallyConsistentMap<K, V> build() {
+                    return map();
+                }
+            };
+        }
+    }
+}
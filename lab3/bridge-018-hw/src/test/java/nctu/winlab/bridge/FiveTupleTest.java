@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.TCP;
+import org.onlab.packet.UDP;
+import org.onosproject.TestApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the IPv4 5-tuple used for multipath forwarding.
+ */
+public class FiveTupleTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+
+    @Test
+    public void selectorMatchesTheFrameItWasBuiltFrom() {
+        for (Ethernet frame : new Ethernet[]{udp(1000, 53), tcp(40000, 80), ip(IPv4.PROTOCOL_ICMP)}) {
+            FiveTuple tuple = FiveTuple.of(frame);
+            assertEquals(tuple, FiveTuple.of(tuple.selector(MAC1, MAC2)));
+        }
+        assertNotEquals(FiveTuple.of(udp(1000, 53)), FiveTuple.of(udp(1001, 53)));
+        assertNull(FiveTuple.of(new Ethernet().setEtherType(Ethernet.TYPE_ARP)));
+    }
+
+    @Test
+    public void ruleKeyCarriesTheTuple() {
+        FiveTuple tuple = FiveTuple.of(tcp(40000, 80));
+        FlowRule rule = DefaultFlowRule.builder()
+                .forDevice(DEV1)
+                .withSelector(tuple.selector(MAC1, MAC2))
+                .withTreatment(DefaultTrafficTreatment.builder().setOutput(PortNumber.portNumber(2)).build())
+                .withPriority(AppComponent.ECMP_PRIORITY)
+                .makeTemporary(10)
+                .fromApp(new TestApplicationId("nctu.winlab.bridge"))
+                .build();
+        assertEquals(new FlowKey(DEV1, MAC1.toLong(), MAC2.toLong(), tuple), FlowKey.of(rule));
+        assertNotEquals(new FlowKey(DEV1, MAC1.toLong(), MAC2.toLong()), FlowKey.of(rule));
+    }
+
+    @Test
+    public void hashSpreadsFlowsOverPaths() {
+        int paths = 4;
+        int flows = 4000;
+        int[] load = new int[paths];
+        for (int port = 0; port < flows; port++) {
+            load[Math.floorMod(FiveTuple.of(udp(10000 + port, 53)).hash(), paths)]++;
+        }
+        for (int count : load) {
+            assertTrue("uneven load " + count, Math.abs(count - flows / paths) < flows / paths / 5);
+        }
+    }
+
+    private static Ethernet udp(int srcPort, int dstPort) {
+        Ethernet frame = ip(IPv4.PROTOCOL_UDP);
+        frame.getPayload().setPayload(new UDP().setSourcePort(srcPort).setDestinationPort(dstPort));
+        return frame;
+    }
+
+    private static Ethernet tcp(int srcPort, int dstPort) {
+        Ethernet frame = ip(IPv4.PROTOCOL_TCP);
+        frame.getPayload().setPayload(new TCP().setSourcePort(srcPort).setDestinationPort(dstPort));
+        return frame;
+    }
+
+    private static Ethernet ip(byte protocol) {
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(MAC1)
+                .setDestinationMACAddress(MAC2)
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(new IPv4()
+                        .setSourceAddress("10.0.0.1")
+                        .setDestinationAddress("10.0.0.2")
+                        .setProtocol(protocol));
+        return frame;
+    }
+}
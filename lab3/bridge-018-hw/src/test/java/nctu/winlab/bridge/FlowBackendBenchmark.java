@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableMap;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.packet.InboundPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-side cost of one install on each flow backend, from the
+ * packet-in that hits a learned destination to the {@code RULE_ADDED}
+ * event that confirms the rule. The switch round trip is not part of this
+ * measurement; on a live network compare the per-backend latency the
+ * component reports on deactivation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlowBackendBenchmark {
+
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress HOST1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress HOST2 = MacAddress.valueOf("00:00:00:00:00:02");
+
+    @Param({"OBJECTIVE", "FLOW_RULE"})
+    public String backend;
+
+    private boolean objectives;
+    private BridgeHarness harness;
+    private InboundPacket hit;
+
+    @Setup
+    public void setUp() {
+        harness = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.FLOW_BACKEND, backend,
+                OsgiPropertyConstants.PACKET_IN_RATE, "0",
+                OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0",
+                OsgiPropertyConstants.TREE_FLOODING, "false"));
+        harness.process(harness.context(BridgeHarness.inbound(DEVICE, PortNumber.portNumber(2), HOST2, HOST1)));
+        hit = BridgeHarness.inbound(DEVICE, PortNumber.portNumber(1), HOST1, HOST2);
+        objectives = FlowBackend.valueOf(backend) == FlowBackend.OBJECTIVE;
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.close();
+    }
+
+    @Benchmark
+    public FlowRule installAndConfirm() {
+        harness.process(harness.context(hit));
+        FlowRule rule = objectives
+                ? BridgeHarness.installed(DEVICE, harness.lastObjective())
+                : harness.lastRule();
+        harness.flowRuleEvent(FlowRuleEvent.Type.RULE_ADDED, rule);
+        return rule;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the adaptive flow idle timeouts.
+ */
+public class FlowLifetimesTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final FlowKey KEY = new FlowKey(DEV1, 0x0aL, 0x0bL);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void steadyFlowsGrowUpToTheMaximum() {
+        FlowLifetimes lifetimes = new FlowLifetimes(10, 30);
+        long now = 0;
+        assertEquals(10, lifetimes.timeoutFor(KEY, now));
+
+        int[] expected = {20, 30, 30};
+        for (int timeout : expected) {
+            lifetimes.observe(KEY, 100, now += SECOND);
+            lifetimes.removed(KEY, 120, now += 10 * SECOND);
+            assertEquals(timeout, lifetimes.timeoutFor(KEY, now += SECOND));
+        }
+        assertEquals(3, lifetimes.repunts());
+        assertEquals(2, lifetimes.raised());
+    }
+
+    @Test
+    public void shortFlowsShrinkToTheMinimum() {
+        FlowLifetimes lifetimes = new FlowLifetimes(5, 40);
+        lifetimes.timeoutFor(KEY, 0);
+        for (int i = 0; i < 3; i++) {
+            lifetimes.removed(KEY, 30, 0);
+            lifetimes.timeoutFor(KEY, SECOND);
+        }
+        assertEquals(40, lifetimes.timeoutFor(KEY, SECOND));
+
+        lifetimes.removed(KEY, 1, 2 * SECOND);
+        assertEquals(20, lifetimes.timeoutFor(KEY, 3 * SECOND));
+        lifetimes.removed(KEY, 0, 4 * SECOND);
+        assertEquals(10, lifetimes.timeoutFor(KEY, 5 * SECOND));
+        assertEquals(2, lifetimes.lowered());
+    }
+
+    @Test
+    public void lateReturnsKeepTheTimeout() {
+        FlowLifetimes lifetimes = new FlowLifetimes(10, 30);
+        lifetimes.timeoutFor(KEY, 0);
+        lifetimes.removed(KEY, 50, 0);
+        assertEquals(10, lifetimes.timeoutFor(KEY, 11 * SECOND));
+        assertEquals(0, lifetimes.repunts());
+    }
+
+    @Test
+    public void forgetsIdleFlows() {
+        FlowLifetimes lifetimes = new FlowLifetimes(10, 30);
+        lifetimes.timeoutFor(KEY, 0);
+        lifetimes.purge(60 * SECOND);
+        assertEquals(1, lifetimes.size());
+        lifetimes.purge(61 * SECOND);
+        assertEquals(0, lifetimes.size());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.TestApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the per-device flow rule batcher.
+ */
+public class FlowRuleBatcherTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId DEV2 = DeviceId.deviceId("of:0000000000000002");
+
+    private final List<FlowRuleOperations> applied = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void flushesWhenBatchIsFull() {
+        FlowRuleBatcher batcher = new FlowRuleBatcher(new RecordingFlowRuleService(), executor, 3, 60_000);
+        batcher.add(rule(DEV1, 1));
+        batcher.add(rule(DEV2, 1));
+        batcher.add(rule(DEV1, 2));
+        assertTrue(applied.isEmpty());
+
+        batcher.add(rule(DEV1, 3));
+        assertEquals(1, applied.size());
+        assertEquals(3, applied.get(0).stages().get(0).size());
+        assertEquals(3, batcher.rules());
+        assertEquals(1, batcher.flushes());
+
+        batcher.flushAll();
+        assertEquals(2, applied.size());
+        assertEquals(2.0, batcher.averageBatchSize(), 0.0);
+    }
+
+    @Test
+    public void flushesWhenWindowElapses() throws InterruptedException {
+        FlowRuleBatcher batcher = new FlowRuleBatcher(new RecordingFlowRuleService(), executor, 100, 20);
+        batcher.add(rule(DEV1, 1));
+        batcher.add(rule(DEV1, 2));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (applied.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, applied.size());
+        assertEquals(2, batcher.rules());
+        assertTrue(batcher.maxFlushDelayMicros() >= TimeUnit.MILLISECONDS.toMicros(20));
+    }
+
+    @Test
+    public void lateTimerDoesNotHoldRulesBack() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            release.await();
+            return null;
+        });
+        FlowRuleBatcher batcher = new FlowRuleBatcher(new RecordingFlowRuleService(), executor, 100, 20);
+        batcher.add(rule(DEV1, 1));
+        Thread.sleep(40);
+        assertTrue(applied.isEmpty());
+
+        batcher.add(rule(DEV1, 2));
+        assertEquals(1, applied.size());
+        assertEquals(2, applied.get(0).stages().get(0).size());
+        release.countDown();
+    }
+
+    @Test
+    public void singleRuleBatchesFlushImmediately() {
+        FlowRuleBatcher batcher = new FlowRuleBatcher(new RecordingFlowRuleService(), executor, 1, 10);
+        batcher.add(rule(DEV1, 1));
+        batcher.add(rule(DEV1, 2));
+        assertEquals(2, applied.size());
+    }
+
+    private static FlowRule rule(DeviceId deviceId, long dst) {
+        return DefaultFlowRule.builder()
+                .forDevice(deviceId)
+                .withSelector(DefaultTrafficSelector.builder().matchEthDst(MacAddress.valueOf(dst)).build())
+                .withTreatment(DefaultTrafficTreatment.builder().setOutput(PortNumber.portNumber(1)).build())
+                .withPriority(AppComponent.DEFAULT_PRIORITY)
+                .makeTemporary(AppComponent.DEFAULT_TIMEOUT)
+                .fromApp(new TestApplicationId("bridge"))
+                .build();
+    }
+
+    private class RecordingFlowRuleService extends FlowRuleServiceAdapter {
+        @Override
+        public void apply(FlowRuleOperations ops) {
+            applied.add(ops);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the logarithmic latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentileMicros(99));
+        assertEquals(0, histogram.meanMicros());
+        assertEquals(0, histogram.maxMicros());
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000, histogram.maxMicros());
+        assertEquals(5_000, histogram.meanMicros());
+        assertWithin(5_000, histogram.percentileMicros(50));
+        assertWithin(9_900, histogram.percentileMicros(99));
+        assertWithin(9_990, histogram.percentileMicros(99.9));
+        assertEquals(10_000, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long value = 1; value < 1 << 20; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.highest(bucket) >= value);
+            assertTrue(bucket == LatencyHistogram.bucket(value - 1)
+                    || LatencyHistogram.highest(bucket - 1) == value - 1);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void concurrentRecordingKeepsEverySample() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        for (int w = 0; w < 4; w++) {
+            workers.execute(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(400_000, histogram.count());
+        assertEquals(99, histogram.maxMicros());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but got " + actual,
+                actual >= expected && actual <= expected + expected / 16 + 1);
+    }
+}
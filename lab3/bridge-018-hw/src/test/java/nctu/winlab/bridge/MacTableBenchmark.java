@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Learning and lookup throughput of the striped MAC table with several
+ * packet workers sharing one device. Each thread owns a disjoint MAC range,
+ * as workers sharded by ingress port would. Compare scaling by overriding
+ * the thread count with {@code -t 1}, {@code -t 2}, ...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class MacTableBenchmark {
+
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0000000000000001");
+    private static final int MACS_PER_THREAD = 4096;
+    private static final PortNumber PORT = PortNumber.portNumber(1);
+
+    private final AtomicLong threads = new AtomicLong();
+    private MacTable.DeviceTable table;
+
+    @Setup
+    public void setUp() {
+        table = new MacTable().device(DEVICE);
+    }
+
+    /**
+     * MAC range and position of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        private long base;
+        private int next;
+
+        @Setup
+        public void setUp(MacTableBenchmark benchmark) {
+            base = benchmark.threads.getAndIncrement() << 32;
+        }
+
+        private long nextMac() {
+            next = (next + 1) & (MACS_PER_THREAD - 1);
+            return base | next;
+        }
+    }
+
+    @Benchmark
+    public PortNumber learn(Worker worker) {
+        return table.learn(worker.nextMac(), PORT);
+    }
+
+    @Benchmark
+    public PortNumber learnAndLookup(Worker worker) {
+        long mac = worker.nextMac();
+        table.learn(mac, PORT);
+        return table.lookup(mac ^ 1);
+    }
+}
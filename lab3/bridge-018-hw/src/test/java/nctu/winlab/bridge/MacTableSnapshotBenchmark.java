@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to checkpoint and to restore a MAC table of one million entries
+ * spread over {@link #DEVICES} devices, with the file on the default
+ * temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MacTableSnapshotBenchmark {
+
+    private static final int DEVICES = 16;
+    private static final int ENTRIES = 1 << 20;
+
+    private MacTable table;
+    private MacTableSnapshot snapshot;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = new MacTable();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ENTRIES; i++) {
+            DeviceId deviceId = DeviceId.deviceId(String.format("of:%016x", i % DEVICES + 1));
+            table.device(deviceId).learn(i, PortNumber.portNumber(i % BridgeHarness.PORTS + 1), now);
+        }
+        file = Files.createTempFile("mac-table", ".snapshot");
+        snapshot = new MacTableSnapshot(file);
+        snapshot.write(table, now);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        return snapshot.write(table, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public MacTable restore() throws IOException {
+        MacTable restored = new MacTable();
+        snapshot.read(restored, 0);
+        return restored;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the memory-mapped MAC table checkpoints.
+ */
+public class MacTableSnapshotTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId DEV2 = DeviceId.deviceId("of:0000000000000002");
+    private static final PortNumber P1 = PortNumber.portNumber(1);
+    private static final PortNumber P2 = PortNumber.portNumber(2);
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mac-table");
+        file = directory.resolve("mac-table.snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        MacTable table = new MacTable();
+        table.device(DEV1).learn(0xffffffffffffL, P1, 1000);
+        table.device(DEV1).learn(0x0000000000aaL, PortNumber.LOCAL, 2000);
+        table.device(DEV2).learn(0x0000000000aaL, P2, 3000);
+
+        MacTableSnapshot snapshot = new MacTableSnapshot(file);
+        assertEquals(3, snapshot.write(table, 4000));
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+        MacTable restored = new MacTable();
+        assertEquals(3, snapshot.read(restored, 0));
+        assertEquals(P1, restored.lookup(DEV1, 0xffffffffffffL));
+        assertEquals(PortNumber.LOCAL, restored.lookup(DEV1, 0x0000000000aaL));
+        assertEquals(P2, restored.lookup(DEV2, 0x0000000000aaL));
+
+        // Learning times survive the round trip.
+        assertEquals(1, restored.expire(1500));
+        assertNull(restored.lookup(DEV1, 0xffffffffffffL));
+        assertEquals(2, restored.size());
+    }
+
+    @Test
+    public void skipsEntriesOlderThanCutoff() throws IOException {
+        MacTable table = new MacTable();
+        for (int i = 0; i < 100; i++) {
+            table.device(DEV1).learn(i, P1, i);
+        }
+        MacTableSnapshot snapshot = new MacTableSnapshot(file);
+        snapshot.write(table, 100);
+
+        MacTable restored = new MacTable();
+        assertEquals(40, snapshot.read(restored, 60));
+        assertNull(restored.lookup(DEV1, 59));
+        assertEquals(P1, restored.lookup(DEV1, 60));
+    }
+
+    @Test
+    public void missingFileRestoresNothing() throws IOException {
+        MacTable restored = new MacTable();
+        assertEquals(0, new MacTableSnapshot(file).read(restored, 0));
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    public void rejectsForeignFile() throws IOException {
+        Files.write(file, new byte[MacTableSnapshot.HEADER_BYTES]);
+        try {
+            new MacTableSnapshot(file).read(new MacTable(), 0);
+            fail("Foreign file accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a MAC table snapshot"));
+        }
+    }
+
+    @Test
+    public void checkpointsWhileLearning() throws Exception {
+        MacTable table = new MacTable();
+        for (int i = 0; i < 10_000; i++) {
+            table.learn(DEV1, i, P1);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService learner = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> learning = learner.submit(() -> {
+                long mac = 10_000;
+                while (!done.get()) {
+                    table.learn(DEV1, mac++, P2);
+                }
+            });
+            MacTableSnapshot snapshot = new MacTableSnapshot(file);
+            int written = 0;
+            for (int round = 0; round < 10; round++) {
+                written = snapshot.write(table, System.currentTimeMillis());
+            }
+            done.set(true);
+            learning.get();
+
+            MacTable restored = new MacTable();
+            assertEquals(written, snapshot.read(restored, 0));
+            assertTrue(written >= 10_000);
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(P1, restored.lookup(DEV1, i));
+            }
+        } finally {
+            learner.shutdownNow();
+        }
+    }
+
+    @Test
+    public void busyDeviceKeepsToItsSection() throws Exception {
+        MacTableSnapshot snapshot = new MacTableSnapshot(file);
+        ExecutorService learner = Executors.newSingleThreadExecutor();
+        try {
+            for (int round = 0; round < 20; round++) {
+                MacTable table = new MacTable();
+                for (int i = 0; i < 100; i++) {
+                    table.learn(DEV1, i, P1);
+                    table.learn(DEV2, i, P1);
+                }
+                AtomicBoolean done = new AtomicBoolean();
+                Future<?> learning = learner.submit(() -> {
+                    long mac = 1_000_000;
+                    while (!done.get() && mac < 2_000_000) {
+                        table.learn(DEV1, mac, P2);
+                        table.learn(DEV2, mac++, P2);
+                    }
+                });
+                while (table.size(DEV1) == 100) {
+                    Thread.yield();
+                }
+                int written = snapshot.write(table, System.currentTimeMillis());
+                done.set(true);
+                learning.get();
+
+                MacTable restored = new MacTable();
+                assertEquals(written, snapshot.read(restored, 0));
+                assertTrue(restored.size(DEV1) >= 100);
+                assertTrue(restored.size(DEV2) >= 100);
+            }
+        } finally {
+            learner.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the concurrent MAC learning table.
+ */
+public class MacTableTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId DEV2 = DeviceId.deviceId("of:0000000000000002");
+    private static final PortNumber P1 = PortNumber.portNumber(1);
+    private static final PortNumber P2 = PortNumber.portNumber(2);
+
+    private static final int MACS_PER_WORKER = 4096;
+    private static final int ROUNDS = 64;
+
+    @Test
+    public void learnLookupRemove() {
+        MacTable table = new MacTable();
+        assertNull(table.lookup(DEV1, 0x0000000000aaL));
+        assertNull(table.learn(DEV1, 0x0000000000aaL, P1));
+        assertEquals(P1, table.lookup(DEV1, 0x0000000000aaL));
+        assertNull(table.lookup(DEV2, 0x0000000000aaL));
+
+        assertEquals(P1, table.learn(DEV1, 0x0000000000aaL, P2));
+        assertEquals(P2, table.lookup(DEV1, 0x0000000000aaL));
+        assertEquals(1, table.size(DEV1));
+
+        assertEquals(P2, table.remove(DEV1, 0x0000000000aaL));
+        assertNull(table.lookup(DEV1, 0x0000000000aaL));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void growsAndRecyclesSlots() {
+        MacTable.DeviceTable table = new MacTable(1).device(DEV1);
+        for (long mac = 1; mac <= 10_000; mac++) {
+            table.learn(mac, PortNumber.portNumber(mac % 48));
+        }
+        assertEquals(10_000, table.size());
+        for (long mac = 1; mac <= 10_000; mac += 2) {
+            table.remove(mac);
+        }
+        for (long mac = 20_001; mac <= 25_000; mac++) {
+            table.learn(mac, P1);
+        }
+        assertEquals(10_000, table.size());
+        for (long mac = 2; mac <= 10_000; mac += 2) {
+            assertEquals(PortNumber.portNumber(mac % 48), table.lookup(mac));
+        }
+        assertNull(table.lookup(9_999));
+    }
+
+    @Test
+    public void evictsLeastRecentlyLearnedWhenFull() {
+        MacTable macTable = new MacTable(1);
+        macTable.setCapacity(3);
+        MacTable.DeviceTable table = macTable.device(DEV1);
+        table.learn(1, P1, 100);
+        table.learn(2, P1, 200);
+        table.learn(3, P1, 300);
+        table.learn(1, P2, 400);
+        table.learn(4, P1, 500);
+
+        assertNull(table.lookup(2));
+        assertEquals(P2, table.lookup(1));
+        assertEquals(3, table.size());
+        assertEquals(1, macTable.evictions());
+
+        macTable.setCapacity(2);
+        assertEquals(1, macTable.expire(0));
+        assertNull(table.lookup(3));
+        assertEquals(2, macTable.evictions());
+    }
+
+    @Test
+    public void neverHoldsMoreThanTheCapacity() {
+        for (int capacity : new int[]{17, 40, 3}) {
+            MacTable macTable = new MacTable();
+            macTable.setCapacity(capacity);
+            MacTable.DeviceTable table = macTable.device(DEV1);
+            for (long mac = 1; mac <= 10_000; mac++) {
+                table.learn(mac, P1);
+                assertTrue(table.size() <= capacity);
+            }
+            assertTrue(macTable.evictions() > 0);
+
+            macTable.setCapacity(capacity - 1);
+            macTable.expire(0);
+            assertTrue(table.size() <= capacity - 1);
+        }
+    }
+
+    @Test
+    public void learnsUpToTheCapacityWhateverTheStripes() {
+        for (int capacity : new int[]{1, 5, 15, 32}) {
+            MacTable macTable = new MacTable();
+            macTable.setCapacity(capacity);
+            MacTable.DeviceTable table = macTable.device(DEV1);
+            for (long mac = 1; mac <= capacity; mac++) {
+                table.learn(mac, P1, mac);
+            }
+            for (long mac = 1; mac <= capacity; mac++) {
+                assertEquals(P1, table.lookup(mac));
+            }
+            assertEquals(capacity, table.size());
+            assertEquals(0, macTable.evictions());
+
+            table.learn(capacity + 1, P2, capacity + 1);
+            assertNull(table.lookup(1));
+            assertEquals(P2, table.lookup(capacity + 1));
+            assertEquals(capacity, table.size());
+        }
+    }
+
+    @Test
+    public void expiresIdleEntries() {
+        MacTable macTable = new MacTable(2);
+        MacTable.DeviceTable table = macTable.device(DEV1);
+        for (long mac = 0; mac < 100; mac++) {
+            table.learn(mac, P1, mac);
+        }
+        table.learn(10, P1, 1_000);
+
+        assertEquals(49, macTable.expire(50));
+        assertEquals(51, table.size());
+        assertEquals(P1, table.lookup(10));
+        assertNull(table.lookup(11));
+        assertEquals(P1, table.lookup(50));
+        assertEquals(49, macTable.expirations());
+    }
+
+    @Test
+    public void reportsAgedOutEntriesOnly() {
+        MacTable macTable = new MacTable(1);
+        MacTable.DeviceTable table = macTable.device(DEV1);
+        table.learn(1, P1, 100);
+        table.learn(2, P1, 100);
+        table.learn(3, P1, 300);
+        table.learn(4, P1, 400);
+        macTable.setCapacity(1);
+
+        List<Long> aged = new ArrayList<>();
+        assertEquals(3, macTable.expire(200, (deviceId, mac) -> {
+            assertEquals(DEV1, deviceId);
+            aged.add(mac);
+        }));
+        assertEquals(List.of(1L, 2L), aged);
+        assertEquals(P1, table.lookup(4));
+    }
+
+    /**
+     * Each worker owns a disjoint MAC range on a shared device and rewrites
+     * its bindings repeatedly; no update may be lost. Throughput is measured
+     * by {@link MacTableBenchmark}.
+     */
+    @Test
+    public void concurrentLearningKeepsEveryBinding() throws Exception {
+        int workers = 8;
+        MacTable table = new MacTable();
+        run(table, workers);
+        assertEquals(workers * MACS_PER_WORKER, table.size(DEV1));
+        assertEquals(workers * MACS_PER_WORKER, table.size());
+        for (int w = 0; w < workers; w++) {
+            for (int i = 0; i < MACS_PER_WORKER; i++) {
+                long mac = ((long) w << 32) | i;
+                assertEquals(PortNumber.portNumber(ROUNDS - 1), table.lookup(DEV1, mac));
+            }
+        }
+    }
+
+    /**
+     * All workers fight over the same MACs; every lookup must observe a
+     * complete binding and the table must not gain phantom entries.
+     */
+    @Test
+    public void contendedLearningKeepsTableConsistent() throws Exception {
+        MacTable table = new MacTable(4);
+        int workers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            PortNumber port = PortNumber.portNumber(w);
+            futures.add(executor.submit(() -> {
+                start.await();
+                MacTable.DeviceTable device = table.device(DEV2);
+                for (int r = 0; r < ROUNDS; r++) {
+                    for (long mac = 0; mac < MACS_PER_WORKER; mac++) {
+                        device.learn(mac, port);
+                        assertNotNull(device.lookup(mac));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(MACS_PER_WORKER, table.size(DEV2));
+    }
+
+    private void run(MacTable table, int workers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            long base = (long) w << 32;
+            futures.add(executor.submit(() -> {
+                start.await();
+                MacTable.DeviceTable device = table.device(DEV1);
+                for (int r = 0; r < ROUNDS; r++) {
+                    PortNumber port = PortNumber.portNumber(r);
+                    for (int i = 0; i < MACS_PER_WORKER; i++) {
+                        device.learn(base | i, port);
+                        device.lookup(base | ((i * 31) % MACS_PER_WORKER));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+import org.onosproject.net.ConnectPoint;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static nctu.winlab.bridge.PacketInRateLimiter.Verdict.BLOCK;
+import static nctu.winlab.bridge.PacketInRateLimiter.Verdict.DROP;
+import static nctu.winlab.bridge.PacketInRateLimiter.Verdict.PASS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the per-port packet-in rate limiter.
+ */
+public class PacketInRateLimiterTest {
+
+    private static final ConnectPoint CP1 = ConnectPoint.deviceConnectPoint("of:0000000000000001/1");
+    private static final ConnectPoint CP2 = ConnectPoint.deviceConnectPoint("of:0000000000000001/2");
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void limitsEachPortSeparately() {
+        PacketInRateLimiter limiter = new PacketInRateLimiter(10, 2, 0);
+        assertEquals(PASS, limiter.admit(CP1, 0));
+        assertEquals(PASS, limiter.admit(CP1, 0));
+        assertEquals(DROP, limiter.admit(CP1, 0));
+        assertEquals(PASS, limiter.admit(CP2, 0));
+
+        assertEquals(PASS, limiter.admit(CP1, 100 * MS));
+        assertEquals(DROP, limiter.admit(CP1, 100 * MS));
+        assertEquals(2, limiter.dropped());
+
+        Map<ConnectPoint, Long> drops = limiter.drainDrops();
+        assertEquals(Long.valueOf(2), drops.get(CP1));
+        assertEquals(1, drops.size());
+        assertTrue(limiter.drainDrops().isEmpty());
+    }
+
+    @Test
+    public void reportsSustainedStormOnce() {
+        PacketInRateLimiter limiter = new PacketInRateLimiter(1, 1, 2);
+        int blocks = 0;
+        for (long t = 0; t <= 3000; t += 10) {
+            if (limiter.admit(CP1, t * MS) == BLOCK) {
+                blocks++;
+            }
+        }
+        assertEquals(1, blocks);
+
+        // A quiet second ends the storm, the next one is reported again.
+        for (long t = 5000; t <= 8000; t += 10) {
+            if (limiter.admit(CP1, t * MS) == BLOCK) {
+                blocks++;
+            }
+        }
+        assertEquals(2, blocks);
+    }
+
+    @Test
+    public void zeroRateDisablesLimiting() {
+        PacketInRateLimiter limiter = new PacketInRateLimiter(0, 1, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(PASS, limiter.admit(CP1, 0));
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableList;
+import org.onlab.packet.DeserializationException;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.InboundPacket;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a packet capture through the bridge packet processor, to
+ * reproduce incidents offline without ONOS or Mininet.
+ * <p>
+ * Every captured frame becomes a packet-in on the connect point its
+ * source MAC address is mapped to, and is handed to a {@link BridgeHarness}.
+ * Rules the bridge installs are confirmed back to it at once, as a switch
+ * would. Frames are replayed as fast as possible rather than at capture
+ * pace; table sizes are sampled at capture time intervals. Because the
+ * replay compresses time, the packet-in rate limit is off and packet-ins
+ * are handled inline unless the properties say otherwise, and MAC aging
+ * and flow idle timeouts do not fire as they would have in the capture.
+ * <p>
+ * Run from the test classpath:
+ * {@code mvn -Preplay -DskipTests test -Dreplay.args="capture.pcap ingress.txt [name=value ...]"}
+ */
+final class PacketInReplay {
+
+    private static final long DEFAULT_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, String> properties;
+    private final IngressMap ingress;
+    private final long sampleInterval;
+
+    /**
+     * Creates a replay.
+     *
+     * @param properties     bridge properties overriding the replay defaults
+     * @param ingress        connect point each frame is received on
+     * @param sampleInterval capture time between table size samples, in
+     *                       nanoseconds
+     */
+    PacketInReplay(Map<String, String> properties, IngressMap ingress, long sampleInterval) {
+        Map<String, String> merged = new HashMap<>();
+        merged.put(OsgiPropertyConstants.PACKET_IN_RATE, "0");
+        merged.put(OsgiPropertyConstants.PACKET_WORKERS, "0");
+        merged.putAll(properties);
+        this.properties = merged;
+        this.ingress = ingress;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Replays frames through a freshly activated bridge.
+     *
+     * @param frames captured frames in capture order
+     * @return replay report
+     */
+    Report replay(List<PcapFile.Frame> frames) {
+        List<InboundPacket> packets = new ArrayList<>(frames.size());
+        List<Long> times = new ArrayList<>(frames.size());
+        for (PcapFile.Frame frame : frames) {
+            InboundPacket packet = inbound(frame);
+            if (packet != null) {
+                packets.add(packet);
+                times.add(frame.timestamp());
+            }
+        }
+
+        List<Sample> samples = new ArrayList<>();
+        try (BridgeHarness harness = new BridgeHarness(properties)) {
+            harness.trackRules();
+            long first = times.isEmpty() ? 0 : times.get(0);
+            long nextSample = first + sampleInterval;
+            long busy = 0;
+            for (int i = 0; i < packets.size(); i++) {
+                long time = times.get(i);
+                if (time >= nextSample) {
+                    samples.add(sample(harness, nextSample - first, i));
+                    nextSample += (time - nextSample) / sampleInterval * sampleInterval + sampleInterval;
+                }
+                long start = System.nanoTime();
+                harness.process(harness.context(packets.get(i)));
+                harness.confirmRules();
+                busy += System.nanoTime() - start;
+            }
+            long last = times.isEmpty() ? 0 : times.get(times.size() - 1) - first;
+            samples.add(sample(harness, last, packets.size()));
+
+            AppComponent bridge = harness.component();
+            return new Report(packets.size(), frames.size() - packets.size(), busy, samples, harness.rules(),
+                    bridge.packetInHits(), bridge.packetInMisses(), bridge.floods(), bridge.flowInstalls());
+        }
+    }
+
+    private InboundPacket inbound(PcapFile.Frame frame) {
+        byte[] data = frame.data();
+        Ethernet ethPkt;
+        try {
+            ethPkt = Ethernet.deserializer().deserialize(data, 0, data.length);
+        } catch (DeserializationException | RuntimeException e) {
+            return null;
+        }
+        ConnectPoint receivedFrom = ingress.lookup(ethPkt.getSourceMAC());
+        if (receivedFrom == null) {
+            return null;
+        }
+        return new DefaultInboundPacket(receivedFrom, ethPkt, ByteBuffer.wrap(data));
+    }
+
+    private static Sample sample(BridgeHarness harness, long offset, int frames) {
+        AppComponent bridge = harness.component();
+        return new Sample(offset, frames, bridge.macTableOccupancy(), bridge.installedFlowRules(),
+                bridge.packetQueueDepth());
+    }
+
+    /**
+     * Connect points frames are received on, by source MAC address.
+     */
+    static final class IngressMap {
+        private final Map<MacAddress, ConnectPoint> bySource;
+        private final ConnectPoint other;
+
+        /**
+         * Creates an ingress map.
+         *
+         * @param bySource connect point of each source MAC address
+         * @param other    connect point of all other frames, or null to
+         *                 skip them
+         */
+        IngressMap(Map<MacAddress, ConnectPoint> bySource, ConnectPoint other) {
+            this.bySource = Map.copyOf(bySource);
+            this.other = other;
+        }
+
+        /**
+         * Parses an ingress map with one {@code <source MAC> <device>/<port>}
+         * pair per line, e.g. {@code 00:00:00:00:00:01 of:0000000000000001/1}.
+         * A source of {@code *} matches every unlisted MAC address; blank
+         * lines and lines starting with {@code #} are ignored.
+         *
+         * @param lines lines of the map
+         * @return ingress map
+         * @throws IllegalArgumentException if a line is malformed
+         */
+        static IngressMap parse(List<String> lines) {
+            Map<MacAddress, ConnectPoint> bySource = new HashMap<>();
+            ConnectPoint other = null;
+            for (String line : lines) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = trimmed.split("\\s+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException("Expected '<source MAC> <device>/<port>': " + line);
+                }
+                ConnectPoint point = ConnectPoint.deviceConnectPoint(fields[1]);
+                if ("*".equals(fields[0])) {
+                    other = point;
+                } else {
+                    bySource.put(MacAddress.valueOf(fields[0]), point);
+                }
+            }
+            return new IngressMap(bySource, other);
+        }
+
+        /**
+         * Returns the connect point a frame from the given source arrives on.
+         *
+         * @param source source MAC address
+         * @return connect point, or null if the frame is not mapped
+         */
+        ConnectPoint lookup(MacAddress source) {
+            ConnectPoint point = bySource.get(source);
+            return point == null ? other : point;
+        }
+    }
+
+    /**
+     * Bridge table sizes at one point of the capture.
+     */
+    static final class Sample {
+        private final long offset;
+        private final int frames;
+        private final int macTable;
+        private final int installedRules;
+        private final int queueDepth;
+
+        private Sample(long offset, int frames, int macTable, int installedRules, int queueDepth) {
+            this.offset = offset;
+            this.frames = frames;
+            this.macTable = macTable;
+            this.installedRules = installedRules;
+            this.queueDepth = queueDepth;
+        }
+
+        /**
+         * Returns the capture time of the sample.
+         *
+         * @return nanoseconds since the first replayed frame
+         */
+        long offset() {
+            return offset;
+        }
+
+        /**
+         * Returns the number of frames replayed before the sample.
+         *
+         * @return frame count
+         */
+        int frames() {
+            return frames;
+        }
+
+        /**
+         * Returns the number of MAC addresses learned.
+         *
+         * @return MAC table occupancy
+         */
+        int macTable() {
+            return macTable;
+        }
+
+        /**
+         * Returns the number of bridge rules confirmed on the switches.
+         *
+         * @return installed rule count
+         */
+        int installedRules() {
+            return installedRules;
+        }
+    }
+
+    /**
+     * Outcome of one replay.
+     */
+    static final class Report {
+        private final int frames;
+        private final int skipped;
+        private final long elapsed;
+        private final List<Sample> samples;
+        private final List<FlowRule> rules;
+        private final long hits;
+        private final long misses;
+        private final long floods;
+        private final long installs;
+
+        private Report(int frames, int skipped, long elapsed, List<Sample> samples, List<FlowRule> rules,
+                       long hits, long misses, long floods, long installs) {
+            this.frames = frames;
+            this.skipped = skipped;
+            this.elapsed = elapsed;
+            this.samples = ImmutableList.copyOf(samples);
+            List<FlowRule> sorted = new ArrayList<>(rules);
+            sorted.sort(Comparator.comparing((FlowRule rule) -> rule.deviceId().toString())
+                    .thenComparing(FlowRule::priority, Comparator.reverseOrder())
+                    .thenComparing(rule -> rule.selector().toString()));
+            this.rules = ImmutableList.copyOf(sorted);
+            this.hits = hits;
+            this.misses = misses;
+            this.floods = floods;
+            this.installs = installs;
+        }
+
+        /**
+         * Returns the number of frames handed to the bridge.
+         *
+         * @return replayed frame count
+         */
+        int frames() {
+            return frames;
+        }
+
+        /**
+         * Returns the number of frames that could not be parsed or were not
+         * mapped to a connect point.
+         *
+         * @return skipped frame count
+         */
+        int skipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns the packet-ins processed per second of processing time.
+         *
+         * @return replay throughput
+         */
+        double throughput() {
+            return elapsed == 0 ? 0 : frames * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        /**
+         * Returns the table sizes sampled during the replay; the last sample
+         * is taken after the last frame.
+         *
+         * @return samples in capture order
+         */
+        List<Sample> samples() {
+            return samples;
+        }
+
+        /**
+         * Returns the rules installed and not withdrawn at the end of the
+         * replay.
+         *
+         * @return rules ordered by device and descending priority
+         */
+        List<FlowRule> rules() {
+            return rules;
+        }
+
+        /**
+         * Prints the report.
+         *
+         * @param out stream to print to
+         */
+        void print(PrintStream out) {
+            out.printf("Replayed %d frames (%d skipped) in %.1f ms, %.0f packet-ins/s%n",
+                    frames, skipped, elapsed / 1e6, throughput());
+            out.printf("hits=%d misses=%d floods=%d installs=%d%n", hits, misses, floods, installs);
+            out.printf("%10s %10s %10s %10s %10s%n", "time(s)", "frames", "macTable", "rules", "queue");
+            for (Sample sample : samples) {
+                out.printf("%10.3f %10d %10d %10d %10d%n", sample.offset / 1e9, sample.frames,
+                        sample.macTable, sample.installedRules, sample.queueDepth);
+            }
+            out.printf("Rules (%d):%n", rules.size());
+            for (FlowRule rule : rules) {
+                out.printf("  %s priority=%d %s -> %s%n", rule.deviceId(), rule.priority(),
+                        rule.selector().criteria(), rule.treatment().allInstructions());
+            }
+        }
+    }
+
+    /**
+     * Replays a capture and prints the report.
+     *
+     * @param args capture file, ingress map file, then optional
+     *             {@code -i <seconds>} sample interval and
+     *             {@code name=value} bridge properties
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PacketInReplay <capture.pcap> <ingress map> [-i <seconds>] [name=value ...]");
+            System.exit(2);
+        }
+        long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            if ("-i".equals(args[i]) && i + 1 < args.length) {
+                sampleInterval = (long) (Double.parseDouble(args[++i]) * TimeUnit.SECONDS.toNanos(1));
+            } else if (args[i].contains("=")) {
+                String[] property = args[i].split("=", 2);
+                properties.put(property[0], property[1]);
+            } else {
+                System.err.println("Ignoring argument " + args[i]);
+            }
+        }
+        if (sampleInterval <= 0) {
+            sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+        }
+        List<PcapFile.Frame> frames = PcapFile.read(Paths.get(args[0]));
+        IngressMap ingress = IngressMap.parse(Files.readAllLines(Paths.get(args[1])));
+        new PacketInReplay(properties, ingress, sampleInterval).replay(frames).print(System.out);
+    }
+}
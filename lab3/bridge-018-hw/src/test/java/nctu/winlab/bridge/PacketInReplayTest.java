@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the offline packet-in replay.
+ */
+public class PacketInReplayTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final MacAddress MAC3 = MacAddress.valueOf("00:00:00:00:00:03");
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("replay", ".pcap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void replaysCapture() throws IOException {
+        PcapFile.write(file, List.of(
+                frame(0, MAC1, MAC2),
+                frame(500 * MILLIS, MAC2, MAC1),
+                frame(1500 * MILLIS, MAC1, MAC2),
+                frame(1600 * MILLIS, MAC3, MAC1)));
+        PacketInReplay.IngressMap ingress = PacketInReplay.IngressMap.parse(List.of(
+                "# two hosts on one switch",
+                "00:00:00:00:00:01 of:0000000000000001/1",
+                "00:00:00:00:00:02 of:0000000000000001/2"));
+
+        PacketInReplay.Report report = new PacketInReplay(Map.of(), ingress, TimeUnit.SECONDS.toNanos(1))
+                .replay(PcapFile.read(file));
+
+        assertEquals(3, report.frames());
+        assertEquals(1, report.skipped());
+        assertTrue(report.throughput() > 0);
+
+        List<PacketInReplay.Sample> samples = report.samples();
+        assertEquals(2, samples.size());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), samples.get(0).offset());
+        assertEquals(2, samples.get(0).frames());
+        assertEquals(2, samples.get(0).macTable());
+        assertEquals(1, samples.get(0).installedRules());
+        assertEquals(3, samples.get(1).frames());
+        assertEquals(2, samples.get(1).installedRules());
+
+        assertEquals(2, report.rules().size());
+        assertTrue(report.rules().stream().allMatch(rule -> rule.deviceId().equals(DEV1)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.print(new PrintStream(out, true, StandardCharsets.UTF_8));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Rules (2):"));
+    }
+
+    @Test
+    public void unlistedSourcesUseTheWildcard() {
+        PacketInReplay.IngressMap ingress = PacketInReplay.IngressMap.parse(List.of(
+                "00:00:00:00:00:01 of:0000000000000001/1",
+                "* of:0000000000000001/4"));
+        assertEquals(PortNumber.portNumber(1), ingress.lookup(MAC1).port());
+        assertEquals(PortNumber.portNumber(4), ingress.lookup(MAC3).port());
+    }
+
+    private static PcapFile.Frame frame(long offset, MacAddress src, MacAddress dst) {
+        byte[] data = BridgeHarness.inbound(DEV1, PortNumber.portNumber(1), src, dst).parsed().serialize();
+        return new PcapFile.Frame(offset, data, data.length);
+    }
+}
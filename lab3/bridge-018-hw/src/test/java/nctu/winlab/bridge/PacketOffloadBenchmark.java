@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableMap;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.packet.InboundPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packet-in throughput of the two offload modes with 1, 8 and 64 simulated
+ * switches sending learned-destination hits round robin. Submission blocks
+ * when a queue is full, so the score is bounded by how fast the workers
+ * drain: sharded workers share a MAC table stripe and a queue between the
+ * switches that hash together, actors give every switch its own mailbox
+ * and never run one switch on two threads. Each iteration waits for the
+ * queues to empty, so queued work is charged to the iteration that made it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketOffloadBenchmark {
+
+    private static final MacAddress HOST1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress HOST2 = MacAddress.valueOf("00:00:00:00:00:02");
+
+    @Param({"1", "8", "64"})
+    public int switches;
+
+    @Param({"SHARDED", "ACTOR"})
+    public String mode;
+
+    private BridgeHarness harness;
+    private InboundPacket[] hits;
+    private int next;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        harness = new BridgeHarness(ImmutableMap.<String, String>builder()
+                .put(OsgiPropertyConstants.PACKET_WORKERS,
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))
+                .put(OsgiPropertyConstants.PACKET_WORKER_MODE, mode)
+                .put(OsgiPropertyConstants.PACKET_QUEUE_OVERFLOW, "BLOCK")
+                .put(OsgiPropertyConstants.PACKET_IN_RATE, "0")
+                .put(OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0")
+                .put(OsgiPropertyConstants.TREE_FLOODING, "false")
+                .build());
+        hits = new InboundPacket[switches];
+        for (int i = 0; i < switches; i++) {
+            DeviceId deviceId = DeviceId.deviceId(String.format("of:%016x", i + 1));
+            harness.process(harness.context(
+                    BridgeHarness.inbound(deviceId, PortNumber.portNumber(2), HOST2, HOST1)));
+            hits[i] = BridgeHarness.inbound(deviceId, PortNumber.portNumber(1), HOST1, HOST2);
+        }
+        drain();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        while (harness.component().packetQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.close();
+    }
+
+    @Benchmark
+    public void submit() {
+        InboundPacket hit = hits[next];
+        next = next + 1 == hits.length ? 0 : next + 1;
+        harness.process(harness.context(hit));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the bounded packet worker pool.
+ */
+public class PacketWorkersTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+
+    private PacketWorkers workers;
+
+    @After
+    public void tearDown() {
+        if (workers != null) {
+            workers.close();
+        }
+    }
+
+    @Test
+    public void keepsArrivalOrderPerDevice() throws InterruptedException {
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1000);
+        workers = new PacketWorkers(4, 1000, (context, receivedAt) -> {
+            handled.add(receivedAt);
+            done.countDown();
+        }, Executors.defaultThreadFactory());
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(workers.offer(DEV1, null, i));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (long) handled.get(i));
+        }
+    }
+
+    @Test
+    public void reportsFullQueue() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        workers = new PacketWorkers(1, 2, (context, receivedAt) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Executors.defaultThreadFactory());
+
+        assertTrue(workers.offer(DEV1, null, 0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(workers.offer(DEV1, null, 1));
+        assertTrue(workers.offer(DEV1, null, 2));
+        assertFalse(workers.offer(DEV1, null, 3));
+        assertEquals(2, workers.depth());
+        assertEquals(2, workers.maxDepth());
+
+        assertEquals(2, workers.close());
+        assertFalse(workers.offer(DEV1, null, 4));
+        assertFalse(workers.put(DEV1, null, 5));
+        release.countDown();
+    }
+
+    @Test
+    public void putWaitsForRoom() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        workers = new PacketWorkers(1, 1, (context, receivedAt) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }, Executors.defaultThreadFactory());
+
+        assertTrue(workers.put(DEV1, null, 0));
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        assertTrue(workers.put(DEV1, null, 1));
+        assertTrue(workers.put(DEV1, null, 2));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        releaser.join();
+    }
+}
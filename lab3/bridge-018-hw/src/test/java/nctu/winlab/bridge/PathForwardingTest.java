@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+import org.onlab.graph.ScalarWeight;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.DefaultPath;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.Path;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.instructions.Instructions;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.provider.ProviderId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of path and ECMP forwarding. Host H2 sits on s3 port 3 behind two
+ * equal-cost paths from s1: s1 port 3 to s2 port 1 then s2 port 2 to s3
+ * port 1, or s1 port 4 to s4 port 1 then s4 port 2 to s3 port 2.
+ */
+public class PathForwardingTest {
+
+    private static final ProviderId PID = new ProviderId("of", "nctu.winlab.bridge");
+    private static final DeviceId S1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId S2 = DeviceId.deviceId("of:0000000000000002");
+    private static final DeviceId S3 = DeviceId.deviceId("of:0000000000000003");
+    private static final DeviceId S4 = DeviceId.deviceId("of:0000000000000004");
+    private static final MacAddress H1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress H2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Path VIA_S2 = path(link(S1, 3, S2, 1), link(S2, 2, S3, 1));
+    private static final Path VIA_S4 = path(link(S1, 4, S4, 1), link(S4, 2, S3, 2));
+
+    private final List<BridgeHarness> harnesses = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        harnesses.forEach(BridgeHarness::close);
+    }
+
+    @Test
+    public void programsEveryHopOnTheFirstPacketIn() {
+        BridgeHarness harness = harness(OsgiPropertyConstants.PATH_FORWARDING, VIA_S2);
+        PacketContext context = harness.context(BridgeHarness.inbound(S1, PortNumber.portNumber(1), H1, H2));
+        harness.process(context);
+
+        assertEquals(3, harness.objectives());
+        assertEquals(Map.of(S1, PortNumber.portNumber(3), S2, PortNumber.portNumber(2), S3, PortNumber.portNumber(3)),
+                outputs(harness.rules()));
+        assertEquals(PortNumber.portNumber(3), output(context));
+        assertEquals(1, harness.component().packetInHits());
+    }
+
+    @Test
+    public void neverLeadsBackOutOfTheIngressPort() {
+        BridgeHarness harness = harness(OsgiPropertyConstants.PATH_FORWARDING, VIA_S4, VIA_S2);
+        PacketContext context = harness.context(BridgeHarness.inbound(S1, PortNumber.portNumber(4), H1, H2));
+        harness.process(context);
+        assertEquals(PortNumber.portNumber(3), outputs(harness.rules()).get(S1));
+        assertEquals(PortNumber.portNumber(3), output(context));
+
+        BridgeHarness looped = harness(OsgiPropertyConstants.PATH_FORWARDING, VIA_S4);
+        looped.process(looped.context(BridgeHarness.inbound(S1, PortNumber.portNumber(4), H1, H2)));
+        assertEquals(0, looped.objectives());
+        assertEquals(1, looped.component().floods());
+    }
+
+    @Test
+    public void sameFlowAlwaysTakesTheSamePath() {
+        BridgeHarness forward = harness(OsgiPropertyConstants.ECMP_FORWARDING, VIA_S2, VIA_S4);
+        BridgeHarness reverse = harness(OsgiPropertyConstants.ECMP_FORWARDING, VIA_S4, VIA_S2);
+        for (int srcPort = 1000; srcPort < 1016; srcPort++) {
+            PortNumber first = ecmpOutput(forward, srcPort);
+            assertEquals(first, ecmpOutput(forward, srcPort));
+            assertEquals(first, ecmpOutput(reverse, srcPort));
+        }
+    }
+
+    @Test
+    public void distinctFlowsSpreadOverThePaths() {
+        BridgeHarness harness = harness(OsgiPropertyConstants.ECMP_FORWARDING, VIA_S2, VIA_S4);
+        Map<PortNumber, Integer> counts = new HashMap<>();
+        for (int srcPort = 1000; srcPort < 1064; srcPort++) {
+            counts.merge(ecmpOutput(harness, srcPort), 1, Integer::sum);
+        }
+        assertEquals(2, counts.size());
+        assertTrue(counts.get(PortNumber.portNumber(3)) >= 16);
+        assertTrue(counts.get(PortNumber.portNumber(4)) >= 16);
+        assertEquals(64, harness.component().ecmpSelections());
+    }
+
+    // Activates a bridge with one forwarding property on and the given paths from s1 to s3.
+    private BridgeHarness harness(String mode, Path... paths) {
+        BridgeHarness harness = new BridgeHarness(ImmutableMap.of(mode, "true"));
+        harnesses.add(harness);
+        harness.trackRules();
+        harness.addHost(H2, new ConnectPoint(S3, PortNumber.portNumber(3)));
+        for (Path path : paths) {
+            harness.addPath(path);
+        }
+        return harness;
+    }
+
+    private static PortNumber ecmpOutput(BridgeHarness harness, int srcPort) {
+        PacketContext context = harness.context(BridgeHarness.udp(S1, PortNumber.portNumber(1), H1, H2, srcPort, 53));
+        harness.process(context);
+        return output(context);
+    }
+
+    private static PortNumber output(PacketContext context) {
+        return ((Instructions.OutputInstruction) context.treatmentBuilder().build().allInstructions().get(0)).port();
+    }
+
+    private static Map<DeviceId, PortNumber> outputs(List<FlowRule> rules) {
+        Map<DeviceId, PortNumber> outputs = new HashMap<>();
+        for (FlowRule rule : rules) {
+            outputs.put(rule.deviceId(),
+                    ((Instructions.OutputInstruction) rule.treatment().allInstructions().get(0)).port());
+        }
+        return outputs;
+    }
+
+    private static Path path(Link... links) {
+        return new DefaultPath(PID, List.of(links), new ScalarWeight(links.length));
+    }
+
+    private static Link link(DeviceId src, int srcPort, DeviceId dst, int dstPort) {
+        return DefaultLink.builder()
+                .providerId(PID)
+                .src(new ConnectPoint(src, PortNumber.portNumber(srcPort)))
+                .dst(new ConnectPoint(dst, PortNumber.portNumber(dstPort)))
+                .type(Link.Type.DIRECT)
+                .build();
+    }
+}
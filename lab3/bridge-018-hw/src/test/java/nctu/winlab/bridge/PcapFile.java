@@ -0,0 +1,173 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes classic libpcap capture files of Ethernet frames, as
+ * written by tcpdump and Wireshark with {@code -F pcap}. Both byte orders
+ * and both microsecond and nanosecond timestamps are understood; pcapng
+ * files must be converted first, e.g. with {@code editcap -F pcap}.
+ */
+final class PcapFile {
+
+    /** Link type of Ethernet captures. */
+    static final int LINKTYPE_ETHERNET = 1;
+
+    private static final int MAGIC_MICROS = 0xa1b2c3d4;
+    private static final int MAGIC_NANOS = 0xa1b23c4d;
+    private static final int HEADER_LENGTH = 24;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int SNAPLEN = 65535;
+
+    private PcapFile() {
+    }
+
+    /**
+     * One captured frame.
+     */
+    static final class Frame {
+        private final long timestamp;
+        private final byte[] data;
+        private final int originalLength;
+
+        /**
+         * Creates a frame.
+         *
+         * @param timestamp      capture time in nanoseconds since the epoch
+         * @param data           captured bytes
+         * @param originalLength length of the frame on the wire, at least
+         *                       the captured length
+         */
+        Frame(long timestamp, byte[] data, int originalLength) {
+            this.timestamp = timestamp;
+            this.data = data;
+            this.originalLength = Math.max(originalLength, data.length);
+        }
+
+        /**
+         * Returns the capture time.
+         *
+         * @return nanoseconds since the epoch
+         */
+        long timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the captured bytes.
+         *
+         * @return frame bytes, shorter than the frame when it was truncated
+         */
+        byte[] data() {
+            return data;
+        }
+
+        /**
+         * Returns whether the capture cut the frame short.
+         *
+         * @return true if fewer bytes were captured than were on the wire
+         */
+        boolean truncated() {
+            return data.length < originalLength;
+        }
+    }
+
+    /**
+     * Reads every frame of a capture file.
+     *
+     * @param file capture file
+     * @return frames in capture order
+     * @throws IOException if the file cannot be read, is not a pcap file or
+     *                     does not hold Ethernet frames
+     */
+    static List<Frame> read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException(file + " is too short for a pcap header");
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int magic = buffer.getInt(0);
+        if (magic != MAGIC_MICROS && magic != MAGIC_NANOS) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            magic = buffer.getInt(0);
+        }
+        if (magic != MAGIC_MICROS && magic != MAGIC_NANOS) {
+            throw new IOException(file + " is not a pcap file (pcapng must be converted first)");
+        }
+        long fractionNanos = magic == MAGIC_NANOS ? 1 : TimeUnit.MICROSECONDS.toNanos(1);
+        int linkType = buffer.getInt(20);
+        if (linkType != LINKTYPE_ETHERNET) {
+            throw new IOException(file + " has link type " + linkType + ", not Ethernet");
+        }
+        buffer.position(HEADER_LENGTH);
+
+        List<Frame> frames = new ArrayList<>();
+        while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+            long seconds = Integer.toUnsignedLong(buffer.getInt());
+            long fraction = Integer.toUnsignedLong(buffer.getInt());
+            int capturedLength = buffer.getInt();
+            int originalLength = buffer.getInt();
+            if (capturedLength < 0 || capturedLength > buffer.remaining()) {
+                throw new IOException(file + " ends inside frame " + (frames.size() + 1));
+            }
+            byte[] data = new byte[capturedLength];
+            buffer.get(data);
+            frames.add(new Frame(TimeUnit.SECONDS.toNanos(seconds) + fraction * fractionNanos, data,
+                    originalLength));
+        }
+        return frames;
+    }
+
+    /**
+     * Writes frames to a capture file with nanosecond timestamps.
+     *
+     * @param file   capture file, replaced if it exists
+     * @param frames frames in capture order
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, List<Frame> frames) throws IOException {
+        int length = HEADER_LENGTH;
+        for (Frame frame : frames) {
+            length += RECORD_HEADER_LENGTH + frame.data.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC_NANOS)
+                .putShort((short) 2)
+                .putShort((short) 4)
+                .putInt(0)
+                .putInt(0)
+                .putInt(SNAPLEN)
+                .putInt(LINKTYPE_ETHERNET);
+        long second = TimeUnit.SECONDS.toNanos(1);
+        for (Frame frame : frames) {
+            buffer.putInt((int) (frame.timestamp / second))
+                    .putInt((int) (frame.timestamp % second))
+                    .putInt(frame.data.length)
+                    .putInt(frame.originalLength)
+                    .put(frame.data);
+        }
+        Files.write(file, buffer.array());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the pcap capture file reader and writer.
+ */
+public class PcapFileTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("capture", ".pcap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        PcapFile.Frame full = new PcapFile.Frame(1_700_000_000_123_456_789L, new byte[]{1, 2, 3}, 3);
+        PcapFile.Frame cut = new PcapFile.Frame(1_700_000_001_000_000_000L, new byte[]{4, 5}, 1500);
+        PcapFile.write(file, List.of(full, cut));
+
+        List<PcapFile.Frame> frames = PcapFile.read(file);
+        assertEquals(2, frames.size());
+        assertEquals(full.timestamp(), frames.get(0).timestamp());
+        assertArrayEquals(full.data(), frames.get(0).data());
+        assertFalse(frames.get(0).truncated());
+        assertEquals(cut.timestamp(), frames.get(1).timestamp());
+        assertTrue(frames.get(1).truncated());
+    }
+
+    @Test
+    public void readsBigEndianMicrosecondCaptures() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 16 + 2);
+        buffer.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+                .putInt(65535).putInt(PcapFile.LINKTYPE_ETHERNET)
+                .putInt(10).putInt(250_000).putInt(2).putInt(2).put(new byte[]{7, 8});
+        Files.write(file, buffer.array());
+
+        List<PcapFile.Frame> frames = PcapFile.read(file);
+        assertEquals(1, frames.size());
+        assertEquals(10_250_000_000L, frames.get(0).timestamp());
+        assertArrayEquals(new byte[]{7, 8}, frames.get(0).data());
+    }
+
+    @Test
+    public void rejectsOtherFormats() throws IOException {
+        Files.write(file, new byte[]{0x0a, 0x0d, 0x0d, 0x0a, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        try {
+            PcapFile.read(file);
+            fail("pcapng accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("pcapng"));
+        }
+    }
+}
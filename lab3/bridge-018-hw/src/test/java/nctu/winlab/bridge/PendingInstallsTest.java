@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the pending flow install cache.
+ */
+public class PendingInstallsTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final FlowKey KEY = new FlowKey(DEV1, 0x0aL, 0x0bL);
+    private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void suppressesUntilConfirmed() {
+        PendingInstalls pending = new PendingInstalls(100);
+        assertTrue(pending.claim(KEY, 0));
+        assertFalse(pending.claim(KEY, 1));
+        assertFalse(pending.claim(new FlowKey(DEV1, 0x0aL, 0x0bL), 2));
+        assertTrue(pending.claim(new FlowKey(DEV1, 0x0bL, 0x0aL), 2));
+        assertEquals(2, pending.suppressed());
+
+        assertEquals(Long.valueOf(0), pending.confirm(KEY));
+        assertNull(pending.confirm(KEY));
+        assertTrue(pending.claim(KEY, 3));
+    }
+
+    @Test
+    public void retriesAfterTimeout() {
+        PendingInstalls pending = new PendingInstalls(100);
+        assertTrue(pending.claim(KEY, 0));
+        assertFalse(pending.claim(KEY, TIMEOUT - 1));
+        assertTrue(pending.claim(KEY, TIMEOUT));
+
+        pending.purge(2 * TIMEOUT);
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void releasesEveryClaimTowardsADestination() {
+        PendingInstalls pending = new PendingInstalls(100);
+        pending.claim(KEY, 0);
+        pending.claim(new FlowKey(DEV1, 0x0cL, 0x0bL), 0);
+        pending.claim(new FlowKey(DEV1, 0x0bL, 0x0aL), 0);
+
+        pending.release(DEV1, 0x0bL);
+        assertEquals(1, pending.size());
+        assertTrue(pending.claim(KEY, 1));
+    }
+
+    @Test
+    public void disabledNeverSuppresses() {
+        PendingInstalls pending = new PendingInstalls(0);
+        assertTrue(pending.claim(KEY, 0));
+        assertTrue(pending.claim(KEY, 0));
+        assertEquals(0, pending.size());
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.graph.ScalarWeight;
+import org.onlab.packet.ChassisId;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.VlanId;
+import org.onosproject.TestApplicationId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultHost;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.DefaultPath;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
+import org.onosproject.net.HostId;
+import org.onosproject.net.HostLocation;
+import org.onosproject.net.Link;
+import org.onosproject.net.Path;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.flow.instructions.Instructions;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
+import org.onosproject.net.host.HostServiceAdapter;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.net.topology.Topology;
+import org.onosproject.net.topology.TopologyListener;
+import org.onosproject.net.topology.TopologyServiceAdapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the proactive host rules on a line of three switches,
+ * s1 port 2 to s2 port 1 and s2 port 2 to s3 port 1.
+ */
+public class ProactiveHostsTest {
+
+    private static final ProviderId PID = new ProviderId("of", "nctu.winlab.bridge");
+    private static final DeviceId S1 = DeviceId.deviceId("of:0000000000000001");
+    private static final DeviceId S2 = DeviceId.deviceId("of:0000000000000002");
+    private static final DeviceId S3 = DeviceId.deviceId("of:0000000000000003");
+    private static final MacAddress MAC = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final int PRIORITY = 20;
+
+    private final List<FlowRuleOperations> applied = new CopyOnWriteArrayList<>();
+    private final List<Host> hosts = new CopyOnWriteArrayList<>();
+    private HostListener hostListener;
+    private TopologyListener topologyListener;
+    private ProactiveHosts proactive;
+
+    @Before
+    public void setUp() {
+        hosts.add(host(S3, 3));
+        proactive = new ProactiveHosts(new TestHostService(), new TestTopologyService(), new TestDeviceService(),
+                new RecordingFlowRuleService(), new TestApplicationId("nctu.winlab.bridge"), PRIORITY);
+    }
+
+    @After
+    public void tearDown() {
+        proactive.close();
+    }
+
+    @Test
+    public void programsEveryDeviceTowardsKnownHosts() {
+        assertEquals(1, applied.size());
+        Map<DeviceId, PortNumber> outputs = outputs(applied.get(0), FlowRuleOperation.Type.ADD);
+        assertEquals(PortNumber.portNumber(2), outputs.get(S1));
+        assertEquals(PortNumber.portNumber(2), outputs.get(S2));
+        assertEquals(PortNumber.portNumber(3), outputs.get(S3));
+        assertEquals(3, proactive.size());
+    }
+
+    @Test
+    public void moveReplacesOnlyChangedRules() {
+        hostListener.event(new HostEvent(HostEvent.Type.HOST_MOVED, host(S3, 4), host(S3, 3)));
+        assertEquals(2, applied.size());
+        Map<DeviceId, PortNumber> outputs = outputs(applied.get(1), FlowRuleOperation.Type.ADD);
+        assertEquals(Map.of(S3, PortNumber.portNumber(4)), outputs);
+        assertEquals(3, proactive.size());
+
+        hostListener.event(new HostEvent(HostEvent.Type.HOST_UPDATED, host(S3, 4)));
+        assertEquals(2, applied.size());
+    }
+
+    @Test
+    public void removalWithdrawsInOneBatch() {
+        hostListener.event(new HostEvent(HostEvent.Type.HOST_REMOVED, host(S3, 3)));
+        assertEquals(2, applied.size());
+        assertEquals(3, outputs(applied.get(1), FlowRuleOperation.Type.REMOVE).size());
+        assertEquals(0, proactive.size());
+        assertEquals(3, proactive.withdrawn());
+
+        proactive.close();
+        assertEquals(2, applied.size());
+        assertNull(hostListener);
+        assertNull(topologyListener);
+    }
+
+    @Test
+    public void topologyChangeDropsHostsThatLeft() {
+        hosts.clear();
+        topologyListener.event(null);
+        assertEquals(2, applied.size());
+        assertEquals(3, outputs(applied.get(1), FlowRuleOperation.Type.REMOVE).size());
+        assertEquals(0, proactive.size());
+    }
+
+    private static Host host(DeviceId deviceId, int port) {
+        return new DefaultHost(PID, HostId.hostId(MAC), MAC, VlanId.NONE,
+                new HostLocation(deviceId, PortNumber.portNumber(port), 0), Set.of());
+    }
+
+    private static Map<DeviceId, PortNumber> outputs(FlowRuleOperations ops, FlowRuleOperation.Type type) {
+        Map<DeviceId, PortNumber> outputs = new HashMap<>();
+        for (Set<FlowRuleOperation> stage : ops.stages()) {
+            for (FlowRuleOperation op : stage) {
+                if (op.type() == type) {
+                    FlowRule rule = op.rule();
+                    outputs.put(rule.deviceId(),
+                            ((Instructions.OutputInstruction) rule.treatment().allInstructions().get(0)).port());
+                }
+            }
+        }
+        return outputs;
+    }
+
+    private class TestHostService extends HostServiceAdapter {
+        @Override
+        public Iterable<Host> getHosts() {
+            return hosts;
+        }
+
+        @Override
+        public void addListener(HostListener listener) {
+            hostListener = listener;
+        }
+
+        @Override
+        public void removeListener(HostListener listener) {
+            hostListener = null;
+        }
+    }
+
+    private class TestTopologyService extends TopologyServiceAdapter {
+        @Override
+        public Set<Path> getPaths(Topology topology, DeviceId src, DeviceId dst) {
+            List<Link> links = new ArrayList<>();
+            if (src.equals(S1)) {
+                links.add(link(S1, 2, S2, 1));
+            }
+            links.add(link(S2, 2, S3, 1));
+            return dst.equals(S3) ? Set.of(new DefaultPath(PID, links, new ScalarWeight(links.size()))) : Set.of();
+        }
+
+        @Override
+        public void addListener(TopologyListener listener) {
+            topologyListener = listener;
+        }
+
+        @Override
+        public void removeListener(TopologyListener listener) {
+            topologyListener = null;
+        }
+
+        private Link link(DeviceId src, int srcPort, DeviceId dst, int dstPort) {
+            return DefaultLink.builder()
+                    .providerId(PID)
+                    .src(new ConnectPoint(src, PortNumber.portNumber(srcPort)))
+                    .dst(new ConnectPoint(dst, PortNumber.portNumber(dstPort)))
+                    .type(Link.Type.DIRECT)
+                    .build();
+        }
+    }
+
+    private static class TestDeviceService extends DeviceServiceAdapter {
+        @Override
+        public Iterable<Device> getAvailableDevices() {
+            List<Device> devices = new ArrayList<>();
+            for (DeviceId deviceId : List.of(S1, S2, S3)) {
+                devices.add(new DefaultDevice(PID, deviceId, Device.Type.SWITCH, "", "", "", "", new ChassisId()));
+            }
+            return devices;
+        }
+    }
+
+    private class RecordingFlowRuleService extends FlowRuleServiceAdapter {
+        @Override
+        public void apply(FlowRuleOperations ops) {
+            applied.add(ops);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.bridge;
+
+import com.google.common.collect.ImmutableMap;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one packet-in through the bridge packet processor.
+ * <p>
+ * Each case reports throughput and sampled latency percentiles. Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm} of each case
+ * against {@link #contextOnly()}, which only allocates the packet context
+ * the core would have created anyway. Rate limiting is off and every hit
+ * installs, so the full install path is measured. A miss floods through
+ * the switch with FLOOD, a tree flood emits along the broadcast tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactivePacketProcessorBenchmark {
+
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress HOST1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress HOST2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final MacAddress UNKNOWN = MacAddress.valueOf("00:00:00:00:00:ff");
+
+    private BridgeHarness harness;
+    private BridgeHarness treeHarness;
+    private InboundPacket hit;
+    private InboundPacket miss;
+
+    @Setup
+    public void setUp() {
+        harness = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.PACKET_IN_RATE, "0",
+                OsgiPropertyConstants.PENDING_INSTALL_TIMEOUT, "0",
+                OsgiPropertyConstants.TREE_FLOODING, "false"));
+        harness.process(harness.context(BridgeHarness.inbound(DEVICE, PortNumber.portNumber(2), HOST2, HOST1)));
+        hit = BridgeHarness.inbound(DEVICE, PortNumber.portNumber(1), HOST1, HOST2);
+        miss = BridgeHarness.inbound(DEVICE, PortNumber.portNumber(1), HOST1, UNKNOWN);
+        treeHarness = new BridgeHarness(ImmutableMap.of(
+                OsgiPropertyConstants.PACKET_IN_RATE, "0",
+                OsgiPropertyConstants.TREE_FLOODING, "true"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.close();
+        treeHarness.close();
+    }
+
+    @Benchmark
+    public PacketContext contextOnly() {
+        return harness.context(hit);
+    }
+
+    @Benchmark
+    public PacketContext hit() {
+        PacketContext context = harness.context(hit);
+        harness.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext miss() {
+        PacketContext context = harness.context(miss);
+        harness.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext treeFlood() {
+        PacketContext context = treeHarness.context(miss);
+        treeHarness.process(context);
+        return context;
+    }
+}
@@ -1,5 +1,5 @@
 #! /bin/sh
 
-cd ~/lab3/bridge-018-"$1"
+cd ~/lab3/bridge-018-hw
 mvn clean install -DskipTests
 onos-app localhost install! target/bridge-018-1.0-SNAPSHOT.oar
@@ -1,5 +1,5 @@
 #! /bin/sh
 
-cd ~/lab3/bridge-018-"$1"
+cd ~/lab3/bridge-018-hw
 onos-app localhost deactivate nctu.winlab.bridge
 onos-app localhost uninstall nctu.winlab.bridge
\ No newline at end of file
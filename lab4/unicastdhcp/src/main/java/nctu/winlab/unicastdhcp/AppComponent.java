@@ -31,6 +31,8 @@ import org.onosproject.net.packet.PacketService;
 import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
 import org.onosproject.net.ElementId;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.ConnectPoint;
@@ -45,11 +47,13 @@ import org.onlab.packet.TpPort;
 import org.onosproject.net.packet.PacketPriority;
 import org.onosproject.net.config.NetworkConfigEvent;
 import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_ADDED;
+import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_REMOVED;
 import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_UPDATED;
 import static org.onosproject.net.config.basics.SubjectFactories.APP_SUBJECT_FACTORY;
 import org.onosproject.net.config.ConfigFactory;
 import org.onosproject.net.config.NetworkConfigRegistry;
 import org.onosproject.net.config.NetworkConfigListener;
+import java.nio.ByteBuffer;
 
 /**
  * Skeletal ONOS application component.
@@ -79,6 +83,9 @@ public class AppComponent {
 
     private FilteredConnectPoint ingressPoint, egressPoint;
 
+    /** Answers DHCP itself when the config has a pool, instead of relaying. */
+    private volatile DhcpServer server;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private IntentService intentService;
 
@@ -119,6 +126,16 @@ public class AppComponent {
         log.info("Stopped");
     }
 
+    /**
+     * Sets the intent service, for tests that run the component without
+     * the OSGi runtime.
+     *
+     * @param intentService intent service
+     */
+    void setIntentService(IntentService intentService) {
+        this.intentService = intentService;
+    }
+
     /**
      * Request packet in via packet service.
      */
@@ -157,10 +174,23 @@ public class AppComponent {
                     log.info("config is Null!");
                     return;
                 }
-                // get egress point
+                // answer from the pool, or get egress point
+                if (config.serverMode()) {
+                    server = new DhcpServer(config);
+                    log.info("Serving DHCP from pool `{}` as `{}`", config.pool(), config.serverIp());
+                } else {
+                    server = null;
+                }
                 egressPoint = config.serverLocation();
-                log.info("DHCP server is connected to `{}`, port `{}`", egressPoint.connectPoint().deviceId(),
-                    egressPoint.connectPoint().port());
+                if (egressPoint != null) {
+                    log.info("DHCP server is connected to `{}`, port `{}`", egressPoint.connectPoint().deviceId(),
+                        egressPoint.connectPoint().port());
+                }
+            } else if (event.type() == CONFIG_REMOVED && event.configClass().equals(DhcpConfig.class)) {
+                // neither serve from the old pool nor relay to the old server
+                server = null;
+                egressPoint = null;
+                log.info("DHCP config removed");
             }
         }
     }
@@ -191,6 +221,12 @@ public class AppComponent {
                 return;
             }
 
+            DhcpServer dhcpServer = server;
+            if (dhcpServer != null) {
+                serve(context, dhcpServer);
+                return;
+            }
+
             // get ingress point
             ElementId switchId = pkt.receivedFrom().deviceId();
             PortNumber switchPort = context.inPacket().receivedFrom().port();
@@ -250,5 +286,42 @@ public class AppComponent {
                     ingressPoint.connectPoint().port());
 
         }
+
+        /* Answer the client out of the port it asked on; nothing goes to a server. */
+        private void serve(PacketContext context, DhcpServer dhcpServer) {
+            InboundPacket pkt = context.inPacket();
+            if (!DhcpServer.isClientMessage(pkt.parsed())) {
+                // leave everything but DHCP to the forwarding apps
+                return;
+            }
+            Ethernet reply = dhcpServer.handle(pkt.parsed(), System.nanoTime());
+            context.block();
+            if (reply == null) {
+                return;
+            }
+            packetService.emit(new DefaultOutboundPacket(pkt.receivedFrom().deviceId(),
+                    DefaultTrafficTreatment.builder().setOutput(pkt.receivedFrom().port()).build(),
+                    ByteBuffer.wrap(reply.serialize())));
+        }
+    }
+
+    /**
+     * Returns the number of clients holding an address from the pool.
+     *
+     * @return lease count, 0 unless serving DHCP from a pool
+     */
+    public int dhcpLeases() {
+        DhcpServer dhcpServer = server;
+        return dhcpServer == null ? 0 : dhcpServer.leases();
+    }
+
+    /**
+     * Returns the number of addresses of the pool left to offer.
+     *
+     * @return free address count, 0 unless serving DHCP from a pool
+     */
+    public int dhcpAvailable() {
+        DhcpServer dhcpServer = server;
+        return dhcpServer == null ? 0 : dhcpServer.available();
     }
 }
@@ -15,6 +15,11 @@
  */
 package nctu.winlab.unicastdhcp;
 
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.net.config.Config;
 import org.onosproject.net.FilteredConnectPoint;
@@ -27,13 +32,57 @@ public class DhcpConfig extends Config<ApplicationId> {
 
     public static final String NAME = "serverLocation";
 
+    /** Fields of the server mode, where the app answers DHCP itself. */
+    public static final String SERVER_IP = "serverIp";
+    public static final String SERVER_MAC = "serverMac";
+    public static final String POOL = "pool";
+    public static final String ROUTER = "router";
+    public static final String DNS = "dns";
+    public static final String LEASE_TIME = "leaseTime";
+
+    public static final String SERVER_MAC_DEFAULT = "02:00:00:00:00:67";
+    public static final int LEASE_TIME_DEFAULT = 3600;
+
+    /** Pool prefix lengths served; a /16 pool keeps 512 KB of allocator state. */
+    public static final int MIN_POOL_PREFIX = 16;
+    public static final int MAX_POOL_PREFIX = 30;
+
     @Override
     public boolean isValid() {
-        return hasOnlyFields(NAME);
+        if (!hasOnlyFields(NAME, SERVER_IP, SERVER_MAC, POOL, ROUTER, DNS, LEASE_TIME)) {
+            return false;
+        }
+        if (!serverMode()) {
+            return hasField(NAME);
+        }
+        if (!(isIpAddress(SERVER_IP, FieldPresence.MANDATORY)
+                && isIpPrefix(POOL, FieldPresence.MANDATORY)
+                && isMacAddress(SERVER_MAC, FieldPresence.OPTIONAL)
+                && isIpAddress(ROUTER, FieldPresence.OPTIONAL)
+                && isIpAddress(DNS, FieldPresence.OPTIONAL)
+                && isIntegralNumber(LEASE_TIME, FieldPresence.OPTIONAL, 60, Integer.MAX_VALUE))) {
+            return false;
+        }
+        IpPrefix pool = IpPrefix.valueOf(get(POOL, null));
+        return pool.isIp4() && pool.prefixLength() >= MIN_POOL_PREFIX && pool.prefixLength() <= MAX_POOL_PREFIX
+                && pool.contains(IpAddress.valueOf(get(SERVER_IP, null)));
+    }
+
+    /**
+     * Returns whether the app answers DHCP itself instead of relaying to a
+     * server.
+     *
+     * @return true if a server address and a pool are configured
+     */
+    public boolean serverMode() {
+        return hasField(SERVER_IP) && hasField(POOL);
     }
 
     public FilteredConnectPoint serverLocation() {
         String dhcpServerLocation = get(NAME, null);
+        if (dhcpServerLocation == null) {
+            return null;
+        }
         String[] locationTuple = dhcpServerLocation.split("/");
         ElementId switchId = DeviceId.deviceId(locationTuple[0]);
         PortNumber switchPort = PortNumber.fromString(locationTuple[1]);
@@ -41,4 +90,30 @@ public class DhcpConfig extends Config<ApplicationId> {
         FilteredConnectPoint filteredConnectPoint = new FilteredConnectPoint(connectPoint);
         return filteredConnectPoint;
     }
+
+    public Ip4Address serverIp() {
+        return Ip4Address.valueOf(get(SERVER_IP, null));
+    }
+
+    public MacAddress serverMac() {
+        return MacAddress.valueOf(get(SERVER_MAC, SERVER_MAC_DEFAULT));
+    }
+
+    public Ip4Prefix pool() {
+        return Ip4Prefix.valueOf(get(POOL, null));
+    }
+
+    public Ip4Address router() {
+        String router = get(ROUTER, null);
+        return router == null ? null : Ip4Address.valueOf(router);
+    }
+
+    public Ip4Address dns() {
+        String dns = get(DNS, null);
+        return dns == null ? null : Ip4Address.valueOf(dns);
+    }
+
+    public int leaseTime() {
+        return get(LEASE_TIME, LEASE_TIME_DEFAULT);
+    }
 }
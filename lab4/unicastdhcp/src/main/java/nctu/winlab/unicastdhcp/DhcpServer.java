@@ -0,0 +1,394 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import org.onlab.packet.DHCP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.UDP;
+import org.onlab.packet.dhcp.DhcpOption;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DHCP server answering DISCOVER, REQUEST, DECLINE and RELEASE from one
+ * address pool, so clients get an address without a server hop or intent
+ * compilation.
+ * <p>
+ * Leases are kept per client MAC address; free addresses are tracked by a
+ * {@link LeaseAllocator}. An offered address is held for
+ * {@link #OFFER_HOLD_SECONDS} until the client requests it. An address a
+ * client declines, because another host answers on it, is quarantined for
+ * {@link #DECLINE_HOLD_SECONDS}. Expired leases and quarantines are
+ * reclaimed when the pool runs dry, at most once a second, so clients of an
+ * exhausted pool cannot make every DISCOVER scan all leases.
+ */
+final class DhcpServer {
+
+    /** Seconds an offered address stays reserved for its client. */
+    static final int OFFER_HOLD_SECONDS = 60;
+
+    /** Seconds a declined address is kept out of the pool. */
+    static final int DECLINE_HOLD_SECONDS = 300;
+
+    private static final long RECLAIM_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final short BROADCAST_FLAG = (short) 0x8000;
+    private static final byte TTL = 64;
+
+    private final Ip4Address serverIp;
+    private final MacAddress serverMac;
+    private final Ip4Prefix pool;
+    private final Ip4Address router;
+    private final Ip4Address dns;
+    private final int leaseTime;
+    private final LeaseAllocator allocator;
+    private final ConcurrentMap<MacAddress, Lease> leases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Long> quarantine = new ConcurrentHashMap<>();
+
+    private final LongAdder offers = new LongAdder();
+    private final LongAdder acks = new LongAdder();
+    private final LongAdder naks = new LongAdder();
+    private final LongAdder declines = new LongAdder();
+
+    private volatile long nextReclaim;
+
+    /**
+     * Creates a server for the pool of a server mode configuration.
+     *
+     * @param config valid configuration in server mode
+     */
+    DhcpServer(DhcpConfig config) {
+        this(config.serverIp(), config.serverMac(), config.pool(), config.router(), config.dns(),
+                config.leaseTime());
+    }
+
+    /**
+     * Creates a server. The network and broadcast addresses of the pool and
+     * the addresses of the server, router and DNS server are never leased.
+     *
+     * @param serverIp  server address, inside the pool
+     * @param serverMac server MAC address replies are sent from
+     * @param pool      pool of leased addresses
+     * @param router    default gateway handed to clients, or null
+     * @param dns       DNS server handed to clients, or null
+     * @param leaseTime lease time in seconds
+     */
+    DhcpServer(Ip4Address serverIp, MacAddress serverMac, Ip4Prefix pool, Ip4Address router, Ip4Address dns,
+               int leaseTime) {
+        this.serverIp = serverIp;
+        this.serverMac = serverMac;
+        this.pool = pool;
+        this.router = router;
+        this.dns = dns;
+        this.leaseTime = leaseTime;
+        int hosts = (1 << (Ip4Address.BIT_LENGTH - pool.prefixLength())) - 2;
+        this.allocator = new LeaseAllocator(pool.address().toInt() + 1, hosts);
+        allocator.claim(serverIp.toInt());
+        if (router != null) {
+            allocator.claim(router.toInt());
+        }
+        if (dns != null) {
+            allocator.claim(dns.toInt());
+        }
+    }
+
+    /**
+     * Tells whether a frame carries a DHCP message from a client, that is a
+     * DHCP payload sent from the client port to the server port.
+     *
+     * @param frame received frame
+     * @return true if the frame is a DHCP client message
+     */
+    static boolean isClientMessage(Ethernet frame) {
+        if (!(frame.getPayload() instanceof IPv4) || !(frame.getPayload().getPayload() instanceof UDP)) {
+            return false;
+        }
+        UDP udp = (UDP) frame.getPayload().getPayload();
+        return udp.getSourcePort() == UDP.DHCP_CLIENT_PORT && udp.getDestinationPort() == UDP.DHCP_SERVER_PORT
+                && udp.getPayload() instanceof DHCP;
+    }
+
+    /**
+     * Handles a DHCP message from a client.
+     *
+     * @param frame frame carrying the message
+     * @param now   current {@code System.nanoTime()}
+     * @return reply frame to send back out of the ingress port, or null if
+     * the message needs no reply
+     */
+    Ethernet handle(Ethernet frame, long now) {
+        if (!isClientMessage(frame)) {
+            return null;
+        }
+        DHCP dhcp = (DHCP) frame.getPayload().getPayload().getPayload();
+        DHCP.MsgType type = dhcp.getPacketType();
+        if (dhcp.getOpCode() != DHCP.OPCODE_REQUEST || type == null) {
+            return null;
+        }
+        MacAddress client = MacAddress.valueOf(dhcp.getClientHardwareAddress());
+        switch (type) {
+            case DHCPDISCOVER:
+                return discover(frame, dhcp, client, now);
+            case DHCPREQUEST:
+                return request(frame, dhcp, client, now);
+            case DHCPDECLINE:
+                decline(dhcp, client, now);
+                return null;
+            case DHCPRELEASE:
+                Lease lease = leases.get(client);
+                if (lease != null && lease.address == dhcp.getClientIPAddress() && leases.remove(client, lease)) {
+                    allocator.release(lease.address);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private Ethernet discover(Ethernet frame, DHCP dhcp, MacAddress client, long now) {
+        int requested = intOption(dhcp, DHCP.DHCPOptionCode.OptionCode_RequestedIP);
+        Lease lease = offer(client, requested, now);
+        if (lease == null && now - nextReclaim >= 0) {
+            nextReclaim = now + RECLAIM_INTERVAL;
+            reclaimExpired(now);
+            lease = offer(client, requested, now);
+        }
+        if (lease == null) {
+            return null;
+        }
+        offers.increment();
+        return reply(frame, dhcp, DHCP.MsgType.DHCPOFFER, lease.address);
+    }
+
+    private Lease offer(MacAddress client, int requested, long now) {
+        long hold = now + TimeUnit.SECONDS.toNanos(OFFER_HOLD_SECONDS);
+        return leases.compute(client, (mac, lease) -> {
+            if (lease != null) {
+                return lease.bound ? lease : new Lease(lease.address, hold, false);
+            }
+            int address = requested != 0 && allocator.claim(requested) ? requested : allocator.allocate();
+            return address == 0 ? null : new Lease(address, hold, false);
+        });
+    }
+
+    private Ethernet request(Ethernet frame, DHCP dhcp, MacAddress client, long now) {
+        int server = intOption(dhcp, DHCP.DHCPOptionCode.OptionCode_DHCPServerIp);
+        if (server != 0 && server != serverIp.toInt()) {
+            // the client took an offer from another server
+            Lease lease = leases.get(client);
+            if (lease != null && !lease.bound && leases.remove(client, lease)) {
+                allocator.release(lease.address);
+            }
+            return null;
+        }
+        int requested = intOption(dhcp, DHCP.DHCPOptionCode.OptionCode_RequestedIP);
+        if (requested == 0) {
+            requested = dhcp.getClientIPAddress();
+        }
+        int address = requested;
+        long expiry = now + TimeUnit.SECONDS.toNanos(leaseTime);
+        Lease bound = leases.compute(client, (mac, lease) -> {
+            if (lease != null) {
+                return address == 0 || address == lease.address ? new Lease(lease.address, expiry, true) : lease;
+            }
+            // a rebooting client asking for an address it held before
+            return address != 0 && allocator.claim(address) ? new Lease(address, expiry, true) : null;
+        });
+        if (bound != null && bound.bound && (address == 0 || address == bound.address)) {
+            acks.increment();
+            return reply(frame, dhcp, DHCP.MsgType.DHCPACK, bound.address);
+        }
+        if (address != 0 && allocator.contains(address)) {
+            naks.increment();
+            return reply(frame, dhcp, DHCP.MsgType.DHCPNAK, 0);
+        }
+        return null;
+    }
+
+    // Someone else answers on the address; keep it out of the pool for a while.
+    private void decline(DHCP dhcp, MacAddress client, long now) {
+        int address = intOption(dhcp, DHCP.DHCPOptionCode.OptionCode_RequestedIP);
+        Lease lease = leases.get(client);
+        if (lease == null || lease.address != address || !leases.remove(client, lease)) {
+            return;
+        }
+        quarantine.put(address, now + TimeUnit.SECONDS.toNanos(DECLINE_HOLD_SECONDS));
+        declines.increment();
+    }
+
+    private void reclaimExpired(long now) {
+        leases.forEach((client, lease) -> {
+            if (now - lease.expiresAt >= 0 && leases.remove(client, lease)) {
+                allocator.release(lease.address);
+            }
+        });
+        quarantine.forEach((address, until) -> {
+            if (now - until >= 0 && quarantine.remove(address, until)) {
+                allocator.release(address);
+            }
+        });
+    }
+
+    private Ethernet reply(Ethernet frame, DHCP request, DHCP.MsgType type, int address) {
+        List<DhcpOption> options = new ArrayList<>();
+        options.add(option(DHCP.DHCPOptionCode.OptionCode_MessageType, new byte[]{type.getValue()}));
+        options.add(option(DHCP.DHCPOptionCode.OptionCode_DHCPServerIp, serverIp.toOctets()));
+        if (type != DHCP.MsgType.DHCPNAK) {
+            options.add(option(DHCP.DHCPOptionCode.OptionCode_LeaseTime,
+                    ByteBuffer.allocate(Integer.BYTES).putInt(leaseTime).array()));
+            options.add(option(DHCP.DHCPOptionCode.OptionCode_SubnetMask,
+                    Ip4Address.makeMaskPrefix(pool.prefixLength()).toOctets()));
+            if (router != null) {
+                options.add(option(DHCP.DHCPOptionCode.OptionCode_RouterAddress, router.toOctets()));
+            }
+            if (dns != null) {
+                options.add(option(DHCP.DHCPOptionCode.OptionCode_DomainServer, dns.toOctets()));
+            }
+        }
+        DhcpOption end = new DhcpOption();
+        end.setCode(DHCP.DHCPOptionCode.OptionCode_END.getValue());
+        options.add(end);
+
+        DHCP dhcp = new DHCP()
+                .setOpCode(DHCP.OPCODE_REPLY)
+                .setHardwareType(DHCP.HWTYPE_ETHERNET)
+                .setHardwareAddressLength((byte) MacAddress.MAC_ADDRESS_LENGTH)
+                .setTransactionId(request.getTransactionId())
+                .setFlags(request.getFlags())
+                .setYourIPAddress(address)
+                .setServerIPAddress(serverIp.toInt())
+                .setGatewayIPAddress(request.getGatewayIPAddress())
+                .setClientHardwareAddress(request.getClientHardwareAddress())
+                .setOptions(options);
+        UDP udp = new UDP();
+        udp.setSourcePort(UDP.DHCP_SERVER_PORT);
+        udp.setDestinationPort(UDP.DHCP_CLIENT_PORT);
+        udp.setPayload(dhcp);
+        boolean broadcast = address == 0 || (request.getFlags() & BROADCAST_FLAG) != 0;
+        IPv4 ip = new IPv4()
+                .setSourceAddress(serverIp.toInt())
+                .setDestinationAddress(broadcast ? Ip4Address.valueOf("255.255.255.255").toInt() : address)
+                .setTtl(TTL)
+                .setProtocol(IPv4.PROTOCOL_UDP);
+        ip.setPayload(udp);
+        Ethernet reply = new Ethernet();
+        reply.setSourceMACAddress(serverMac)
+                .setDestinationMACAddress(broadcast ? MacAddress.BROADCAST : frame.getSourceMAC())
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setVlanID(frame.getVlanID())
+                .setPayload(ip);
+        return reply;
+    }
+
+    private static DhcpOption option(DHCP.DHCPOptionCode code, byte[] data) {
+        DhcpOption option = new DhcpOption();
+        option.setCode(code.getValue());
+        option.setLength((byte) data.length);
+        option.setData(data);
+        return option;
+    }
+
+    private static int intOption(DHCP dhcp, DHCP.DHCPOptionCode code) {
+        DhcpOption option = dhcp.getOption(code);
+        byte[] data = option == null ? null : option.getData();
+        return data == null || data.length != Integer.BYTES ? 0 : ByteBuffer.wrap(data).getInt();
+    }
+
+    /**
+     * Returns the number of clients holding an offered or bound address.
+     *
+     * @return lease count
+     */
+    int leases() {
+        return leases.size();
+    }
+
+    /**
+     * Returns the number of declined addresses still kept out of the pool.
+     *
+     * @return quarantined address count
+     */
+    int quarantined() {
+        return quarantine.size();
+    }
+
+    /**
+     * Returns the number of addresses left to offer.
+     *
+     * @return free address count
+     */
+    int available() {
+        return allocator.available();
+    }
+
+    /**
+     * Returns the number of offers sent.
+     *
+     * @return offer count
+     */
+    long offers() {
+        return offers.sum();
+    }
+
+    /**
+     * Returns the number of acknowledgements sent.
+     *
+     * @return ack count
+     */
+    long acks() {
+        return acks.sum();
+    }
+
+    /**
+     * Returns the number of requests refused.
+     *
+     * @return nak count
+     */
+    long naks() {
+        return naks.sum();
+    }
+
+    /**
+     * Returns the number of declines that quarantined a leased address.
+     *
+     * @return decline count
+     */
+    long declines() {
+        return declines.sum();
+    }
+
+    // Address leased or offered to one client.
+    private static final class Lease {
+        private final int address;
+        private final long expiresAt;
+        private final boolean bound;
+
+        private Lease(int address, long expiresAt, boolean bound) {
+            this.address = address;
+            this.expiresAt = expiresAt;
+            this.bound = bound;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Free addresses of a contiguous address pool.
+ * <p>
+ * Free offsets are kept on a stack, and every offset remembers its position
+ * on the stack, or -1 while it is leased. Allocating pops the stack, and
+ * releasing pushes onto it. Claiming a specific address swaps it with the
+ * top of the stack first. All three take constant time, so a /16 pool costs
+ * two int arrays and no per-lease objects. Released addresses are handed
+ * out again last in, first out.
+ */
+final class LeaseAllocator {
+
+    private final int base;
+    private final int[] free;
+    private final int[] position;
+    private int freeCount;
+
+    /**
+     * Creates an allocator with every address of the pool free.
+     *
+     * @param base first address of the pool
+     * @param size number of addresses in the pool
+     */
+    LeaseAllocator(int base, int size) {
+        checkArgument(size > 0, "Pool must not be empty");
+        this.base = base;
+        this.free = new int[size];
+        this.position = new int[size];
+        clear();
+    }
+
+    /**
+     * Leases any free address.
+     *
+     * @return leased address, or 0 if the pool is exhausted
+     */
+    synchronized int allocate() {
+        if (freeCount == 0) {
+            return 0;
+        }
+        int offset = free[--freeCount];
+        position[offset] = -1;
+        return base + offset;
+    }
+
+    /**
+     * Leases the given address if it belongs to the pool and is free.
+     *
+     * @param address address to lease
+     * @return true if the address was free and is now leased
+     */
+    synchronized boolean claim(int address) {
+        int offset = offset(address);
+        if (offset < 0 || position[offset] < 0) {
+            return false;
+        }
+        int at = position[offset];
+        int top = free[--freeCount];
+        free[at] = top;
+        position[top] = at;
+        position[offset] = -1;
+        return true;
+    }
+
+    /**
+     * Returns a leased address to the pool.
+     *
+     * @param address leased address
+     * @return true if the address was leased and is now free
+     */
+    synchronized boolean release(int address) {
+        int offset = offset(address);
+        if (offset < 0 || position[offset] >= 0) {
+            return false;
+        }
+        position[offset] = freeCount;
+        free[freeCount++] = offset;
+        return true;
+    }
+
+    /**
+     * Returns whether an address of the pool is leased.
+     *
+     * @param address address
+     * @return true if the address belongs to the pool and is leased
+     */
+    synchronized boolean isLeased(int address) {
+        int offset = offset(address);
+        return offset >= 0 && position[offset] < 0;
+    }
+
+    /**
+     * Returns whether an address belongs to the pool.
+     *
+     * @param address address
+     * @return true if the address lies in the pool
+     */
+    boolean contains(int address) {
+        return offset(address) >= 0;
+    }
+
+    /**
+     * Returns the number of free addresses.
+     *
+     * @return free address count
+     */
+    synchronized int available() {
+        return freeCount;
+    }
+
+    /**
+     * Returns the number of addresses in the pool.
+     *
+     * @return pool size
+     */
+    int size() {
+        return free.length;
+    }
+
+    /**
+     * Frees every address of the pool.
+     */
+    synchronized void clear() {
+        int size = free.length;
+        // lowest addresses on top, so they are handed out first
+        for (int i = 0; i < size; i++) {
+            free[i] = size - 1 - i;
+            position[size - 1 - i] = i;
+        }
+        freeCount = size;
+    }
+
+    private int offset(int address) {
+        long offset = Integer.toUnsignedLong(address) - Integer.toUnsignedLong(base);
+        return offset >= 0 && offset < free.length ? (int) offset : -1;
+    }
+}
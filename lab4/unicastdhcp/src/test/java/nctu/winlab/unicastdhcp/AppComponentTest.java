@@ -18,30 +18,97 @@ package nctu.winlab.unicastdhcp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-// import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onlab.packet.DHCP;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.packet.PacketContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Set of tests of the ONOS application component.
  */
 public class AppComponentTest {
 
-    private AppComponent component;
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress CLIENT = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress OTHER = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Ip4Address SERVER = Ip4Address.valueOf("10.0.0.254");
+
+    private DhcpHarness harness;
 
     @Before
     public void setUp() {
-        component = new AppComponent();
-        // component.cfgService = new ComponentConfigAdapter();
-        component.activate();
+        harness = new DhcpHarness();
     }
 
     @After
     public void tearDown() {
-        component.deactivate();
+        harness.close();
     }
 
     @Test
     public void basics() {
+        harness.process(harness.context(DhcpHarness.discover(DEV1, PortNumber.portNumber(1), CLIENT)));
+        assertEquals(0, harness.intents());
+
+        harness.serverLocation("of:0000000000000002/3");
+        harness.process(harness.context(DhcpHarness.discover(DEV1, PortNumber.portNumber(1), CLIENT)));
+        assertEquals(2, harness.intents());
+    }
+
+    @Test
+    public void serverModeAnswersFromThePool() {
+        harness.serverMode(SERVER.toString(), "10.0.0.0/24", "10.0.0.1");
+
+        harness.process(harness.context(DhcpHarness.discover(DEV1, PortNumber.portNumber(1), CLIENT)));
+        DHCP offer = harness.lastEmitted();
+        assertEquals(DHCP.MsgType.DHCPOFFER, offer.getPacketType());
+        Ip4Address offered = Ip4Address.valueOf(offer.getYourIPAddress());
+        assertTrue(Ip4Prefix.valueOf("10.0.0.0/24").contains(offered));
+        assertNotEquals(Ip4Address.valueOf("10.0.0.1"), offered);
+        assertNotEquals(SERVER, offered);
+
+        harness.process(harness.context(DhcpHarness.request(DEV1, PortNumber.portNumber(1), CLIENT, offered, SERVER)));
+        DHCP ack = harness.lastEmitted();
+        assertEquals(DHCP.MsgType.DHCPACK, ack.getPacketType());
+        assertEquals(offered.toInt(), ack.getYourIPAddress());
+        assertEquals(1, harness.component().dhcpLeases());
+        assertEquals(251, harness.component().dhcpAvailable());
+
+        harness.process(harness.context(DhcpHarness.request(DEV1, PortNumber.portNumber(2), OTHER, SERVER, null)));
+        assertEquals(DHCP.MsgType.DHCPNAK, harness.lastEmitted().getPacketType());
+        assertEquals(3, harness.emitted());
+        assertEquals(0, harness.intents());
+    }
+
+    @Test
+    public void serverModeLeavesOtherTrafficUnhandled() {
+        harness.serverMode(SERVER.toString(), "10.0.0.0/24", "10.0.0.1");
+
+        PacketContext context = harness.context(DhcpHarness.ping(DEV1, PortNumber.portNumber(1), CLIENT, SERVER));
+        harness.process(context);
+        assertFalse(context.isHandled());
+        assertEquals(0, harness.emitted());
+    }
+
+    @Test
+    public void removedConfigStopsServing() {
+        harness.serverMode(SERVER.toString(), "10.0.0.0/24", "10.0.0.1");
+        harness.process(harness.context(DhcpHarness.discover(DEV1, PortNumber.portNumber(1), CLIENT)));
+        assertEquals(1, harness.emitted());
 
+        harness.removeConfig();
+        harness.process(harness.context(DhcpHarness.discover(DEV1, PortNumber.portNumber(1), OTHER)));
+        assertEquals(1, harness.emitted());
+        assertEquals(0, harness.component().dhcpLeases());
+        assertEquals(0, harness.intents());
     }
 
 }
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onlab.packet.DHCP;
+import org.onlab.packet.DeserializationException;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.ICMP;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.UDP;
+import org.onlab.packet.dhcp.DhcpOption;
+import org.onosproject.TestApplicationId;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.config.Config;
+import org.onosproject.net.config.NetworkConfigEvent;
+import org.onosproject.net.config.NetworkConfigListener;
+import org.onosproject.net.config.NetworkConfigRegistryAdapter;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentServiceAdapter;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.DefaultPacketContext;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.packet.PacketServiceAdapter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the unicast DHCP component against in-memory service adapters, so
+ * tests and benchmarks can push packet-ins straight into its packet
+ * processor.
+ */
+final class DhcpHarness implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final AppComponent component = new AppComponent();
+    private final LongAdder intents = new LongAdder();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    private volatile PacketProcessor processor;
+    private volatile NetworkConfigListener listener;
+    private volatile DhcpConfig config;
+    private volatile OutboundPacket lastEmitted;
+
+    /**
+     * Activates the component without a DHCP server location.
+     */
+    DhcpHarness() {
+        component.cfgService = new TestNetworkConfigRegistry();
+        component.coreService = new TestCoreService();
+        component.packetService = new TestPacketService();
+        component.setIntentService(new TestIntentService());
+        component.activate();
+    }
+
+    /**
+     * Returns the component under test.
+     *
+     * @return unicast DHCP component
+     */
+    AppComponent component() {
+        return component;
+    }
+
+    /**
+     * Pushes a DHCP server location through the network configuration
+     * listener, as if it had been uploaded by an operator.
+     *
+     * @param location server location as {@code device/port}
+     */
+    void serverLocation(String location) {
+        configure(MAPPER.createObjectNode().put(DhcpConfig.NAME, location));
+    }
+
+    /**
+     * Pushes a server mode configuration through the network configuration
+     * listener, so the component answers DHCP from the given pool.
+     *
+     * @param serverIp server address
+     * @param pool     address pool prefix
+     * @param router   default gateway handed to clients
+     */
+    void serverMode(String serverIp, String pool, String router) {
+        configure(MAPPER.createObjectNode()
+                .put(DhcpConfig.SERVER_IP, serverIp)
+                .put(DhcpConfig.POOL, pool)
+                .put(DhcpConfig.ROUTER, router));
+    }
+
+    /**
+     * Removes the configuration through the network configuration listener,
+     * as if an operator had deleted it.
+     */
+    void removeConfig() {
+        config = null;
+        listener.event(new NetworkConfigEvent(NetworkConfigEvent.Type.CONFIG_REMOVED,
+                new TestApplicationId("nctu.winlab.unicastdhcp"), DhcpConfig.class));
+    }
+
+    private void configure(ObjectNode node) {
+        ApplicationId appId = new TestApplicationId("nctu.winlab.unicastdhcp");
+        DhcpConfig dhcpConfig = new DhcpConfig();
+        dhcpConfig.init(appId, "UnicastDhcpConfig", node, MAPPER, null);
+        config = dhcpConfig;
+        listener.event(new NetworkConfigEvent(NetworkConfigEvent.Type.CONFIG_ADDED, appId, DhcpConfig.class));
+    }
+
+    /**
+     * Builds a DHCP DISCOVER broadcast by a client on the given port.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param client   client MAC address
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket discover(DeviceId deviceId, PortNumber port, MacAddress client) {
+        return message(deviceId, port, client, DHCP.MsgType.DHCPDISCOVER, null, null);
+    }
+
+    /**
+     * Builds a DHCP REQUEST broadcast by a client on the given port.
+     *
+     * @param deviceId  device the frame was received on
+     * @param port      port the frame was received on
+     * @param client    client MAC address
+     * @param requested requested address
+     * @param server    server whose offer the client accepts, or null
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket request(DeviceId deviceId, PortNumber port, MacAddress client, Ip4Address requested,
+                                 Ip4Address server) {
+        return message(deviceId, port, client, DHCP.MsgType.DHCPREQUEST, requested, server);
+    }
+
+    /**
+     * Builds a DHCP DECLINE broadcast by a client that found the given
+     * address already in use.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param client   client MAC address
+     * @param declined declined address
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket decline(DeviceId deviceId, PortNumber port, MacAddress client, Ip4Address declined) {
+        return message(deviceId, port, client, DHCP.MsgType.DHCPDECLINE, declined, null);
+    }
+
+    /**
+     * Builds an ICMP echo request sent by a host to the given address.
+     *
+     * @param deviceId device the frame was received on
+     * @param port     port the frame was received on
+     * @param src      host MAC address
+     * @param dst      destination address
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket ping(DeviceId deviceId, PortNumber port, MacAddress src, Ip4Address dst) {
+        ICMP icmp = new ICMP()
+                .setIcmpType(ICMP.TYPE_ECHO_REQUEST)
+                .setIcmpCode(ICMP.CODE_ECHO_REQEUST);
+        IPv4 ip = new IPv4()
+                .setSourceAddress("10.0.0.100")
+                .setDestinationAddress(dst.toInt())
+                .setProtocol(IPv4.PROTOCOL_ICMP);
+        ip.setPayload(icmp);
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(src)
+                .setDestinationMACAddress(MacAddress.valueOf("00:00:00:00:00:fe"))
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(ip);
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    /**
+     * Returns the DHCP message of the last packet emitted.
+     *
+     * @return DHCP message, or null if nothing was emitted
+     */
+    DHCP lastEmitted() {
+        OutboundPacket packet = lastEmitted;
+        if (packet == null) {
+            return null;
+        }
+        byte[] data = packet.data().array();
+        try {
+            Ethernet frame = Ethernet.deserializer().deserialize(data, 0, data.length);
+            return (DHCP) frame.getPayload().getPayload().getPayload();
+        } catch (DeserializationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static InboundPacket message(DeviceId deviceId, PortNumber port, MacAddress client,
+                                         DHCP.MsgType msgType, Ip4Address requested, Ip4Address server) {
+        List<DhcpOption> options = new ArrayList<>();
+        options.add(option(DHCP.DHCPOptionCode.OptionCode_MessageType, new byte[]{msgType.getValue()}));
+        if (requested != null) {
+            options.add(option(DHCP.DHCPOptionCode.OptionCode_RequestedIP, requested.toOctets()));
+        }
+        if (server != null) {
+            options.add(option(DHCP.DHCPOptionCode.OptionCode_DHCPServerIp, server.toOctets()));
+        }
+        DhcpOption end = new DhcpOption();
+        end.setCode(DHCP.DHCPOptionCode.OptionCode_END.getValue());
+        options.add(end);
+
+        DHCP dhcp = new DHCP()
+                .setOpCode(DHCP.OPCODE_REQUEST)
+                .setHardwareType(DHCP.HWTYPE_ETHERNET)
+                .setHardwareAddressLength((byte) 6)
+                .setTransactionId(client.hashCode())
+                .setClientHardwareAddress(client.toBytes())
+                .setOptions(options);
+        UDP udp = new UDP();
+        udp.setSourcePort(UDP.DHCP_CLIENT_PORT);
+        udp.setDestinationPort(UDP.DHCP_SERVER_PORT);
+        udp.setPayload(dhcp);
+        IPv4 ip = new IPv4()
+                .setSourceAddress(0)
+                .setDestinationAddress("255.255.255.255")
+                .setProtocol(IPv4.PROTOCOL_UDP);
+        ip.setPayload(udp);
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(client)
+                .setDestinationMACAddress(MacAddress.BROADCAST)
+                .setEtherType(Ethernet.TYPE_IPV4)
+                .setPayload(ip);
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    private static DhcpOption option(DHCP.DHCPOptionCode code, byte[] data) {
+        DhcpOption option = new DhcpOption();
+        option.setCode(code.getValue());
+        option.setLength((byte) data.length);
+        option.setData(data);
+        return option;
+    }
+
+    /**
+     * Wraps an inbound packet in a fresh, unhandled packet context.
+     *
+     * @param packet inbound packet
+     * @return packet context whose sends are counted by the harness
+     */
+    PacketContext context(InboundPacket packet) {
+        return new DefaultPacketContext(0, packet, null, false) {
+            @Override
+            public void send() {
+                if (!block()) {
+                    sent.increment();
+                }
+            }
+        };
+    }
+
+    /**
+     * Hands a packet context to the DHCP packet processor.
+     *
+     * @param context packet context
+     */
+    void process(PacketContext context) {
+        processor.process(context);
+    }
+
+    /**
+     * Returns the number of intents submitted.
+     *
+     * @return submitted intent count
+     */
+    long intents() {
+        return intents.sum();
+    }
+
+    /**
+     * Returns the number of packets emitted through the packet service.
+     *
+     * @return emitted packet count
+     */
+    long emitted() {
+        return emitted.sum();
+    }
+
+    /**
+     * Returns the number of packet contexts sent back to the switch.
+     *
+     * @return sent packet count
+     */
+    long sent() {
+        return sent.sum();
+    }
+
+    @Override
+    public void close() {
+        component.deactivate();
+    }
+
+    private static class TestCoreService extends CoreServiceAdapter {
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return new TestApplicationId(name);
+        }
+    }
+
+    private class TestNetworkConfigRegistry extends NetworkConfigRegistryAdapter {
+        @Override
+        public void addListener(NetworkConfigListener listener) {
+            DhcpHarness.this.listener = listener;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <S, C extends Config<S>> C getConfig(S subject, Class<C> configClass) {
+            return configClass == DhcpConfig.class ? (C) config : null;
+        }
+    }
+
+    private class TestPacketService extends PacketServiceAdapter {
+        @Override
+        public void addProcessor(PacketProcessor processor, int priority) {
+            DhcpHarness.this.processor = processor;
+        }
+
+        @Override
+        public void emit(OutboundPacket packet) {
+            lastEmitted = packet;
+            emitted.increment();
+        }
+    }
+
+    private class TestIntentService extends IntentServiceAdapter {
+        @Override
+        public void submit(Intent intent) {
+            intents.increment();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import org.junit.Test;
+import org.onlab.packet.DHCP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the DHCP server on a pool of 10.0.0.0/29, where 10.0.0.1 is the
+ * router and 10.0.0.6 the server, so 10.0.0.2 to 10.0.0.5 can be leased.
+ */
+public class DhcpServerTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final PortNumber PORT = PortNumber.portNumber(1);
+    private static final Ip4Address SERVER = Ip4Address.valueOf("10.0.0.6");
+    private static final long HOLD = TimeUnit.SECONDS.toNanos(DhcpServer.DECLINE_HOLD_SECONDS);
+
+    private final DhcpServer server = new DhcpServer(SERVER, MacAddress.valueOf("00:00:00:00:00:fe"),
+            Ip4Prefix.valueOf("10.0.0.0/29"), Ip4Address.valueOf("10.0.0.1"), null, 3600);
+
+    @Test
+    public void declineQuarantinesOnlyTheLeasedAddress() {
+        MacAddress client = client(1);
+        Ip4Address leased = bind(client, 0);
+
+        assertNull(server.handle(decline(client, Ip4Address.valueOf(leased.toInt() + 1)), 1));
+        assertEquals(1, server.leases());
+        assertNull(server.handle(decline(client(2), leased), 1));
+        assertEquals(1, server.leases());
+
+        assertNull(server.handle(decline(client, leased), 1));
+        assertEquals(0, server.leases());
+        assertEquals(1, server.quarantined());
+        assertEquals(1, server.declines());
+        assertEquals(3, server.available());
+        assertNotEquals(leased, bind(client, 2));
+    }
+
+    @Test
+    public void quarantinedAddressReturnsAfterTheHold() {
+        Ip4Address declined = bind(client(1), 0);
+        server.handle(decline(client(1), declined), 0);
+        for (int i = 2; i <= 4; i++) {
+            bind(client(i), 0);
+        }
+        assertEquals(0, server.available());
+
+        assertNull(server.handle(discover(client(5)), HOLD - TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(1, server.quarantined());
+
+        Ethernet offer = server.handle(discover(client(5)), HOLD);
+        assertEquals(declined.toInt(), dhcp(offer).getYourIPAddress());
+        assertEquals(0, server.quarantined());
+    }
+
+    // Runs a DISCOVER and REQUEST for the client and returns the acknowledged address.
+    private Ip4Address bind(MacAddress client, long now) {
+        Ip4Address offered = Ip4Address.valueOf(dhcp(server.handle(discover(client), now)).getYourIPAddress());
+        DHCP ack = dhcp(server.handle(DhcpHarness.request(DEV1, PORT, client, offered, SERVER).parsed(), now));
+        assertEquals(DHCP.MsgType.DHCPACK, ack.getPacketType());
+        return Ip4Address.valueOf(ack.getYourIPAddress());
+    }
+
+    private static MacAddress client(int index) {
+        return MacAddress.valueOf(index);
+    }
+
+    private static Ethernet discover(MacAddress client) {
+        return DhcpHarness.discover(DEV1, PORT, client).parsed();
+    }
+
+    private static Ethernet decline(MacAddress client, Ip4Address address) {
+        return DhcpHarness.decline(DEV1, PORT, client, address).parsed();
+    }
+
+    private static DHCP dhcp(Ethernet frame) {
+        return (DHCP) frame.getPayload().getPayload().getPayload();
+    }
+}
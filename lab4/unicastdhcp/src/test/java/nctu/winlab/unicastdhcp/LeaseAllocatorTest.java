@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the pool address allocator.
+ */
+public class LeaseAllocatorTest {
+
+    private static final int BASE = 0x0a000001;
+
+    @Test
+    public void allocatesEveryAddressOnce() {
+        LeaseAllocator allocator = new LeaseAllocator(BASE, (1 << 16) - 2);
+        Set<Integer> leased = new HashSet<>();
+        for (int i = 0; i < allocator.size(); i++) {
+            int address = allocator.allocate();
+            assertTrue(allocator.contains(address));
+            assertTrue(leased.add(address));
+        }
+        assertEquals(0, allocator.allocate());
+        assertEquals(0, allocator.available());
+
+        assertTrue(allocator.release(BASE + 7));
+        assertFalse(allocator.release(BASE + 7));
+        assertEquals(BASE + 7, allocator.allocate());
+    }
+
+    @Test
+    public void lowestAddressesGoFirst() {
+        LeaseAllocator allocator = new LeaseAllocator(BASE, 8);
+        assertEquals(BASE, allocator.allocate());
+        assertEquals(BASE + 1, allocator.allocate());
+    }
+
+    @Test
+    public void claimTakesAnAddressOutOfTheFreeList() {
+        LeaseAllocator allocator = new LeaseAllocator(BASE, 4);
+        assertTrue(allocator.claim(BASE + 2));
+        assertFalse(allocator.claim(BASE + 2));
+        assertTrue(allocator.isLeased(BASE + 2));
+        assertFalse(allocator.claim(BASE + 4));
+        assertFalse(allocator.claim(BASE - 1));
+
+        Set<Integer> rest = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            rest.add(allocator.allocate());
+        }
+        assertEquals(Set.of(BASE, BASE + 1, BASE + 3), rest);
+        assertEquals(0, allocator.allocate());
+
+        assertTrue(allocator.release(BASE + 2));
+        allocator.clear();
+        assertEquals(4, allocator.available());
+        assertFalse(allocator.isLeased(BASE + 2));
+    }
+}
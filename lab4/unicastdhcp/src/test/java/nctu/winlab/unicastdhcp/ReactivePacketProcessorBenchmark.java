@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.unicastdhcp;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one DHCP packet-in through the unicast DHCP packet processor.
+ * <p>
+ * Each case reports throughput and sampled latency percentiles. Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm} of each case
+ * against {@link #contextOnly()}. A hit knows the server location and
+ * submits the intent pair, a miss has no server configured yet. A serve
+ * answers from a /16 pool in server mode, renewing the offer of one
+ * client. The app never floods, so there is no flood case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactivePacketProcessorBenchmark {
+
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress CLIENT = MacAddress.valueOf("00:00:00:00:00:01");
+
+    private DhcpHarness harness;
+    private DhcpHarness unconfigured;
+    private DhcpHarness server;
+    private InboundPacket discover;
+
+    @Setup
+    public void setUp() {
+        harness = new DhcpHarness();
+        harness.serverLocation("of:0000000000000002/3");
+        unconfigured = new DhcpHarness();
+        server = new DhcpHarness();
+        server.serverMode("10.0.255.254", "10.0.0.0/16", "10.0.0.1");
+        discover = DhcpHarness.discover(DEVICE, PortNumber.portNumber(1), CLIENT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.close();
+        unconfigured.close();
+        server.close();
+    }
+
+    @Benchmark
+    public PacketContext contextOnly() {
+        return harness.context(discover);
+    }
+
+    @Benchmark
+    public PacketContext hit() {
+        PacketContext context = harness.context(discover);
+        harness.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext miss() {
+        PacketContext context = unconfigured.context(discover);
+        unconfigured.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext serve() {
+        PacketContext context = server.context(discover);
+        server.process(context);
+        return context;
+    }
+}
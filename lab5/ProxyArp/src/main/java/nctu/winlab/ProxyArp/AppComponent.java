@@ -45,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.Dictionary;
+import java.util.List;
 import java.util.Properties;
 
 // My imports
@@ -57,17 +58,31 @@ import static org.onlab.util.Tools.get;
 import java.util.HashMap;
 import java.util.Map;
 
+import static nctu.winlab.ProxyArp.OsgiPropertyConstants.TRACE_BUFFER_SIZE;
+import static nctu.winlab.ProxyArp.OsgiPropertyConstants.TRACE_BUFFER_SIZE_DEFAULT;
+import static nctu.winlab.ProxyArp.OsgiPropertyConstants.TRACE_SAMPLE_RATE;
+import static nctu.winlab.ProxyArp.OsgiPropertyConstants.TRACE_SAMPLE_RATE_DEFAULT;
+import static org.onlab.util.Tools.getIntegerProperty;
+
 /**
  * Skeletal ONOS application component.
  */
 @Component(immediate = true, service = { AppComponent.class }, property = {
         "someProperty=Some Default String Value",
+        TRACE_SAMPLE_RATE + ":Integer=" + TRACE_SAMPLE_RATE_DEFAULT,
+        TRACE_BUFFER_SIZE + ":Integer=" + TRACE_BUFFER_SIZE_DEFAULT,
 })
 public class AppComponent {
     /** Some configurable property. */
     private final Logger log = LoggerFactory.getLogger(getClass());
     private String someProperty;
 
+    /** Record one in this many ARP decisions in the trace ring, 0 to trace none. */
+    private int traceSampleRate = TRACE_SAMPLE_RATE_DEFAULT;
+
+    /** ARP decisions kept in the trace ring. */
+    private int traceBufferSize = TRACE_BUFFER_SIZE_DEFAULT;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected ComponentConfigService cfgService;
 
@@ -96,9 +111,12 @@ public class AppComponent {
     Map<Ip4Address, MacAddress> arpTable = new HashMap<>();
     Map<Ip4Address, ConnectPoint> cpTable = new HashMap<>();
 
+    private volatile PacketTrace trace = new PacketTrace(TRACE_BUFFER_SIZE_DEFAULT, TRACE_SAMPLE_RATE_DEFAULT);
+
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         cfgService.registerProperties(getClass());
+        modified(context);
 
         appId = coreService.registerApplication("nctu.winlab.ProxyArp");
         packetService.addProcessor(processor, PacketProcessor.director(2));
@@ -167,7 +185,7 @@ public class AppComponent {
             // log.info("FEFEFEFEFEFEFEFEFEFE" + srcIp + ": " +connectPoint);
 
             if (opCode == ARP.OP_REPLY) {
-                log.info("RECV REPLY. Requested MAC = {}", senderMac);
+                trace(switchId, switchPort, senderMac, ethPkt, PacketTrace.Decision.LEARN);
                 ifHitCpTable = cpTable.containsKey(targetIp);
                 // ! Timeout problem still exist
                 if (ifHitCpTable) {
@@ -181,12 +199,12 @@ public class AppComponent {
                 if (ifHitArpTable) {
                     /* If hit, then packetOut to the specific port. */
                     targetMac = arpTable.get(targetIp);
-                    log.info("TABLE HIT. Requested MAC = {}", targetMac);
+                    trace(switchId, switchPort, senderMac, ethPkt, PacketTrace.Decision.REPLY);
                     ethPacket = ARP.buildArpReply(targetIp, targetMac, ethPkt);
                     sendPacket(switchId, switchPort, ethPacket);
                 } else {
                     /* If miss, then flood to the other ports. */
-                    log.info("TABLE MISS. Send request to edge ports");
+                    trace(switchId, switchPort, senderMac, ethPkt, PacketTrace.Decision.FLOOD);
                     packetOut(context, PortNumber.FLOOD);
                 }
             }
@@ -199,6 +217,12 @@ public class AppComponent {
         }
     }
 
+    // Samples an ARP decision into the trace ring.
+    private void trace(DeviceId switchId, PortNumber switchPort, MacAddress senderMac, Ethernet ethPkt,
+                       PacketTrace.Decision decision) {
+        trace.record(switchId, switchPort, senderMac.toLong(), ethPkt.getDestinationMAC().toLong(), decision);
+    }
+
     private void sendPacket(DeviceId switchId, PortNumber switchPort, Ethernet ethPacket) {
         TrafficTreatment.Builder builder = DefaultTrafficTreatment.builder();
         builder.setOutput(switchPort);
@@ -214,9 +238,42 @@ public class AppComponent {
         if (context != null) {
             someProperty = get(properties, "someProperty");
         }
+        traceSampleRate = Math.max(0, getIntegerProperty(properties, TRACE_SAMPLE_RATE, TRACE_SAMPLE_RATE_DEFAULT));
+        traceBufferSize = Math.max(1, getIntegerProperty(properties, TRACE_BUFFER_SIZE, TRACE_BUFFER_SIZE_DEFAULT));
+        if (trace.capacity() < traceBufferSize || trace.capacity() >= traceBufferSize * 2) {
+            trace = new PacketTrace(traceBufferSize, traceSampleRate);
+        } else {
+            trace.setSampleRate(traceSampleRate);
+        }
         log.info("Reconfigured");
     }
 
+    /**
+     * Returns the sampled ARP decisions still in the trace ring.
+     *
+     * @return trace records, oldest first
+     */
+    public List<PacketTrace.Record> packetTrace() {
+        return trace.records();
+    }
+
+    /**
+     * Returns the number of ARP decisions traced, including the ones the
+     * ring no longer holds.
+     *
+     * @return traced decision count since the ring was created
+     */
+    public long packetTraceRecorded() {
+        return trace.recorded();
+    }
+
+    /**
+     * Drops every record in the trace ring.
+     */
+    public void clearPacketTrace() {
+        trace.clear();
+    }
+
     private void updateArpTable(Ip4Address ip, MacAddress mac) {
         arpTable.put(ip, mac);
     }
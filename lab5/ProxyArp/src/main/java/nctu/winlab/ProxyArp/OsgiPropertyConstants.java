@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.ProxyArp;
+
+/**
+ * Constants for default values of configurable properties.
+ */
+final class OsgiPropertyConstants {
+
+    private OsgiPropertyConstants() {
+    }
+
+    static final String TRACE_SAMPLE_RATE = "traceSampleRate";
+    static final int TRACE_SAMPLE_RATE_DEFAULT = 100;
+
+    static final String TRACE_BUFFER_SIZE = "traceBufferSize";
+    static final int TRACE_BUFFER_SIZE_DEFAULT = 1024;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.ProxyArp.cli;
+
+import nctu.winlab.ProxyArp.AppComponent;
+import nctu.winlab.ProxyArp.PacketTrace;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+
+import java.util.List;
+
+/**
+ * Dumps the sampled ARP decisions of the proxy ARP application, oldest
+ * first.
+ */
+@Service
+@Command(scope = "onos", name = "proxyarp-trace",
+        description = "Dumps the sampled ARP decisions of the proxy ARP application")
+public class ProxyArpTraceCommand extends AbstractShellCommand {
+
+    private static final String RECORD = "time=%s, deviceId=%s, port=%s, src=%s, dst=%s, decision=%s";
+
+    @Option(name = "-c", aliases = "--clear", description = "Clear the trace after dumping it")
+    private boolean clear = false;
+
+    @Override
+    protected void doExecute() {
+        AppComponent proxyArp = get(AppComponent.class);
+        List<PacketTrace.Record> records = proxyArp.packetTrace();
+        for (PacketTrace.Record record : records) {
+            print(RECORD, record.time(), record.deviceId(), record.port(), record.src(), record.dst(),
+                    record.decision());
+        }
+        print("%d of %d traced ARP packet-ins shown", records.size(), proxyArp.packetTraceRecorded());
+        if (clear) {
+            proxyArp.clearPacketTrace();
+        }
+    }
+}
@@ -13,10 +13,8 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nctu.winlab.bridge;
 
-public interface SomeInterface {
-
-    void someMethod();
-
-}
\ No newline at end of file
+/**
+ * CLI commands of the proxy ARP application.
+ */
+package nctu.winlab.ProxyArp.cli;
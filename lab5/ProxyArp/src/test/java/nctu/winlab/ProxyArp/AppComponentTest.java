@@ -18,30 +18,67 @@ package nctu.winlab.ProxyArp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * Set of tests of the ONOS application component.
  */
 public class AppComponentTest {
 
-    private AppComponent component;
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Ip4Address IP1 = Ip4Address.valueOf("10.0.0.1");
+    private static final Ip4Address IP2 = Ip4Address.valueOf("10.0.0.2");
+
+    private ProxyArpHarness harness;
 
     @Before
     public void setUp() {
-        component = new AppComponent();
-        component.cfgService = new ComponentConfigAdapter();
-        component.activate();
+        harness = new ProxyArpHarness();
     }
 
     @After
     public void tearDown() {
-        component.deactivate();
+        harness.close();
     }
 
     @Test
     public void basics() {
+        harness.process(harness.context(ProxyArpHarness.request(DEV1, PortNumber.portNumber(1), MAC1, IP1, IP2)));
+        assertEquals(1, harness.sent());
+        assertEquals(0, harness.emitted());
+
+        harness.process(harness.context(ProxyArpHarness.reply(DEV1, PortNumber.portNumber(2), MAC2, IP2, MAC1, IP1)));
+        harness.process(harness.context(ProxyArpHarness.request(DEV1, PortNumber.portNumber(1), MAC1, IP1, IP2)));
+        assertEquals(1, harness.sent());
+        assertEquals(1, harness.emitted());
+    }
+
+    @Test
+    public void decisionsAreTraced() {
+        try (ProxyArpHarness traced = new ProxyArpHarness(Map.of(OsgiPropertyConstants.TRACE_SAMPLE_RATE, "1"))) {
+            traced.process(traced.context(ProxyArpHarness.request(DEV1, PortNumber.portNumber(1), MAC1, IP1, IP2)));
+            traced.process(traced.context(
+                    ProxyArpHarness.reply(DEV1, PortNumber.portNumber(2), MAC2, IP2, MAC1, IP1)));
+            traced.process(traced.context(ProxyArpHarness.request(DEV1, PortNumber.portNumber(1), MAC1, IP1, IP2)));
 
+            List<PacketTrace.Record> records = traced.component().packetTrace();
+            assertEquals(3, records.size());
+            assertEquals(PacketTrace.Decision.FLOOD, records.get(0).decision());
+            assertEquals(PacketTrace.Decision.LEARN, records.get(1).decision());
+            assertEquals(MAC2, records.get(1).src());
+            assertEquals(PacketTrace.Decision.REPLY, records.get(2).decision());
+            assertEquals(3, traced.component().packetTraceRecorded());
+        }
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.ProxyArp;
+
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sampled ARP trace ring.
+ */
+public class PacketTraceTest {
+
+    private static final DeviceId DEV1 = DeviceId.deviceId("of:0000000000000001");
+    private static final PortNumber PORT1 = PortNumber.portNumber(1);
+
+    @Test
+    public void keepsTheNewestRecordsInOrder() {
+        PacketTrace trace = new PacketTrace(5, 1);
+        assertEquals(8, trace.capacity());
+        for (long i = 0; i < 20; i++) {
+            trace.record(DEV1, PORT1, i, i + 1, PacketTrace.Decision.REPLY);
+        }
+        List<PacketTrace.Record> records = trace.records();
+        assertEquals(8, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(MacAddress.valueOf(12 + i), records.get(i).src());
+            assertEquals(MacAddress.valueOf(13 + i), records.get(i).dst());
+            assertEquals(DEV1, records.get(i).deviceId());
+            assertEquals(PORT1, records.get(i).port());
+            assertEquals(PacketTrace.Decision.REPLY, records.get(i).decision());
+        }
+        assertEquals(20, trace.recorded());
+
+        trace.clear();
+        assertTrue(trace.records().isEmpty());
+    }
+
+    @Test
+    public void samplesOneInRate() {
+        PacketTrace trace = new PacketTrace(1024, 0);
+        trace.record(DEV1, PORT1, 1, 2, PacketTrace.Decision.FLOOD);
+        assertEquals(0, trace.recorded());
+
+        trace.setSampleRate(10);
+        for (int i = 0; i < 100_000; i++) {
+            trace.record(DEV1, PORT1, 1, 2, PacketTrace.Decision.FLOOD);
+        }
+        assertTrue("recorded " + trace.recorded(), Math.abs(trace.recorded() - 10_000) < 1_000);
+    }
+
+    @Test
+    public void concurrentWritersNeverBlock() throws InterruptedException {
+        PacketTrace trace = new PacketTrace(64, 1);
+        int writers = 4;
+        CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            long src = w;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    trace.record(DEV1, PORT1, src, i, PacketTrace.Decision.REPLY);
+                }
+                done.countDown();
+            });
+            thread.start();
+        }
+        while (done.getCount() > 0) {
+            assertTrue(trace.records().size() <= 64);
+            done.await(1, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(writers * 10_000L, trace.recorded());
+        assertEquals(64, trace.records().size());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.ProxyArp;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.TestApplicationId;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.flowobjective.FlowObjectiveServiceAdapter;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.DefaultPacketContext;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.onosproject.net.packet.PacketProcessor;
+import org.onosproject.net.packet.PacketServiceAdapter;
+import org.osgi.service.component.ComponentContext;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the proxy ARP component against in-memory service adapters, so
+ * tests and benchmarks can push packet-ins straight into its packet
+ * processor.
+ */
+final class ProxyArpHarness implements AutoCloseable {
+
+    private final AppComponent component = new AppComponent();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    private volatile PacketProcessor processor;
+
+    /**
+     * Activates the component.
+     */
+    ProxyArpHarness() {
+        this(Map.of());
+    }
+
+    /**
+     * Activates the component with the given component properties.
+     *
+     * @param properties property names and values overriding the defaults
+     */
+    ProxyArpHarness(Map<String, String> properties) {
+        component.cfgService = new ComponentConfigAdapter();
+        component.coreService = new TestCoreService();
+        component.packetService = new TestPacketService();
+        component.flowRuleService = new FlowRuleServiceAdapter();
+        component.flowObjectiveService = new FlowObjectiveServiceAdapter();
+        component.activate(context(properties));
+    }
+
+    /**
+     * Returns the component under test.
+     *
+     * @return proxy ARP component
+     */
+    AppComponent component() {
+        return component;
+    }
+
+    /**
+     * Builds an ARP request broadcast on the given port.
+     *
+     * @param deviceId  device the frame was received on
+     * @param port      port the frame was received on
+     * @param senderMac MAC address of the requester
+     * @param senderIp  IP address of the requester
+     * @param targetIp  IP address being resolved
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket request(DeviceId deviceId, PortNumber port, MacAddress senderMac,
+                                 Ip4Address senderIp, Ip4Address targetIp) {
+        return arp(deviceId, port, ARP.OP_REQUEST, senderMac, senderIp, MacAddress.ZERO, targetIp,
+                MacAddress.BROADCAST);
+    }
+
+    /**
+     * Builds an ARP reply received on the given port.
+     *
+     * @param deviceId  device the frame was received on
+     * @param port      port the frame was received on
+     * @param senderMac MAC address being announced
+     * @param senderIp  IP address being announced
+     * @param targetMac MAC address of the requester
+     * @param targetIp  IP address of the requester
+     * @return inbound packet carrying the frame
+     */
+    static InboundPacket reply(DeviceId deviceId, PortNumber port, MacAddress senderMac, Ip4Address senderIp,
+                               MacAddress targetMac, Ip4Address targetIp) {
+        return arp(deviceId, port, ARP.OP_REPLY, senderMac, senderIp, targetMac, targetIp, targetMac);
+    }
+
+    private static InboundPacket arp(DeviceId deviceId, PortNumber port, short opCode,
+                                     MacAddress senderMac, Ip4Address senderIp,
+                                     MacAddress targetMac, Ip4Address targetIp, MacAddress dst) {
+        ARP arp = new ARP();
+        arp.setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) Ethernet.DATALAYER_ADDRESS_LENGTH)
+                .setProtocolAddressLength((byte) Ip4Address.BYTE_LENGTH)
+                .setOpCode(opCode)
+                .setSenderHardwareAddress(senderMac.toBytes())
+                .setSenderProtocolAddress(senderIp.toOctets())
+                .setTargetHardwareAddress(targetMac.toBytes())
+                .setTargetProtocolAddress(targetIp.toOctets());
+        Ethernet frame = new Ethernet();
+        frame.setSourceMACAddress(senderMac)
+                .setDestinationMACAddress(dst)
+                .setEtherType(Ethernet.TYPE_ARP)
+                .setPayload(arp);
+        return new DefaultInboundPacket(new ConnectPoint(deviceId, port), frame,
+                ByteBuffer.wrap(frame.serialize()));
+    }
+
+    /**
+     * Wraps an inbound packet in a fresh, unhandled packet context.
+     *
+     * @param packet inbound packet
+     * @return packet context whose sends are counted by the harness
+     */
+    PacketContext context(InboundPacket packet) {
+        return new DefaultPacketContext(0, packet, null, false) {
+            @Override
+            public void send() {
+                if (!block()) {
+                    sent.increment();
+                }
+            }
+        };
+    }
+
+    /**
+     * Hands a packet context to the proxy ARP packet processor.
+     *
+     * @param context packet context
+     */
+    void process(PacketContext context) {
+        processor.process(context);
+    }
+
+    /**
+     * Returns the number of packets emitted through the packet service.
+     *
+     * @return emitted packet count
+     */
+    long emitted() {
+        return emitted.sum();
+    }
+
+    /**
+     * Returns the number of packet contexts sent back to the switch.
+     *
+     * @return sent packet count
+     */
+    long sent() {
+        return sent.sum();
+    }
+
+    @Override
+    public void close() {
+        component.deactivate();
+    }
+
+    private static ComponentContext context(Map<String, String> properties) {
+        Dictionary<String, Object> dictionary = new Hashtable<>(properties);
+        return (ComponentContext) Proxy.newProxyInstance(ComponentContext.class.getClassLoader(),
+                new Class<?>[]{ComponentContext.class},
+                (proxy, method, args) -> "getProperties".equals(method.getName()) ? dictionary : null);
+    }
+
+    private static class TestCoreService extends CoreServiceAdapter {
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return new TestApplicationId(name);
+        }
+    }
+
+    private class TestPacketService extends PacketServiceAdapter {
+        @Override
+        public void addProcessor(PacketProcessor processor, int priority) {
+            ProxyArpHarness.this.processor = processor;
+        }
+
+        @Override
+        public void emit(OutboundPacket packet) {
+            emitted.increment();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nctu.winlab.ProxyArp;
+
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.packet.InboundPacket;
+import org.onosproject.net.packet.PacketContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one ARP packet-in through the proxy ARP packet processor.
+ * <p>
+ * Each case reports throughput and sampled latency percentiles. Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm} of each case
+ * against {@link #contextOnly()}. A hit answers the request from the ARP
+ * table, a miss floods it through the switch, and a reply only updates
+ * the table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactivePacketProcessorBenchmark {
+
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress HOST1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress HOST2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Ip4Address IP1 = Ip4Address.valueOf("10.0.0.1");
+    private static final Ip4Address IP2 = Ip4Address.valueOf("10.0.0.2");
+    private static final Ip4Address UNKNOWN = Ip4Address.valueOf("10.0.0.254");
+
+    private ProxyArpHarness harness;
+    private InboundPacket hit;
+    private InboundPacket miss;
+    private InboundPacket reply;
+
+    @Setup
+    public void setUp() {
+        harness = new ProxyArpHarness();
+        reply = ProxyArpHarness.reply(DEVICE, PortNumber.portNumber(2), HOST2, IP2, HOST1, IP1);
+        harness.process(harness.context(reply));
+        hit = ProxyArpHarness.request(DEVICE, PortNumber.portNumber(1), HOST1, IP1, IP2);
+        miss = ProxyArpHarness.request(DEVICE, PortNumber.portNumber(1), HOST1, IP1, UNKNOWN);
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.close();
+    }
+
+    @Benchmark
+    public PacketContext contextOnly() {
+        return harness.context(hit);
+    }
+
+    @Benchmark
+    public PacketContext hit() {
+        PacketContext context = harness.context(hit);
+        harness.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext miss() {
+        PacketContext context = harness.context(miss);
+        harness.process(context);
+        return context;
+    }
+
+    @Benchmark
+    public PacketContext reply() {
+        PacketContext context = harness.context(reply);
+        harness.process(context);
+        return context;
+    }
+}